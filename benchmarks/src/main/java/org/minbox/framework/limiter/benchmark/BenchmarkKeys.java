@@ -0,0 +1,57 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.benchmark;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Request keys of the benchmarks
+ *
+ * @author 恒宇少年
+ */
+public class BenchmarkKeys {
+    /**
+     * Create request keys shaped like the interceptor keys
+     *
+     * @param count number of keys
+     * @return request keys
+     */
+    public static String[] requestKeys(int count) {
+        String[] requestKeys = new String[count];
+        for (int i = 0; i < count; i++) {
+            requestKeys[i] = ("org.minbox.framework.limiter.benchmark.BenchmarkService#method" + i).intern();
+        }
+        return requestKeys;
+    }
+
+    /**
+     * Walk the keys from a random start, one cursor per thread
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int index = ThreadLocalRandom.current().nextInt(1 << 16);
+
+        public String next(String[] requestKeys) {
+            index++;
+            return requestKeys[(index & Integer.MAX_VALUE) % requestKeys.length];
+        }
+    }
+}
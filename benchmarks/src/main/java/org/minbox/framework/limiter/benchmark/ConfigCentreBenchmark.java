@@ -0,0 +1,106 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.benchmark;
+
+import org.minbox.framework.limiter.centre.support.AbstractRateLimiterConfigCentre;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Config centre QPS lookup
+ * <p>
+ * The snapshot lookup of {@link AbstractRateLimiterConfigCentre} compared with the previous lookup,
+ * a regex replacement of the key and a parse of the property value on every request.
+ *
+ * @author 恒宇少年
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigCentreBenchmark {
+    /**
+     * number of configured keys
+     */
+    @Param({"10", "1000"})
+    public int keys;
+
+    private SnapshotConfigCentre configCentre;
+    private Properties properties;
+    private String[] requestKeys;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.requestKeys = new String[keys];
+        this.properties = new Properties();
+        for (int i = 0; i < keys; i++) {
+            requestKeys[i] = "/benchmark/resource/" + i;
+            properties.setProperty(".benchmark.resource." + i, String.valueOf(i + 1));
+        }
+        this.configCentre = new SnapshotConfigCentre(properties);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Long snapshot(BenchmarkKeys.Cursor cursor) {
+        return configCentre.getQps(cursor.next(requestKeys));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Long snapshotMaxThreads(BenchmarkKeys.Cursor cursor) {
+        return configCentre.getQps(cursor.next(requestKeys));
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Long properties(BenchmarkKeys.Cursor cursor) {
+        String value = properties.getProperty(cursor.next(requestKeys).replaceAll("/", "."));
+        return value == null ? AbstractRateLimiterConfigCentre.DEFAULT_QPS : Long.valueOf(value);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Long propertiesMaxThreads(BenchmarkKeys.Cursor cursor) {
+        String value = properties.getProperty(cursor.next(requestKeys).replaceAll("/", "."));
+        return value == null ? AbstractRateLimiterConfigCentre.DEFAULT_QPS : Long.valueOf(value);
+    }
+
+    /**
+     * Config centre serving a fixed config from the snapshot
+     */
+    static class SnapshotConfigCentre extends AbstractRateLimiterConfigCentre {
+        SnapshotConfigCentre(Properties properties) {
+            updateSnapshot(properties);
+        }
+
+        @Override
+        public Long getQps(String configKey) {
+            return getSnapshotQps(configKey);
+        }
+
+        @Override
+        public void setQps(String configKey, Long QPS) {
+            updateSnapshot(configKey, QPS);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.benchmark;
+
+import org.minbox.framework.limiter.annotation.RateLimiter;
+import org.minbox.framework.limiter.aop.advisor.RateLimiterAdvisor;
+import org.minbox.framework.limiter.aop.interceptor.RateLimiterMethodInterceptor;
+import org.minbox.framework.limiter.centre.support.DefaultRateLimiterConfigCentre;
+import org.minbox.framework.limiter.support.TokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.aop.framework.ProxyFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimiter} interceptor overhead
+ * <p>
+ * A direct call, a call through a proxy without advisor, and calls through the rate limiter advisor
+ * with a method key, a SpEL argument key and two limits. The QPS is never reached, the difference
+ * between the proxied calls and the direct call is the cost of the interceptor path.
+ *
+ * @author 恒宇少年
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterceptorBenchmark {
+    private BenchmarkService service;
+    private BenchmarkService plainProxy;
+    private BenchmarkService rateLimiterProxy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.service = new DefaultBenchmarkService();
+
+        ProxyFactory plainProxyFactory = new ProxyFactory(service);
+        plainProxyFactory.setProxyTargetClass(true);
+        this.plainProxy = (BenchmarkService) plainProxyFactory.getProxy();
+
+        TokenBucketRateLimiter rateLimiter = new TokenBucketRateLimiter(10L, new DefaultRateLimiterConfigCentre());
+        rateLimiter.afterPropertiesSet();
+        ProxyFactory proxyFactory = new ProxyFactory(service);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(new RateLimiterAdvisor(new RateLimiterMethodInterceptor(rateLimiter, null)));
+        this.rateLimiterProxy = (BenchmarkService) proxyFactory.getProxy();
+    }
+
+    @Benchmark
+    public String direct(BenchmarkKeys.Cursor cursor) {
+        return service.methodKey(cursor.next(BenchmarkService.USERS));
+    }
+
+    @Benchmark
+    public String proxy(BenchmarkKeys.Cursor cursor) {
+        return plainProxy.methodKey(cursor.next(BenchmarkService.USERS));
+    }
+
+    @Benchmark
+    public String methodKey(BenchmarkKeys.Cursor cursor) {
+        return rateLimiterProxy.methodKey(cursor.next(BenchmarkService.USERS));
+    }
+
+    @Benchmark
+    public String expressionKey(BenchmarkKeys.Cursor cursor) {
+        return rateLimiterProxy.expressionKey(cursor.next(BenchmarkService.USERS));
+    }
+
+    @Benchmark
+    public String multiDimension(BenchmarkKeys.Cursor cursor) {
+        return rateLimiterProxy.multiDimension(cursor.next(BenchmarkService.USERS));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String methodKeyMaxThreads(BenchmarkKeys.Cursor cursor) {
+        return rateLimiterProxy.methodKey(cursor.next(BenchmarkService.USERS));
+    }
+
+    /**
+     * Rate limited service
+     */
+    public interface BenchmarkService {
+        /**
+         * user ids passed to the service
+         */
+        String[] USERS = {"user-1", "user-2", "user-3", "user-4", "user-5", "user-6", "user-7", "user-8"};
+
+        String methodKey(String user);
+
+        String expressionKey(String user);
+
+        String multiDimension(String user);
+    }
+
+    public static class DefaultBenchmarkService implements BenchmarkService {
+        @Override
+        @RateLimiter(QPS = 1_000_000_000D)
+        public String methodKey(String user) {
+            return user;
+        }
+
+        @Override
+        @RateLimiter(QPS = 1_000_000_000D, key = "#user")
+        public String expressionKey(String user) {
+            return user;
+        }
+
+        @Override
+        @RateLimiter(QPS = 1_000_000_000D)
+        @RateLimiter(QPS = 1_000_000_000D, key = "#user")
+        public String multiDimension(String user) {
+            return user;
+        }
+    }
+}
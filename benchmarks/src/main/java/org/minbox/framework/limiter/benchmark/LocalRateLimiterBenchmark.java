@@ -0,0 +1,99 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.benchmark;
+
+import org.minbox.framework.limiter.MinBoxRateLimiter;
+import org.minbox.framework.limiter.centre.support.DefaultRateLimiterConfigCentre;
+import org.minbox.framework.limiter.support.AbstractRateLimiter;
+import org.minbox.framework.limiter.support.GoogleGuavaRateLimiter;
+import org.minbox.framework.limiter.support.TokenBucketRateLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local rate limiter engines
+ * <p>
+ * One key shared by every thread or many keys, on the allowed path (the QPS is never reached)
+ * and on the denied path (the bucket is always empty), from one thread to all available processors.
+ * Run with {@code -prof gc} to see the allocation rate.
+ *
+ * @author 恒宇少年
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalRateLimiterBenchmark {
+    /**
+     * rate limiter engine
+     */
+    @Param({"guava", "tokenBucket"})
+    public String engine;
+    /**
+     * number of request keys
+     */
+    @Param({"1", "1000"})
+    public int keys;
+    /**
+     * allowed : the QPS is never reached, denied : every bucket is empty
+     */
+    @Param({"allowed", "denied"})
+    public String path;
+
+    private MinBoxRateLimiter rateLimiter;
+    private String[] requestKeys;
+    private Double QPS;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Long globalQPS = 10L;
+        DefaultRateLimiterConfigCentre configCentre = new DefaultRateLimiterConfigCentre();
+        AbstractRateLimiter rateLimiter = "guava".equals(engine) ? new GoogleGuavaRateLimiter(globalQPS, configCentre) : new TokenBucketRateLimiter(globalQPS, configCentre);
+        rateLimiter.afterPropertiesSet();
+        this.rateLimiter = rateLimiter;
+        this.requestKeys = BenchmarkKeys.requestKeys(keys);
+        this.QPS = "allowed".equals(path) ? 1_000_000_000D : 1D;
+        // empty the buckets of the denied path
+        for (String requestKey : requestKeys) {
+            while (rateLimiter.tryAcquire(QPS, requestKey) && "denied".equals(path)) {
+                // drain
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryAcquire(BenchmarkKeys.Cursor cursor) {
+        return rateLimiter.tryAcquire(QPS, cursor.next(requestKeys));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryAcquire4Threads(BenchmarkKeys.Cursor cursor) {
+        return rateLimiter.tryAcquire(QPS, cursor.next(requestKeys));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean tryAcquireMaxThreads(BenchmarkKeys.Cursor cursor) {
+        return rateLimiter.tryAcquire(QPS, cursor.next(requestKeys));
+    }
+}
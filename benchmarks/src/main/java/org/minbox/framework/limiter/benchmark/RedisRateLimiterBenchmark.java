@@ -0,0 +1,147 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.benchmark;
+
+import org.minbox.framework.limiter.MinBoxRateLimiter;
+import org.minbox.framework.limiter.centre.support.DefaultRateLimiterConfigCentre;
+import org.minbox.framework.limiter.support.AbstractRedisRateLimiter;
+import org.minbox.framework.limiter.support.RedisGcraRateLimiter;
+import org.minbox.framework.limiter.support.RedisLeaseRateLimiter;
+import org.minbox.framework.limiter.support.RedisLuaRateLimiter;
+import org.minbox.framework.limiter.support.RedisSlidingWindowRateLimiter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis rate limiter engines against an embedded redis server
+ * <p>
+ * The embedded server runs on the benchmark host, the results are dominated by the loopback round trip
+ * and the script execution, compare the engines with each other rather than with the local engines.
+ * Set {@code -Dbenchmark.redis.port} to use another port.
+ *
+ * @author 恒宇少年
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisRateLimiterBenchmark {
+    /**
+     * rate limiter engine
+     */
+    @Param({"lua", "gcra", "slidingWindow", "lease"})
+    public String engine;
+    /**
+     * number of request keys
+     */
+    @Param({"1", "1000"})
+    public int keys;
+    /**
+     * allowed : the QPS is never reached, denied : every bucket is empty
+     */
+    @Param({"allowed", "denied"})
+    public String path;
+
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private AbstractRedisRateLimiter rateLimiter;
+    private String[] requestKeys;
+    private Double QPS;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        int port = Integer.getInteger("benchmark.redis.port", 6399);
+        this.redisServer = new RedisServer(port);
+        this.redisServer.start();
+        this.connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", port));
+        this.connectionFactory.afterPropertiesSet();
+        RedisTemplate redisTemplate = new RedisTemplate();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+        redisTemplate.execute(connection -> {
+            connection.flushAll();
+            return null;
+        }, true);
+
+        Long globalQPS = 10L;
+        DefaultRateLimiterConfigCentre configCentre = new DefaultRateLimiterConfigCentre();
+        switch (engine) {
+            case "gcra":
+                this.rateLimiter = new RedisGcraRateLimiter(globalQPS, configCentre, redisTemplate);
+                break;
+            case "slidingWindow":
+                this.rateLimiter = new RedisSlidingWindowRateLimiter(globalQPS, configCentre, redisTemplate);
+                break;
+            case "lease":
+                this.rateLimiter = new RedisLeaseRateLimiter(globalQPS, configCentre, redisTemplate);
+                break;
+            default:
+                this.rateLimiter = new RedisLuaRateLimiter(globalQPS, configCentre, redisTemplate);
+                break;
+        }
+        this.rateLimiter.afterPropertiesSet();
+        // Measure redis, not the local fallback
+        this.rateLimiter.setLocalFallback(false);
+        this.requestKeys = BenchmarkKeys.requestKeys(keys);
+        this.QPS = "allowed".equals(path) ? 1_000_000_000D : 1D;
+        // empty the buckets of the denied path
+        for (String requestKey : requestKeys) {
+            while (rateLimiter.tryAcquire(QPS, requestKey) && "denied".equals(path)) {
+                // drain
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this.rateLimiter.destroy();
+        this.connectionFactory.destroy();
+        this.redisServer.stop();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean tryAcquire(BenchmarkKeys.Cursor cursor) {
+        return rateLimiter.tryAcquire(QPS, cursor.next(requestKeys));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean tryAcquire4Threads(BenchmarkKeys.Cursor cursor) {
+        return rateLimiter.tryAcquire(QPS, cursor.next(requestKeys));
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean tryAcquireMaxThreads(BenchmarkKeys.Cursor cursor) {
+        return rateLimiter.tryAcquire(QPS, cursor.next(requestKeys));
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Boolean tryAcquireAsync4Threads(BenchmarkKeys.Cursor cursor) {
+        return rateLimiter.tryAcquireAsync(QPS, cursor.next(requestKeys)).toCompletableFuture().join();
+    }
+}
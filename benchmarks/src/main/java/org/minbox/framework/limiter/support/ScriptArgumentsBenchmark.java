@@ -0,0 +1,95 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import org.minbox.framework.limiter.benchmark.BenchmarkKeys;
+import org.minbox.framework.limiter.context.RateLimiterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Client side encoding of one redis script call, before and after the pre-encoded script arguments
+ * <p>
+ * before: keys and arguments built as strings and serialized per call, as the spring {@code DefaultScriptExecutor} did.
+ * after: the encoded keys and arguments of the request key are looked up, only the callback is allocated.
+ * Run with {@code -prof gc}, the redis round trip is left out on purpose.
+ * Lives in the support package to reach the package scoped members of {@link AbstractRedisRateLimiter.ScriptArguments}
+ *
+ * @author 恒宇少年
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScriptArgumentsBenchmark {
+    /**
+     * number of request keys
+     */
+    @Param({"1", "1000"})
+    public int keys;
+
+    private String[] requestKeys;
+    private final long QPS = 1000L;
+    private final long capacity = 1000L;
+    private final RateLimiterRegistry<AbstractRedisRateLimiter.ScriptArguments> scriptArguments =
+        new RateLimiterRegistry<>(arguments -> TimeUnit.MINUTES.toNanos(1));
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.requestKeys = BenchmarkKeys.requestKeys(keys);
+    }
+
+    @Benchmark
+    public byte[][] before(BenchmarkKeys.Cursor cursor) {
+        List<String> keys = RedisLuaRateLimiter.getKeys(cursor.next(requestKeys));
+        RedisSerializer<String> serializer = new StringRedisSerializer();
+        Object[] args = new Object[]{String.valueOf(QPS), String.valueOf(capacity), "1"};
+        // DefaultScriptExecutor#keysAndArgs
+        byte[][] keysAndArgs = new byte[args.length + keys.size()][];
+        int i = 0;
+        for (String key : keys) {
+            keysAndArgs[i++] = serializer.serialize(key);
+        }
+        for (Object arg : args) {
+            keysAndArgs[i++] = serializer.serialize((String) arg);
+        }
+        return keysAndArgs;
+    }
+
+    @Benchmark
+    public Object after(BenchmarkKeys.Cursor cursor) {
+        String requestKey = cursor.next(requestKeys);
+        // AbstractRedisRateLimiter#getScriptArguments
+        AbstractRedisRateLimiter.ScriptArguments arguments = this.scriptArguments.get(requestKey);
+        if (arguments == null || arguments.first != QPS || arguments.second != capacity) {
+            byte[][] keys = arguments != null ? arguments.keys : AbstractRedisRateLimiter.encode(RedisLuaRateLimiter.getKeys(requestKey));
+            arguments = new AbstractRedisRateLimiter.ScriptArguments(keys, QPS, capacity);
+            this.scriptArguments.put(requestKey, arguments);
+        }
+        AbstractRedisRateLimiter.ScriptArguments encoded = arguments;
+        // the RedisCallback of AbstractRedisRateLimiter#execute
+        return (Supplier<byte[][]>) () -> encoded.keysAndArgs;
+    }
+}
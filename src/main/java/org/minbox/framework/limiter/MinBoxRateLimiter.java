@@ -17,9 +17,18 @@
 
 package org.minbox.framework.limiter;
 
+import org.minbox.framework.limiter.exception.RateLimiterException;
 import org.minbox.framework.limiter.support.AbstractRateLimiter;
 import org.minbox.framework.limiter.support.GoogleGuavaRateLimiter;
+import org.minbox.framework.limiter.support.RedisGcraRateLimiter;
+import org.minbox.framework.limiter.support.RedisLeaseRateLimiter;
 import org.minbox.framework.limiter.support.RedisLuaRateLimiter;
+import org.minbox.framework.limiter.support.RedisSlidingWindowRateLimiter;
+import org.minbox.framework.limiter.support.TokenBucketRateLimiter;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Definition of current limiting interface
@@ -32,12 +41,30 @@ import org.minbox.framework.limiter.support.RedisLuaRateLimiter;
  * Current restriction of token bucket mode of single application provided by Google
  * {@link GoogleGuavaRateLimiter}
  * <p>
+ * Lock-free token bucket mode of single application
+ * {@link TokenBucketRateLimiter}
+ * <p>
  * Implementation of redis Lua script for microservices and distributed applications
  * {@link RedisLuaRateLimiter}
+ * <p>
+ * Redis Lua script with tokens leased to each node in batches
+ * {@link RedisLeaseRateLimiter}
+ * <p>
+ * Redis Lua script of a sliding window counter, without bursts
+ * {@link RedisSlidingWindowRateLimiter}
+ * <p>
+ * Redis Lua script of the generic cell rate algorithm, one key per request key
+ * {@link RedisGcraRateLimiter}
  *
  * @author 恒宇少年
  */
 public interface MinBoxRateLimiter {
+    /**
+     * Separates the request key from the value of the key expression,
+     * the config key is the part before the separator
+     */
+    String KEY_SEPARATOR = "@";
+
     /**
      * Attempt to obtain a request current limit token
      *
@@ -46,4 +73,145 @@ public interface MinBoxRateLimiter {
      * @return true : allow access to
      */
     boolean tryAcquire(Double QPS, String requestKey);
+
+    /**
+     * Attempt to obtain a request current limit token without blocking the calling thread
+     * <p>
+     * The local implementations never block, they complete immediately;
+     * the redis implementations complete when the script reply arrives
+     *
+     * @param QPS        queries per second
+     * @param requestKey request key
+     * @return completes with true : allow access to
+     */
+    default CompletionStage<Boolean> tryAcquireAsync(Double QPS, String requestKey) {
+        return CompletableFuture.completedFuture(tryAcquire(QPS, requestKey));
+    }
+
+    /**
+     * Attempt to obtain several request current limit tokens at once, the cost of the call
+     * <p>
+     * All or nothing: the tokens are taken together, a denied call spends none of them.
+     * A call costing more tokens than the bucket holds is never allowed,
+     * except by the guava implementation which lets the next calls pay for it.
+     * <p>
+     * default only takes single tokens with {@link #tryAcquire(Double, String)},
+     * a call of several tokens is denied without spending any. The implementations take several tokens at once
+     *
+     * @param QPS        queries per second
+     * @param requestKey request key
+     * @param permits    number of tokens
+     * @return true : allow access to
+     */
+    default boolean tryAcquire(Double QPS, String requestKey, int permits) {
+        if (permits < 1) {
+            throw new RateLimiterException("The permits must be greater than 0.");
+        }
+        return permits == 1 && tryAcquire(QPS, requestKey);
+    }
+
+    /**
+     * Attempt to obtain several request current limit tokens at once without blocking the calling thread
+     *
+     * @param QPS        queries per second
+     * @param requestKey request key
+     * @param permits    number of tokens
+     * @return completes with true : allow access to
+     * @see #tryAcquire(Double, String, int)
+     */
+    default CompletionStage<Boolean> tryAcquireAsync(Double QPS, String requestKey, int permits) {
+        if (permits == 1) {
+            return tryAcquireAsync(QPS, requestKey);
+        }
+        return CompletableFuture.completedFuture(tryAcquire(QPS, requestKey, permits));
+    }
+
+    /**
+     * Attempt to obtain a token of every request key, the call is allowed only if all of them allow it
+     * <p>
+     * default checks one key after another and stops at the first denial,
+     * the tokens of the keys checked before it are spent.
+     * The redis lua implementation checks all keys and debits them only if every key allows the call
+     *
+     * @param QPS         queries per second of each key
+     * @param requestKeys request keys
+     * @return true : allow access to
+     */
+    default boolean tryAcquire(Double[] QPS, String[] requestKeys) {
+        for (int i = 0; i < requestKeys.length; i++) {
+            if (!tryAcquire(QPS[i], requestKeys[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Attempt to obtain a token of every request key without blocking the calling thread
+     *
+     * @param QPS         queries per second of each key
+     * @param requestKeys request keys
+     * @return completes with true : allow access to
+     * @see #tryAcquire(Double[], String[])
+     */
+    default CompletionStage<Boolean> tryAcquireAsync(Double[] QPS, String[] requestKeys) {
+        return CompletableFuture.completedFuture(tryAcquire(QPS, requestKeys));
+    }
+
+    /**
+     * Attempt to obtain several tokens of every request key, the call is allowed only if all of them allow it
+     *
+     * @param QPS         queries per second of each key
+     * @param requestKeys request keys
+     * @param permits     number of tokens of each key
+     * @return true : allow access to
+     * @see #tryAcquire(Double[], String[])
+     */
+    default boolean tryAcquire(Double[] QPS, String[] requestKeys, int permits) {
+        if (permits == 1) {
+            return tryAcquire(QPS, requestKeys);
+        }
+        for (int i = 0; i < requestKeys.length; i++) {
+            if (!tryAcquire(QPS[i], requestKeys[i], permits)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Attempt to obtain several tokens of every request key without blocking the calling thread
+     *
+     * @param QPS         queries per second of each key
+     * @param requestKeys request keys
+     * @param permits     number of tokens of each key
+     * @return completes with true : allow access to
+     * @see #tryAcquire(Double[], String[], int)
+     */
+    default CompletionStage<Boolean> tryAcquireAsync(Double[] QPS, String[] requestKeys, int permits) {
+        if (permits == 1) {
+            return tryAcquireAsync(QPS, requestKeys);
+        }
+        return CompletableFuture.completedFuture(tryAcquire(QPS, requestKeys, permits));
+    }
+
+    /**
+     * Obtain request current limit tokens, waiting up to the timeout for them
+     * <p>
+     * The next free tokens are reserved and the calling thread parks once for exactly the time needed,
+     * it never waits when the tokens cannot be available before the timeout.
+     * <p>
+     * default can not wait, it answers immediately with {@link #tryAcquire(Double, String, int)},
+     * the tokens are taken all at once or none is spent
+     *
+     * @param QPS        queries per second
+     * @param requestKey request key
+     * @param permits    number of tokens
+     * @param timeout    maximum time to wait
+     * @param unit       time unit of the timeout
+     * @return true : allow access to
+     */
+    default boolean acquire(Double QPS, String requestKey, int permits, long timeout, TimeUnit unit) {
+        return tryAcquire(QPS, requestKey, permits);
+    }
 }
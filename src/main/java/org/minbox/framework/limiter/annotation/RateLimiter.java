@@ -22,12 +22,17 @@ import java.lang.annotation.*;
 /**
  * ApiBoot Rate Limiter Annotation
  * Configure to intercept request method
+ * <p>
+ * Repeatable, each annotation is one limit of the method, such as per user, per endpoint and global.
+ * The {@link #limiter()} of the first annotation checks all of them, {@link #maxWait()} does not apply.
  *
  * @author 恒宇少年
+ * @see RateLimiters
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.METHOD})
 @Documented
+@Repeatable(RateLimiters.class)
 public @interface RateLimiter {
     /**
      * QPS（Access frequency per second）
@@ -36,4 +41,90 @@ public @interface RateLimiter {
      * @return qps value
      */
     double QPS() default 1;
+
+    /**
+     * Maximum time in milliseconds to wait for a token (traffic shaping)
+     * default 0, an over-limit call is rejected immediately
+     * <p>
+     * Only applies to blocking methods, asynchronous methods are never delayed
+     *
+     * @return max wait millis
+     */
+    long maxWait() default 0;
+
+    /**
+     * Bean name of the {@link org.minbox.framework.limiter.MinBoxRateLimiter} limiting this method
+     * default empty, the rate limiter of the interceptor is used
+     * <p>
+     * Such as a {@link org.minbox.framework.limiter.support.RedisSlidingWindowRateLimiter} bean
+     * for methods that must not burst, next to the default token bucket
+     *
+     * @return rate limiter bean name
+     */
+    String limiter() default "";
+
+    /**
+     * SpEL expression of the limited key, such as the user or the tenant of the call
+     * default empty, the method is limited as a whole
+     * <p>
+     * The root object is {@link org.minbox.framework.limiter.aop.interceptor.RateLimiterExpressionRoot},
+     * parameters are available by name, for example: {@code #userId}, {@code args[0].tenantId},
+     * {@code request.getHeader('X-Tenant-Id')}.
+     * Each value is limited separately with the QPS of the method,
+     * the config centre QPS is looked up by the method key.
+     *
+     * @return key expression
+     */
+    String key() default "";
+
+    /**
+     * Number of tokens one call consumes, the cost of the call
+     * default 1, every call counts once
+     * <p>
+     * Such as the number of items of a bulk call. A cost above the bucket capacity (QPS * burst seconds)
+     * is never allowed, except by the guava rate limiter.
+     * On a method with several limits the permits of the first annotation apply to all of them
+     *
+     * @return number of tokens
+     */
+    int permits() default 1;
+
+    /**
+     * SpEL expression of the number of tokens one call consumes, overrides {@link #permits()}
+     * default empty, {@link #permits()} is used
+     * <p>
+     * Same root object and variables as {@link #key()}, for example: {@code #items.size()}.
+     * A value below 1 consumes one token
+     *
+     * @return permits expression
+     */
+    String permitsExpression() default "";
+
+    /**
+     * Maximum number of calls of the method in flight (bulkhead)
+     * default 0, the calls in flight are not limited
+     * <p>
+     * Checked before the QPS, the permit is released when the call completes:
+     * on return for blocking methods, when the returned {@code CompletionStage} completes
+     * or the returned publisher terminates for asynchronous methods.
+     * The calls in flight are counted per method, by the concurrency limiter of the interceptor
+     *
+     * @return max concurrency
+     */
+    int maxConcurrency() default 0;
+
+    /**
+     * Adapt the limit of calls in flight to the observed latency of the method
+     * default false, {@link #maxConcurrency()} is a static limit
+     * <p>
+     * The limit shrinks when the latency rises above its long term average, during a downstream incident,
+     * and grows back while the latency stays flat. It only grows while at least half of it is used
+     * (calls in flight &gt;= limit / 2), a lightly used method keeps its limit; it shrinks whatever the calls in flight.
+     * It never exceeds {@link #maxConcurrency()},
+     * or when 0 the {@link #QPS()}: with calls shorter than one second, more calls in flight than the QPS would exceed it.
+     * The QPS keeps limiting the rate of the method, it is the hard ceiling of the adaptive limit
+     *
+     * @return adaptive concurrency
+     */
+    boolean adaptiveConcurrency() default false;
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * Container of repeated {@link RateLimiter} annotations
+ * <p>
+ * A method annotated several times is only invoked when every limit allows the call,
+ * the redis lua rate limiter checks and debits all of them in one script call.
+ *
+ * @author 恒宇少年
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+@Documented
+public @interface RateLimiters {
+    /**
+     * limits of the method
+     *
+     * @return rate limiter annotations
+     */
+    RateLimiter[] value();
+}
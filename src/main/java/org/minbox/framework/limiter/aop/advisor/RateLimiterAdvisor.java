@@ -19,6 +19,7 @@ package org.minbox.framework.limiter.aop.advisor;
 
 import org.aopalliance.aop.Advice;
 import org.minbox.framework.limiter.annotation.RateLimiter;
+import org.minbox.framework.limiter.annotation.RateLimiters;
 import org.minbox.framework.limiter.aop.interceptor.RateLimiterMethodInterceptor;
 import org.springframework.aop.Pointcut;
 import org.springframework.aop.support.AbstractPointcutAdvisor;
@@ -57,9 +58,6 @@ public class RateLimiterAdvisor extends AbstractPointcutAdvisor implements BeanF
         this.pointcut = buildPointcut();
         // build advice instance
         this.advice = rateLimiterMethodInterceptor;
-        if (this.advice instanceof BeanFactoryAware) {
-            ((BeanFactoryAware) this.advice).setBeanFactory(beanFactory);
-        }
     }
 
     @Override
@@ -77,18 +75,24 @@ public class RateLimiterAdvisor extends AbstractPointcutAdvisor implements BeanF
     @Override
     public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
         this.beanFactory = beanFactory;
+        // The advice is not a bean, pass the bean factory on once it is known
+        if (this.advice instanceof BeanFactoryAware) {
+            ((BeanFactoryAware) this.advice).setBeanFactory(beanFactory);
+        }
     }
 
     /**
      * build breakthrough point
      * <p>
-     * According to {@link RateLimiter} annotation pointcut
+     * According to {@link RateLimiter} or {@link RateLimiters} annotation pointcut
      *
      * @return {@link Pointcut}
      */
     private Pointcut buildPointcut() {
         // method
         Pointcut mpc = AnnotationMatchingPointcut.forMethodAnnotation(RateLimiter.class);
-        return new ComposablePointcut(mpc);
+        // method annotated several times, the annotations are wrapped in the container
+        Pointcut repeatedMpc = AnnotationMatchingPointcut.forMethodAnnotation(RateLimiters.class);
+        return new ComposablePointcut(mpc).union(repeatedMpc);
     }
 }
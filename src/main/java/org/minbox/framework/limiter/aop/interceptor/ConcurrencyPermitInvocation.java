@@ -0,0 +1,81 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.aop.interceptor;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.minbox.framework.limiter.concurrency.ConcurrencyPermit;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+
+/**
+ * Method invocation holding a concurrency permit
+ * Starts the permit when the method actually proceeds, a call rejected by the QPS never starts it
+ *
+ * @author 恒宇少年
+ */
+class ConcurrencyPermitInvocation implements MethodInvocation {
+    /**
+     * intercepted method invocation
+     */
+    private final MethodInvocation delegate;
+    /**
+     * concurrency permit of the call
+     */
+    private final ConcurrencyPermit permit;
+
+    ConcurrencyPermitInvocation(MethodInvocation delegate, ConcurrencyPermit permit) {
+        this.delegate = delegate;
+        this.permit = permit;
+    }
+
+    @Override
+    public Object proceed() throws Throwable {
+        permit.start();
+        return delegate.proceed();
+    }
+
+    /**
+     * get a clone proceeding the intercepted invocation once more, holding the same permit
+     *
+     * @return invocation to proceed
+     */
+    MethodInvocation invocableClone() {
+        return new ConcurrencyPermitInvocation(RateLimiterMethodInterceptor.invocableClone(delegate), permit);
+    }
+
+    @Override
+    public Method getMethod() {
+        return delegate.getMethod();
+    }
+
+    @Override
+    public Object[] getArguments() {
+        return delegate.getArguments();
+    }
+
+    @Override
+    public Object getThis() {
+        return delegate.getThis();
+    }
+
+    @Override
+    public AccessibleObject getStaticPart() {
+        return delegate.getStaticPart();
+    }
+}
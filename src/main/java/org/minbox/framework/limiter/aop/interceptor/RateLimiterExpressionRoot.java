@@ -0,0 +1,87 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.aop.interceptor;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.lang.reflect.Method;
+
+/**
+ * Root object of the {@link org.minbox.framework.limiter.annotation.RateLimiter#key()} expression
+ * <p>
+ * for example:
+ * 1. args[0]
+ * 2. #userId
+ * 3. request.getHeader('X-Tenant-Id')
+ *
+ * @author 恒宇少年
+ */
+public class RateLimiterExpressionRoot {
+    /**
+     * Whether spring web and the servlet api are on the classpath
+     */
+    private static final boolean SERVLET_PRESENT = ClassUtils.isPresent("javax.servlet.http.HttpServletRequest", RateLimiterExpressionRoot.class.getClassLoader())
+        && ClassUtils.isPresent("org.springframework.web.context.request.RequestContextHolder", RateLimiterExpressionRoot.class.getClassLoader());
+    /**
+     * invoked method
+     */
+    private final Method method;
+    /**
+     * method arguments
+     */
+    private final Object[] args;
+
+    public RateLimiterExpressionRoot(Method method, Object[] args) {
+        this.method = method;
+        this.args = args;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public Object[] getArgs() {
+        return args;
+    }
+
+    /**
+     * get current http request
+     * Declared as Object, the root object is usable without the servlet api
+     *
+     * @return {@code HttpServletRequest} bound to the current thread, null if none
+     */
+    public Object getRequest() {
+        return SERVLET_PRESENT ? ServletRequestHolder.getRequest() : null;
+    }
+
+    /**
+     * Only loaded when the servlet api is on the classpath
+     */
+    private static class ServletRequestHolder {
+        static Object getRequest() {
+            RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+            if (requestAttributes instanceof ServletRequestAttributes) {
+                return ((ServletRequestAttributes) requestAttributes).getRequest();
+            }
+            return null;
+        }
+    }
+}
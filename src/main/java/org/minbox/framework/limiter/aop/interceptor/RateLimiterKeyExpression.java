@@ -0,0 +1,141 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.aop.interceptor;
+
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.lang.reflect.Method;
+
+/**
+ * Compiled {@link org.minbox.framework.limiter.annotation.RateLimiter#key()} or
+ * {@link org.minbox.framework.limiter.annotation.RateLimiter#permitsExpression()} expression of one method
+ * <p>
+ * The expression is parsed once, with the SpEL compiler in {@link SpelCompilerMode#IMMEDIATE} mode:
+ * after the first evaluation it runs as generated bytecode.
+ * When the compiled expression fails, for example because an argument has another type than on the first call,
+ * the expression is parsed again and interpreted from then on.
+ * <p>
+ * Expressions without variables are evaluated against a shared context, only the root object is allocated per call.
+ * Parameter name variables ({@code #userId}) need a method based context per call.
+ *
+ * @author 恒宇少年
+ */
+public class RateLimiterKeyExpression {
+    /**
+     * Parse expressions compiled to bytecode
+     */
+    private static final SpelExpressionParser COMPILING_PARSER = new SpelExpressionParser(
+        new SpelParserConfiguration(SpelCompilerMode.IMMEDIATE, RateLimiterKeyExpression.class.getClassLoader()));
+    /**
+     * Parse interpreted expressions
+     */
+    private static final SpelExpressionParser INTERPRETING_PARSER = new SpelExpressionParser();
+    /**
+     * Parameter name discoverer of the method based context
+     */
+    private static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new DefaultParameterNameDiscoverer();
+    /**
+     * Context of the expressions without variables, read only once initialized
+     */
+    private static final EvaluationContext SHARED_CONTEXT = createSharedContext();
+    /**
+     * expression string
+     */
+    private final String expressionString;
+    /**
+     * annotated method
+     */
+    private final Method method;
+    /**
+     * Whether the expression references variables
+     */
+    private final boolean usesVariables;
+    /**
+     * parsed expression
+     */
+    private volatile Expression expression;
+    /**
+     * Whether the expression is compiled
+     */
+    private volatile boolean compiled = true;
+
+    public RateLimiterKeyExpression(String expressionString, Method method) {
+        this.expressionString = expressionString;
+        this.method = method;
+        this.usesVariables = expressionString.indexOf('#') >= 0;
+        this.expression = COMPILING_PARSER.parseExpression(expressionString);
+    }
+
+    /**
+     * Evaluate the expression
+     *
+     * @param args method arguments
+     * @return expression value as string
+     */
+    public String getValue(Object[] args) {
+        return String.valueOf(getValue(args, Object.class));
+    }
+
+    /**
+     * Evaluate the expression
+     *
+     * @param args         method arguments
+     * @param expectedType type of the value, converted by the conversion service of the context
+     * @param <T>          value type
+     * @return expression value
+     */
+    public <T> T getValue(Object[] args, Class<T> expectedType) {
+        RateLimiterExpressionRoot root = new RateLimiterExpressionRoot(method, args);
+        EvaluationContext context = usesVariables ?
+            new MethodBasedEvaluationContext(root, method, args, PARAMETER_NAME_DISCOVERER) : SHARED_CONTEXT;
+        try {
+            return expression.getValue(context, root, expectedType);
+        } catch (SpelEvaluationException e) {
+            if (!compiled || e.getMessageCode() != SpelMessage.EXCEPTION_RUNNING_COMPILED_EXPRESSION) {
+                throw e;
+            }
+            // The compiled bytecode does not fit the arguments of this call, interpret from now on
+            compiled = false;
+            expression = INTERPRETING_PARSER.parseExpression(expressionString);
+            return expression.getValue(context, root, expectedType);
+        }
+    }
+
+    public String getExpressionString() {
+        return expressionString;
+    }
+
+    private static EvaluationContext createSharedContext() {
+        StandardEvaluationContext context = new StandardEvaluationContext();
+        // initialize the lazy resolver lists before the context is shared
+        context.getPropertyAccessors();
+        context.getMethodResolvers();
+        context.getConstructorResolvers();
+        return context;
+    }
+}
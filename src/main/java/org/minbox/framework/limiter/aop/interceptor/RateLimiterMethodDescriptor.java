@@ -0,0 +1,337 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.aop.interceptor;
+
+import org.minbox.framework.limiter.MinBoxRateLimiter;
+import org.minbox.framework.limiter.annotation.RateLimiter;
+import org.minbox.framework.limiter.metrics.RateLimiterKeyMetrics;
+import org.minbox.framework.limiter.metrics.RateLimiterMetrics;
+import org.minbox.framework.limiter.reactive.ReactorRateLimiterAdapter;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * ApiBoot RateLimiter method descriptor
+ * <p>
+ * Everything the interceptor needs that is constant per (target class, method),
+ * resolved once by {@link RateLimiterMethodInterceptor} and reused on every later call
+ *
+ * @author 恒宇少年
+ */
+public class RateLimiterMethodDescriptor {
+    /**
+     * Whether reactor is on the classpath
+     */
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono", RateLimiterMethodDescriptor.class.getClassLoader());
+    /**
+     * target class
+     */
+    private final Class<?> targetClass;
+    /**
+     * most specific method declaring {@link RateLimiter}
+     */
+    private final Method method;
+    /**
+     * method declared annotation, the first one of a multi-dimension method
+     */
+    private final RateLimiter rateLimiter;
+    /**
+     * all method declared annotations
+     */
+    private final RateLimiter[] rateLimiters;
+    /**
+     * annotation QPS of each dimension, null if the method has a single limit
+     */
+    private final Double[] dimensionQPS;
+    /**
+     * request key of each dimension, null if the method has a single limit
+     * the first dimension uses the request key, the next ones append {@code [index]}
+     */
+    private final String[] dimensionKeys;
+    /**
+     * compiled key expression of each dimension, null if the method has a single limit
+     */
+    private final RateLimiterKeyExpression[] dimensionKeyExpressions;
+    /**
+     * request key
+     */
+    private final String requestKey;
+    /**
+     * annotation QPS
+     */
+    private final Double QPS;
+    /**
+     * maximum time in milliseconds to wait for a token
+     */
+    private final long maxWait;
+    /**
+     * maximum number of calls in flight, 0 if not limited
+     * the ceiling of the limit when it adapts to the latency
+     */
+    private final int maxConcurrency;
+    /**
+     * Whether the limit of calls in flight adapts to the latency, {@link RateLimiter#adaptiveConcurrency()}
+     */
+    private final boolean adaptiveConcurrency;
+    /**
+     * how the method result is produced
+     */
+    private final InvocationType invocationType;
+    /**
+     * rate limiter of the method, {@link RateLimiter#limiter()} or the default one
+     */
+    private final MinBoxRateLimiter minBoxRateLimiter;
+    /**
+     * Reactor adapter of the rate limiter, only created for methods returning a reactor publisher
+     */
+    private final ReactorRateLimiterAdapter reactorRateLimiterAdapter;
+    /**
+     * compiled {@link RateLimiter#key()} expression, null if the method is limited as a whole
+     */
+    private final RateLimiterKeyExpression keyExpression;
+    /**
+     * number of tokens of one call, {@link RateLimiter#permits()}
+     */
+    private final int permits;
+    /**
+     * compiled {@link RateLimiter#permitsExpression()}, null if the permits are static
+     */
+    private final RateLimiterKeyExpression permitsExpression;
+    /**
+     * pre-registered metrics of the method
+     */
+    private final RateLimiterKeyMetrics keyMetrics;
+
+    public RateLimiterMethodDescriptor(Class<?> targetClass, Method method, RateLimiter[] rateLimiters, MinBoxRateLimiter minBoxRateLimiter) {
+        this(targetClass, method, rateLimiters, minBoxRateLimiter, RateLimiterMetrics.NOOP);
+    }
+
+    public RateLimiterMethodDescriptor(Class<?> targetClass, Method method, RateLimiter[] rateLimiters, MinBoxRateLimiter minBoxRateLimiter,
+                                       RateLimiterMetrics rateLimiterMetrics) {
+        RateLimiter rateLimiter = rateLimiters[0];
+        this.targetClass = targetClass;
+        this.method = method;
+        this.rateLimiter = rateLimiter;
+        this.rateLimiters = rateLimiters;
+        this.requestKey = (targetClass.getName() + "#" + method.getName()).intern();
+        this.QPS = rateLimiter.QPS();
+        this.maxWait = rateLimiter.maxWait();
+        this.adaptiveConcurrency = rateLimiter.adaptiveConcurrency();
+        this.maxConcurrency = getMaxConcurrency(rateLimiter);
+        this.invocationType = InvocationType.of(method.getReturnType());
+        this.minBoxRateLimiter = minBoxRateLimiter;
+        this.reactorRateLimiterAdapter = (invocationType == InvocationType.MONO || invocationType == InvocationType.FLUX) ?
+            new ReactorRateLimiterAdapter(minBoxRateLimiter) : null;
+        this.keyExpression = createKeyExpression(rateLimiter, method);
+        this.permits = Math.max(1, rateLimiter.permits());
+        this.permitsExpression = StringUtils.hasText(rateLimiter.permitsExpression()) ?
+            new RateLimiterKeyExpression(rateLimiter.permitsExpression(), method) : null;
+        this.keyMetrics = rateLimiterMetrics.getKeyMetrics(requestKey);
+        if (rateLimiters.length > 1) {
+            this.dimensionQPS = new Double[rateLimiters.length];
+            this.dimensionKeys = new String[rateLimiters.length];
+            this.dimensionKeyExpressions = new RateLimiterKeyExpression[rateLimiters.length];
+            for (int i = 0; i < rateLimiters.length; i++) {
+                this.dimensionQPS[i] = rateLimiters[i].QPS();
+                this.dimensionKeys[i] = i == 0 ? requestKey : (requestKey + "[" + i + "]").intern();
+                this.dimensionKeyExpressions[i] = createKeyExpression(rateLimiters[i], method);
+            }
+        } else {
+            this.dimensionQPS = null;
+            this.dimensionKeys = null;
+            this.dimensionKeyExpressions = null;
+        }
+    }
+
+    private static RateLimiterKeyExpression createKeyExpression(RateLimiter rateLimiter, Method method) {
+        return StringUtils.hasText(rateLimiter.key()) ? new RateLimiterKeyExpression(rateLimiter.key(), method) : null;
+    }
+
+    public Class<?> getTargetClass() {
+        return targetClass;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public String getRequestKey() {
+        return requestKey;
+    }
+
+    /**
+     * get request key of one call
+     *
+     * @param args method arguments
+     * @return request key, followed by the value of the key expression if any
+     */
+    public String getRequestKey(Object[] args) {
+        if (keyExpression == null) {
+            return requestKey;
+        }
+        return appendKeyValue(requestKey, keyExpression.getValue(args));
+    }
+
+    /**
+     * get request key of each dimension of one call
+     *
+     * @param args method arguments
+     * @return request keys, followed by the value of their key expression if any
+     */
+    public String[] getRequestKeys(Object[] args) {
+        String[] requestKeys = new String[dimensionKeys.length];
+        for (int i = 0; i < requestKeys.length; i++) {
+            RateLimiterKeyExpression dimensionKeyExpression = dimensionKeyExpressions[i];
+            requestKeys[i] = dimensionKeyExpression == null ? dimensionKeys[i] :
+                appendKeyValue(dimensionKeys[i], dimensionKeyExpression.getValue(args));
+        }
+        return requestKeys;
+    }
+
+    /**
+     * get number of tokens of one call
+     *
+     * @param args method arguments
+     * @return permits, at least 1
+     */
+    public int getPermits(Object[] args) {
+        if (permitsExpression == null) {
+            return permits;
+        }
+        Integer value = permitsExpression.getValue(args, Integer.class);
+        return value != null && value > 1 ? value : 1;
+    }
+
+    private static String appendKeyValue(String requestKey, String value) {
+        return new StringBuilder(requestKey.length() + 1 + value.length())
+            .append(requestKey).append(MinBoxRateLimiter.KEY_SEPARATOR).append(value).toString();
+    }
+
+    /**
+     * Whether the method has several limits
+     *
+     * @return true : multi-dimension method
+     */
+    public boolean isMultiDimension() {
+        return dimensionKeys != null;
+    }
+
+    public RateLimiter[] getRateLimiters() {
+        return rateLimiters;
+    }
+
+    public Double[] getDimensionQPS() {
+        return dimensionQPS;
+    }
+
+    /**
+     * get maximum number of calls in flight
+     * An adaptive limit without {@link RateLimiter#maxConcurrency()} is bounded by the QPS,
+     * or not bounded when the QPS comes from the config centre or the global QPS
+     *
+     * @param rateLimiter {@link RateLimiter}
+     * @return max concurrency, 0 if not limited
+     */
+    private static int getMaxConcurrency(RateLimiter rateLimiter) {
+        if (rateLimiter.maxConcurrency() > 0 || !rateLimiter.adaptiveConcurrency()) {
+            return Math.max(0, rateLimiter.maxConcurrency());
+        }
+        return rateLimiter.QPS() > 0 ? (int) Math.min(Integer.MAX_VALUE, Math.ceil(rateLimiter.QPS())) : Integer.MAX_VALUE;
+    }
+
+    public RateLimiterKeyExpression getKeyExpression() {
+        return keyExpression;
+    }
+
+    public Double getQPS() {
+        return QPS;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    public InvocationType getInvocationType() {
+        return invocationType;
+    }
+
+    public MinBoxRateLimiter getMinBoxRateLimiter() {
+        return minBoxRateLimiter;
+    }
+
+    public ReactorRateLimiterAdapter getReactorRateLimiterAdapter() {
+        return reactorRateLimiterAdapter;
+    }
+
+    public RateLimiterKeyMetrics getKeyMetrics() {
+        return keyMetrics;
+    }
+
+    /**
+     * How the method result is produced,
+     * the limit of an asynchronous method is applied without blocking the calling thread
+     */
+    public enum InvocationType {
+        /**
+         * plain blocking method, also a method returning a plain {@link java.util.concurrent.Future}:
+         * its completion can not be observed without blocking, the result is returned as is
+         */
+        BLOCKING,
+        /**
+         * method declared to return a {@link CompletionStage} or a {@link CompletableFuture}
+         */
+        COMPLETION_STAGE,
+        /**
+         * method returning a reactor {@code Mono}
+         */
+        MONO,
+        /**
+         * method returning a reactor {@code Flux}
+         */
+        FLUX;
+
+        static InvocationType of(Class<?> returnType) {
+            if (CompletionStage.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(CompletableFuture.class)) {
+                return COMPLETION_STAGE;
+            }
+            if (REACTOR_PRESENT && ReactorRateLimiterAdapter.isMono(returnType)) {
+                return MONO;
+            }
+            if (REACTOR_PRESENT && ReactorRateLimiterAdapter.isFlux(returnType)) {
+                return FLUX;
+            }
+            return BLOCKING;
+        }
+    }
+}
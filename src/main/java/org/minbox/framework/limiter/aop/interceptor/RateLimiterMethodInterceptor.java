@@ -20,16 +20,43 @@ package org.minbox.framework.limiter.aop.interceptor;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
 import org.minbox.framework.limiter.MinBoxRateLimiter;
+import org.minbox.framework.limiter.concurrency.AdaptiveConcurrencyLimiter;
+import org.minbox.framework.limiter.concurrency.ConcurrencyLimiter;
+import org.minbox.framework.limiter.concurrency.ConcurrencyPermit;
+import org.minbox.framework.limiter.concurrency.LocalConcurrencyLimiter;
+import org.minbox.framework.limiter.metrics.RateLimiterKeyMetrics;
+import org.minbox.framework.limiter.metrics.RateLimiterMetrics;
+import org.minbox.framework.limiter.reactive.ReactorRateLimiterAdapter;
 import org.minbox.framework.limiter.result.RateLimiterOverFlowResponse;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.aop.ProxyMethodInvocation;
 import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
 import org.springframework.core.BridgeMethodResolver;
+import org.springframework.core.MethodClassKey;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * ApiBoot RateLimiter MethodInterceptor
@@ -37,7 +64,7 @@ import java.lang.reflect.Method;
  *
  * @author 恒宇少年
  */
-public class RateLimiterMethodInterceptor implements MethodInterceptor {
+public class RateLimiterMethodInterceptor implements MethodInterceptor, BeanFactoryAware {
     /**
      * logger instance
      */
@@ -50,6 +77,32 @@ public class RateLimiterMethodInterceptor implements MethodInterceptor {
      * Response results after flow exceeding
      */
     private RateLimiterOverFlowResponse overFlowRequest;
+    /**
+     * Cache a descriptor for each (invocation target class, method)
+     */
+    private final ConcurrentMap<MethodClassKey, RateLimiterMethodDescriptor> descriptorCache = new ConcurrentHashMap<>(256);
+    /**
+     * Spring Bean Factory
+     * Resolve the rate limiter named by {@link org.minbox.framework.limiter.annotation.RateLimiter#limiter()}
+     */
+    private BeanFactory beanFactory;
+    /**
+     * rate limiter metrics, method meters are resolved once per descriptor
+     */
+    private RateLimiterMetrics rateLimiterMetrics = RateLimiterMetrics.NOOP;
+    /**
+     * Limit the calls in flight of the methods with a {@link org.minbox.framework.limiter.annotation.RateLimiter#maxConcurrency()}
+     */
+    private ConcurrencyLimiter concurrencyLimiter = new LocalConcurrencyLimiter();
+    /**
+     * Limit the calls in flight of the methods with a {@link org.minbox.framework.limiter.annotation.RateLimiter#adaptiveConcurrency()}
+     */
+    private ConcurrencyLimiter adaptiveConcurrencyLimiter = new AdaptiveConcurrencyLimiter();
+    /**
+     * Proceed the asynchronous methods whose token is granted after the call returned,
+     * instead of the thread completing the token request, such as the redis I/O event loop
+     */
+    private Executor invocationExecutor = ForkJoinPool.commonPool();
 
     public RateLimiterMethodInterceptor(MinBoxRateLimiter minBoxRateLimiter, RateLimiterOverFlowResponse overFlowRequest) {
         this.minBoxRateLimiter = minBoxRateLimiter;
@@ -60,6 +113,10 @@ public class RateLimiterMethodInterceptor implements MethodInterceptor {
 
     /**
      * Processing Current Limited Business Logic
+     * <p>
+     * Methods returning a {@link CompletionStage}, a {@code Mono} or a {@code Flux} are limited without blocking:
+     * the token is requested asynchronously. The method proceeds on the calling thread when the token is granted at once,
+     * such as by a local limiter, and on the {@link #setInvocationExecutor(Executor) invocation executor} otherwise
      *
      * @param invocation method invocation
      * @return method result
@@ -68,22 +125,154 @@ public class RateLimiterMethodInterceptor implements MethodInterceptor {
     @Override
     public Object invoke(MethodInvocation invocation) throws Throwable {
         try {
-            Class<?> targetClass = (invocation.getThis() != null ? AopUtils.getTargetClass(invocation.getThis()) : null);
-            Method executeMethod = invocation.getMethod();
-
-            org.minbox.framework.limiter.annotation.RateLimiter rateLimiter = this.getMethodAnnotation(targetClass, executeMethod, org.minbox.framework.limiter.annotation.RateLimiter.class);
-
-            // request key
-            String requestKey = formatRequestKey(targetClass, executeMethod);
-            logger.debug("RateLimiter Request Key：{}", requestKey);
-            boolean acquire = this.minBoxRateLimiter.tryAcquire(rateLimiter.QPS(), requestKey);
-            if (acquire) {
-                return invocation.proceed();
+            RateLimiterMethodDescriptor descriptor = getMethodDescriptor(invocation);
+            if (descriptor.getMaxConcurrency() > 0) {
+                return invokeBulkhead(invocation, descriptor);
             }
+            return invokeRateLimited(invocation, descriptor);
         } catch (Exception e) {
             logger.error("Current Limiting Request Encountered Exception.", e);
             throw e;
         }
+    }
+
+    /**
+     * Limit the calls in flight of the method, then its QPS
+     * The permit is released when the call completes, at once if the QPS rejects the call.
+     * It is started when the method proceeds, the latency of the call is measured from there
+     *
+     * @param invocation method invocation
+     * @param descriptor method descriptor
+     * @return method result
+     * @throws Throwable error instance
+     */
+    private Object invokeBulkhead(MethodInvocation invocation, RateLimiterMethodDescriptor descriptor) throws Throwable {
+        switch (descriptor.getInvocationType()) {
+            case MONO:
+                return ReactorInvoker.invokeBulkheadMono(this, invocation, descriptor);
+            case FLUX:
+                return ReactorInvoker.invokeBulkheadFlux(this, invocation, descriptor);
+            default:
+                break;
+        }
+        boolean completionStage = descriptor.getInvocationType() == RateLimiterMethodDescriptor.InvocationType.COMPLETION_STAGE;
+        ConcurrencyPermit permit = tryAcquireConcurrency(descriptor);
+        if (permit == null) {
+            return completionStage ? toCompletionStage(overflow(invocation)).toCompletableFuture() : overflow(invocation);
+        }
+        MethodInvocation permitInvocation = new ConcurrencyPermitInvocation(invocation, permit);
+        if (completionStage) {
+            try {
+                CompletableFuture<Object> result = (CompletableFuture<Object>) invokeRateLimited(permitInvocation, descriptor);
+                return result.whenComplete((value, e) -> permit.release());
+            } catch (Throwable e) {
+                permit.release();
+                throw e;
+            }
+        }
+        try {
+            return invokeRateLimited(permitInvocation, descriptor);
+        } finally {
+            permit.release();
+        }
+    }
+
+    /**
+     * Attempt to obtain a concurrency permit of the method
+     *
+     * @param descriptor method descriptor
+     * @return permit, null if the calls in flight reached the limit
+     */
+    private ConcurrencyPermit tryAcquireConcurrency(RateLimiterMethodDescriptor descriptor) {
+        long start = System.nanoTime();
+        ConcurrencyLimiter limiter = descriptor.isAdaptiveConcurrency() ? adaptiveConcurrencyLimiter : concurrencyLimiter;
+        ConcurrencyPermit permit = limiter.tryAcquire(descriptor.getRequestKey(), descriptor.getMaxConcurrency());
+        if (permit == null) {
+            descriptor.getKeyMetrics().record(false, System.nanoTime() - start);
+        }
+        return permit;
+    }
+
+    /**
+     * Limit the QPS of the method
+     *
+     * @param invocation method invocation
+     * @param descriptor method descriptor
+     * @return method result
+     * @throws Throwable error instance
+     */
+    private Object invokeRateLimited(MethodInvocation invocation, RateLimiterMethodDescriptor descriptor) throws Throwable {
+        if (descriptor.isMultiDimension()) {
+            return invokeMultiDimension(invocation, descriptor);
+        }
+        long start = System.nanoTime();
+        String requestKey = descriptor.getRequestKey(invocation.getArguments());
+        int permits = descriptor.getPermits(invocation.getArguments());
+        if (logger.isDebugEnabled()) {
+            logger.debug("RateLimiter Request Key：{}, permits：{}", requestKey, permits);
+        }
+        switch (descriptor.getInvocationType()) {
+            case COMPLETION_STAGE:
+                return invokeCompletionStage(invocation, descriptor, start, descriptor.getMinBoxRateLimiter().tryAcquireAsync(descriptor.getQPS(), requestKey, permits));
+            case MONO:
+                return ReactorInvoker.invokeMono(this, invocation, descriptor, start, requestKey, permits);
+            case FLUX:
+                return ReactorInvoker.invokeFlux(this, invocation, descriptor, start, requestKey, permits);
+            default:
+                break;
+        }
+        boolean acquire = descriptor.getMaxWait() > 0 ?
+            descriptor.getMinBoxRateLimiter().acquire(descriptor.getQPS(), requestKey, permits, descriptor.getMaxWait(), TimeUnit.MILLISECONDS) :
+            descriptor.getMinBoxRateLimiter().tryAcquire(descriptor.getQPS(), requestKey, permits);
+        descriptor.getKeyMetrics().record(acquire, System.nanoTime() - start);
+        if (acquire) {
+            return invocation.proceed();
+        }
+        return overflow(invocation);
+    }
+
+    /**
+     * Limit a method with several {@link org.minbox.framework.limiter.annotation.RateLimiter} annotations
+     * The tokens of all dimensions are requested together
+     *
+     * @param invocation method invocation
+     * @param descriptor method descriptor
+     * @return method result
+     * @throws Throwable error instance
+     */
+    private Object invokeMultiDimension(MethodInvocation invocation, RateLimiterMethodDescriptor descriptor) throws Throwable {
+        long start = System.nanoTime();
+        String[] requestKeys = descriptor.getRequestKeys(invocation.getArguments());
+        int permits = descriptor.getPermits(invocation.getArguments());
+        if (logger.isDebugEnabled()) {
+            logger.debug("RateLimiter Request Keys：{}, permits：{}", Arrays.toString(requestKeys), permits);
+        }
+        MinBoxRateLimiter minBoxRateLimiter = descriptor.getMinBoxRateLimiter();
+        switch (descriptor.getInvocationType()) {
+            case COMPLETION_STAGE:
+                return invokeCompletionStage(invocation, descriptor, start, minBoxRateLimiter.tryAcquireAsync(descriptor.getDimensionQPS(), requestKeys, permits));
+            case MONO:
+                return ReactorInvoker.invokeMono(this, invocation, descriptor, start, requestKeys, permits);
+            case FLUX:
+                return ReactorInvoker.invokeFlux(this, invocation, descriptor, start, requestKeys, permits);
+            default:
+                break;
+        }
+        boolean acquire = minBoxRateLimiter.tryAcquire(descriptor.getDimensionQPS(), requestKeys, permits);
+        descriptor.getKeyMetrics().record(acquire, System.nanoTime() - start);
+        if (acquire) {
+            return invocation.proceed();
+        }
+        return overflow(invocation);
+    }
+
+    /**
+     * Response results after flow exceeding
+     *
+     * @param invocation method invocation
+     * @return overflow result
+     */
+    private Object overflow(MethodInvocation invocation) {
         // If an instance is created
         if (!ObjectUtils.isEmpty(overFlowRequest)) {
             return overFlowRequest.overflow(invocation.getArguments());
@@ -92,29 +281,284 @@ public class RateLimiterMethodInterceptor implements MethodInterceptor {
     }
 
     /**
-     * format request key
+     * Limit a method returning a {@link CompletionStage}
+     *
+     * @param invocation method invocation
+     * @param descriptor method descriptor
+     * @param start      start of the token request, {@link System#nanoTime()} based
+     * @param acquire    asynchronous token request
+     * @return method result
+     */
+    private CompletableFuture<Object> invokeCompletionStage(MethodInvocation invocation, RateLimiterMethodDescriptor descriptor, long start,
+                                                            CompletionStage<Boolean> acquire) {
+        RateLimiterKeyMetrics keyMetrics = descriptor.getKeyMetrics();
+        return continueOnCallerOrExecutor(acquire)
+            .thenCompose(allowed -> {
+                keyMetrics.record(allowed, System.nanoTime() - start);
+                return allowed ? proceedCompletionStage(invocation) : toCompletionStage(overflow(invocation));
+            })
+            .toCompletableFuture();
+    }
+
+    private static CompletionStage<Object> proceedCompletionStage(MethodInvocation invocation) {
+        try {
+            return toCompletionStage(invocation.proceed());
+        } catch (Throwable e) {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+    }
+
+    private static CompletionStage<Object> toCompletionStage(Object result) {
+        if (result instanceof CompletionStage) {
+            return (CompletionStage<Object>) result;
+        }
+        return CompletableFuture.completedFuture(result);
+    }
+
+    /**
+     * Continue with the token decision on the calling thread if it is already made,
+     * on the invocation executor otherwise, never on the thread completing the token request
+     *
+     * @param acquire asynchronous token request
+     * @return token decision
+     */
+    private CompletionStage<Boolean> continueOnCallerOrExecutor(CompletionStage<Boolean> acquire) {
+        CompletableFuture<Boolean> future = acquire.toCompletableFuture();
+        return future.isDone() ? future : future.thenApplyAsync(Function.identity(), invocationExecutor);
+    }
+
+    /**
+     * get an invocation that proceeds from this interceptor once more
+     * A deferred result may be subscribed several times, such as by a {@code retry()},
+     * each subscription proceeds its own clone through the remaining interceptors
+     *
+     * @param invocation method invocation, not proceeded yet
+     * @return invocation to proceed
+     */
+    static MethodInvocation invocableClone(MethodInvocation invocation) {
+        if (invocation instanceof ProxyMethodInvocation) {
+            return ((ProxyMethodInvocation) invocation).invocableClone();
+        }
+        if (invocation instanceof ConcurrencyPermitInvocation) {
+            return ((ConcurrencyPermitInvocation) invocation).invocableClone();
+        }
+        return invocation;
+    }
+
+    /**
+     * get method descriptor
+     * <p>
+     * Keyed by the runtime class of the invocation target, which is constant per target bean,
+     * so the target class and annotation are only resolved on the first call
+     *
+     * @param invocation method invocation
+     * @return method descriptor
+     */
+    private RateLimiterMethodDescriptor getMethodDescriptor(MethodInvocation invocation) {
+        Method executeMethod = invocation.getMethod();
+        Object target = invocation.getThis();
+        MethodClassKey cacheKey = new MethodClassKey(executeMethod, target != null ? target.getClass() : null);
+        RateLimiterMethodDescriptor descriptor = this.descriptorCache.get(cacheKey);
+        if (descriptor == null) {
+            descriptor = this.descriptorCache.computeIfAbsent(cacheKey, key -> {
+                Class<?> targetClass = (target != null ? AopUtils.getTargetClass(target) : executeMethod.getDeclaringClass());
+                org.minbox.framework.limiter.annotation.RateLimiter[] rateLimiters = this.getMethodAnnotations(targetClass, executeMethod, org.minbox.framework.limiter.annotation.RateLimiter.class);
+                return new RateLimiterMethodDescriptor(targetClass, executeMethod, rateLimiters, getRateLimiter(rateLimiters[0]), this.rateLimiterMetrics);
+            });
+        }
+        return descriptor;
+    }
+
+    /**
+     * get rate limiter of the method
+     *
+     * @param rateLimiter method declared annotation
+     * @return the rate limiter bean named by the annotation, the default rate limiter if not named
+     */
+    private MinBoxRateLimiter getRateLimiter(org.minbox.framework.limiter.annotation.RateLimiter rateLimiter) {
+        if (!StringUtils.hasText(rateLimiter.limiter())) {
+            return this.minBoxRateLimiter;
+        }
+        Assert.notNull(this.beanFactory, "No BeanFactory to resolve the rate limiter: " + rateLimiter.limiter());
+        return this.beanFactory.getBean(rateLimiter.limiter(), MinBoxRateLimiter.class);
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        this.beanFactory = beanFactory;
+    }
+
+    /**
+     * set rate limiter metrics
+     * Only applies to the methods called for the first time afterwards, set it before the first call
+     *
+     * @param rateLimiterMetrics rate limiter metrics
+     */
+    public void setRateLimiterMetrics(RateLimiterMetrics rateLimiterMetrics) {
+        Assert.notNull(rateLimiterMetrics, "RateLimiterMetrics is required.");
+        this.rateLimiterMetrics = rateLimiterMetrics;
+    }
+
+    /**
+     * set concurrency limiter, default {@link LocalConcurrencyLimiter}
+     * Such as a {@link org.minbox.framework.limiter.concurrency.RedisConcurrencyLimiter} to share the limit between nodes
+     *
+     * @param concurrencyLimiter concurrency limiter
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        Assert.notNull(concurrencyLimiter, "ConcurrencyLimiter is required.");
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * set adaptive concurrency limiter, default {@link AdaptiveConcurrencyLimiter}
+     *
+     * @param adaptiveConcurrencyLimiter concurrency limiter of the adaptive methods
+     */
+    public void setAdaptiveConcurrencyLimiter(ConcurrencyLimiter adaptiveConcurrencyLimiter) {
+        Assert.notNull(adaptiveConcurrencyLimiter, "ConcurrencyLimiter is required.");
+        this.adaptiveConcurrencyLimiter = adaptiveConcurrencyLimiter;
+    }
+
+    /**
+     * set invocation executor of the asynchronous methods, default {@link ForkJoinPool#commonPool()}
+     * Used when the token is granted after the call returned, such as by the reactive redis executor.
+     * The thread local context of the caller, such as the request attributes, the transaction or the security context,
+     * is only carried over by an executor propagating it, such as a task executor with a task decorator
      *
-     * @param targetClass   target class
-     * @param executeMethod execute method
-     * @return request key
+     * @param invocationExecutor executor proceeding the methods
      */
-    private String formatRequestKey(Class<?> targetClass, Method executeMethod) {
-        return String.format("%s#%s", targetClass.getName(), executeMethod.getName());
+    public void setInvocationExecutor(Executor invocationExecutor) {
+        Assert.notNull(invocationExecutor, "Executor is required.");
+        this.invocationExecutor = invocationExecutor;
     }
 
     /**
-     * get method declared annotation
+     * get method declared annotations
+     * Repeated annotations are unwrapped from their container
      *
      * @param targetClass     class instance
      * @param method          method instance
      * @param annotationClass annotation class
      * @param <T>             annotation type
-     * @return annotation instance
+     * @return annotation instances
      */
-    private <T> T getMethodAnnotation(Class targetClass, Method method, Class annotationClass) {
+    private <T extends Annotation> T[] getMethodAnnotations(Class targetClass, Method method, Class<T> annotationClass) {
         Method specificMethod = ClassUtils.getMostSpecificMethod(method, targetClass);
         // declared method object instance
         Method declaredMethod = BridgeMethodResolver.findBridgedMethod(specificMethod);
-        return (T) declaredMethod.getDeclaredAnnotation(annotationClass);
+        return declaredMethod.getDeclaredAnnotationsByType(annotationClass);
+    }
+
+    /**
+     * Limit methods returning a reactor publisher,
+     * only loaded when reactor is on the classpath
+     * <p>
+     * The token is requested on each subscription, each subscription proceeds its own clone of the invocation
+     */
+    private static class ReactorInvoker {
+
+        static Object invokeMono(RateLimiterMethodInterceptor interceptor, MethodInvocation invocation, RateLimiterMethodDescriptor descriptor, long start,
+                                 String requestKey, int permits) {
+            RateLimiterKeyMetrics keyMetrics = descriptor.getKeyMetrics();
+            ReactorRateLimiterAdapter adapter = descriptor.getReactorRateLimiterAdapter();
+            return adapter.limit(tryAcquire(interceptor, () -> descriptor.getMinBoxRateLimiter().tryAcquireAsync(descriptor.getQPS(), requestKey, permits)),
+                () -> Mono.from(proceed(keyMetrics, start, invocation)),
+                () -> Mono.from(overflow(keyMetrics, start, interceptor, invocation)));
+        }
+
+        static Object invokeFlux(RateLimiterMethodInterceptor interceptor, MethodInvocation invocation, RateLimiterMethodDescriptor descriptor, long start,
+                                 String requestKey, int permits) {
+            RateLimiterKeyMetrics keyMetrics = descriptor.getKeyMetrics();
+            ReactorRateLimiterAdapter adapter = descriptor.getReactorRateLimiterAdapter();
+            return adapter.limitMany(tryAcquire(interceptor, () -> descriptor.getMinBoxRateLimiter().tryAcquireAsync(descriptor.getQPS(), requestKey, permits)),
+                () -> proceed(keyMetrics, start, invocation),
+                () -> overflow(keyMetrics, start, interceptor, invocation));
+        }
+
+        static Object invokeMono(RateLimiterMethodInterceptor interceptor, MethodInvocation invocation, RateLimiterMethodDescriptor descriptor, long start,
+                                 String[] requestKeys, int permits) {
+            RateLimiterKeyMetrics keyMetrics = descriptor.getKeyMetrics();
+            ReactorRateLimiterAdapter adapter = descriptor.getReactorRateLimiterAdapter();
+            return adapter.limit(tryAcquire(interceptor, () -> descriptor.getMinBoxRateLimiter().tryAcquireAsync(descriptor.getDimensionQPS(), requestKeys, permits)),
+                () -> Mono.from(proceed(keyMetrics, start, invocation)),
+                () -> Mono.from(overflow(keyMetrics, start, interceptor, invocation)));
+        }
+
+        static Object invokeFlux(RateLimiterMethodInterceptor interceptor, MethodInvocation invocation, RateLimiterMethodDescriptor descriptor, long start,
+                                 String[] requestKeys, int permits) {
+            RateLimiterKeyMetrics keyMetrics = descriptor.getKeyMetrics();
+            ReactorRateLimiterAdapter adapter = descriptor.getReactorRateLimiterAdapter();
+            return adapter.limitMany(tryAcquire(interceptor, () -> descriptor.getMinBoxRateLimiter().tryAcquireAsync(descriptor.getDimensionQPS(), requestKeys, permits)),
+                () -> proceed(keyMetrics, start, invocation),
+                () -> overflow(keyMetrics, start, interceptor, invocation));
+        }
+
+        static Object invokeBulkheadMono(RateLimiterMethodInterceptor interceptor, MethodInvocation invocation, RateLimiterMethodDescriptor descriptor) {
+            return Mono.defer(() -> {
+                ConcurrencyPermit permit = interceptor.tryAcquireConcurrency(descriptor);
+                if (permit == null) {
+                    return Mono.from(toPublisher(interceptor.overflow(invocation)));
+                }
+                return Mono.from(proceedRateLimited(interceptor, new ConcurrencyPermitInvocation(invocation, permit), descriptor))
+                    .doFinally(signal -> permit.release());
+            });
+        }
+
+        static Object invokeBulkheadFlux(RateLimiterMethodInterceptor interceptor, MethodInvocation invocation, RateLimiterMethodDescriptor descriptor) {
+            return Flux.defer(() -> {
+                ConcurrencyPermit permit = interceptor.tryAcquireConcurrency(descriptor);
+                if (permit == null) {
+                    return toPublisher(interceptor.overflow(invocation));
+                }
+                return Flux.from(proceedRateLimited(interceptor, new ConcurrencyPermitInvocation(invocation, permit), descriptor))
+                    .doFinally(signal -> permit.release());
+            });
+        }
+
+        /**
+         * Request the token on subscription, continue on the subscribing thread or the invocation executor
+         */
+        private static Mono<Boolean> tryAcquire(RateLimiterMethodInterceptor interceptor, Supplier<CompletionStage<Boolean>> acquire) {
+            return Mono.defer(() -> Mono.fromCompletionStage(interceptor.continueOnCallerOrExecutor(acquire.get())));
+        }
+
+        /**
+         * Limit the QPS of a call holding a concurrency permit, on subscription
+         */
+        private static Publisher<Object> proceedRateLimited(RateLimiterMethodInterceptor interceptor, MethodInvocation invocation, RateLimiterMethodDescriptor descriptor) {
+            try {
+                return toPublisher(interceptor.invokeRateLimited(invocation, descriptor));
+            } catch (Throwable e) {
+                return Mono.error(e);
+            }
+        }
+
+        private static Publisher<Object> proceed(RateLimiterKeyMetrics keyMetrics, long start, MethodInvocation invocation) {
+            keyMetrics.record(true, System.nanoTime() - start);
+            return proceed(invocation);
+        }
+
+        private static Publisher<Object> overflow(RateLimiterKeyMetrics keyMetrics, long start, RateLimiterMethodInterceptor interceptor, MethodInvocation invocation) {
+            keyMetrics.record(false, System.nanoTime() - start);
+            return toPublisher(interceptor.overflow(invocation));
+        }
+
+        private static Publisher<Object> proceed(MethodInvocation invocation) {
+            try {
+                return toPublisher(invocableClone(invocation).proceed());
+            } catch (Throwable e) {
+                return Mono.error(e);
+            }
+        }
+
+        private static Publisher<Object> toPublisher(Object result) {
+            if (result instanceof Publisher) {
+                return (Publisher<Object>) result;
+            }
+            return Mono.justOrEmpty(result);
+        }
     }
 }
@@ -43,4 +43,14 @@ public interface RateLimiterConfigCentre {
      * @throws RateLimiterException ApiBoot Exception
      */
     void setQps(String configKey, Long QPS) throws RateLimiterException;
+
+    /**
+     * Add a listener of QPS changes
+     * default no changes are notified
+     *
+     * @param listener config change listener
+     */
+    default void addConfigChangeListener(RateLimiterConfigChangeListener listener) {
+        //...
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.centre;
+
+/**
+ * ApiBoot RateLimiter config change listener
+ * Notified once per request key whose QPS changed in the configuration center
+ *
+ * @author 恒宇少年
+ * @see RateLimiterConfigCentre#addConfigChangeListener(RateLimiterConfigChangeListener)
+ */
+@FunctionalInterface
+public interface RateLimiterConfigChangeListener {
+    /**
+     * QPS of a request key changed
+     *
+     * @param configKey config key, the request key
+     * @param QPS       new QPS value, {@link org.minbox.framework.limiter.centre.support.AbstractRateLimiterConfigCentre#DEFAULT_QPS} if removed
+     */
+    void onQpsChange(String configKey, Long QPS);
+}
@@ -18,16 +18,37 @@
 package org.minbox.framework.limiter.centre.support;
 
 import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
+import org.minbox.framework.limiter.centre.RateLimiterConfigChangeListener;
 import org.minbox.framework.limiter.exception.RateLimiterException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.UnaryOperator;
 
 /**
  * The {@link RateLimiterConfigCentre} abstract class
+ * <p>
+ * Subclasses publish the loaded config as an immutable snapshot of parsed QPS values,
+ * replaced as a whole when the config changes. A lookup is one volatile read and two hash lookups,
+ * no lock, no parsing.
+ * <p>
+ * Replacing the snapshot diffs it with the previous one under the lock, the {@link RateLimiterConfigChangeListener}s
+ * are notified after the lock is released. The request key of a changed property key is derived by {@link #parseConfigKey(String)},
+ * the looked up request keys it can not derive are remembered by property key.
  *
  * @author 恒宇少年
  */
@@ -45,6 +66,207 @@ public abstract class AbstractRateLimiterConfigCentre implements RateLimiterConf
      * config properties key and value split
      */
     public static final String PROPERTIES_KEY_VALUE_SPLIT = "=";
+    /**
+     * maximum number of cached property keys
+     */
+    static final int MAXIMUM_PROPERTY_KEY_CACHE_SIZE = 10000;
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(AbstractRateLimiterConfigCentre.class);
+    /**
+     * parsed QPS config, property key -> QPS
+     * never modified, replaced as a whole
+     */
+    private volatile Map<String, Long> qpsSnapshot = Collections.emptyMap();
+    /**
+     * Cache the formatted property key of each request key
+     */
+    private final ConcurrentMap<String, String> propertyKeys = new ConcurrentHashMap<>();
+    /**
+     * Request keys that {@link #parseConfigKey(String)} does not derive back, property key -> request keys
+     */
+    private final ConcurrentMap<String, Set<String>> underivedConfigKeys = new ConcurrentHashMap<>();
+    /**
+     * QPS change listeners
+     */
+    private final List<RateLimiterConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void addConfigChangeListener(RateLimiterConfigChangeListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * get QPS from the config snapshot
+     *
+     * @param configKey config key
+     * @return qps, {@link #DEFAULT_QPS} if not configured
+     */
+    protected Long getSnapshotQps(String configKey) {
+        Long qps = this.qpsSnapshot.get(getPropertyKey(configKey));
+        return qps != null ? qps : DEFAULT_QPS;
+    }
+
+    /**
+     * get current config snapshot
+     *
+     * @return unmodifiable property key -> QPS map
+     */
+    protected Map<String, Long> getSnapshot() {
+        return this.qpsSnapshot;
+    }
+
+    /**
+     * Replace the config snapshot with the given properties
+     * Values that are not numbers are skipped
+     *
+     * @param properties config properties
+     * @return previous snapshot
+     */
+    protected Map<String, Long> updateSnapshot(Properties properties) {
+        Map<String, Long> snapshot = parseQps(properties);
+        return updateSnapshot(previous -> snapshot);
+    }
+
+    /**
+     * parse the QPS of the config properties
+     * Values that are not numbers are skipped
+     *
+     * @param properties config properties
+     * @return property key -> QPS
+     */
+    protected Map<String, Long> parseQps(Properties properties) {
+        Map<String, Long> qps = new HashMap<>();
+        for (String propertyKey : properties.stringPropertyNames()) {
+            String value = properties.getProperty(propertyKey);
+            try {
+                qps.put(propertyKey, Long.valueOf(value.trim()));
+            } catch (NumberFormatException e) {
+                logger.warn("Ignore RateLimiter config {}, the QPS is not a number：{}", propertyKey, value);
+            }
+        }
+        return qps;
+    }
+
+    /**
+     * Replace the QPS of one key in the config snapshot
+     * Copy on write, the snapshot is replaced by a copy containing the new value
+     *
+     * @param configKey config key
+     * @param QPS       QPS value
+     * @return previous snapshot
+     */
+    protected Map<String, Long> updateSnapshot(String configKey, Long QPS) {
+        String propertyKey = getPropertyKey(configKey);
+        Map<String, Long> previous;
+        boolean changed;
+        synchronized (this) {
+            previous = this.qpsSnapshot;
+            Map<String, Long> snapshot = new HashMap<>(previous);
+            snapshot.put(propertyKey, QPS);
+            this.qpsSnapshot = Collections.unmodifiableMap(snapshot);
+            changed = !QPS.equals(previous.get(propertyKey));
+        }
+        if (changed) {
+            fireQpsChanges(Collections.singleton(propertyKey));
+        }
+        return previous;
+    }
+
+    /**
+     * Publish the config snapshot computed from the previous one
+     * The update runs under the snapshot lock and must not call the config server,
+     * it returns the previous snapshot itself to keep it. The listeners are notified after the lock is released.
+     *
+     * @param update computes the new snapshot from the previous one
+     * @return previous snapshot
+     */
+    protected Map<String, Long> updateSnapshot(UnaryOperator<Map<String, Long>> update) {
+        Map<String, Long> previous;
+        Set<String> changedKeys;
+        synchronized (this) {
+            previous = this.qpsSnapshot;
+            Map<String, Long> snapshot = update.apply(previous);
+            if (snapshot == previous) {
+                return previous;
+            }
+            this.qpsSnapshot = Collections.unmodifiableMap(snapshot);
+            changedKeys = getChangedKeys(previous, snapshot);
+        }
+        fireQpsChanges(changedKeys);
+        return previous;
+    }
+
+    /**
+     * get the property keys changed between two snapshots
+     *
+     * @param previous previous snapshot
+     * @param current  current snapshot
+     * @return changed property keys
+     */
+    private static Set<String> getChangedKeys(Map<String, Long> previous, Map<String, Long> current) {
+        Set<String> changedKeys = new HashSet<>();
+        current.forEach((propertyKey, qps) -> {
+            if (!qps.equals(previous.get(propertyKey))) {
+                changedKeys.add(propertyKey);
+            }
+        });
+        previous.keySet().forEach(propertyKey -> {
+            if (!current.containsKey(propertyKey)) {
+                changedKeys.add(propertyKey);
+            }
+        });
+        return changedKeys;
+    }
+
+    /**
+     * Notify the listeners of the changed property keys, outside of the snapshot lock
+     * The QPS is read from the current snapshot, when two changes are notified concurrently
+     * the one notified last applies the latest QPS
+     *
+     * @param changedKeys changed property keys
+     */
+    private void fireQpsChanges(Set<String> changedKeys) {
+        if (this.listeners.isEmpty()) {
+            return;
+        }
+        for (String propertyKey : changedKeys) {
+            Set<String> configKeys = new HashSet<>();
+            configKeys.add(parseConfigKey(propertyKey));
+            configKeys.addAll(this.underivedConfigKeys.getOrDefault(propertyKey, Collections.emptySet()));
+            for (String configKey : configKeys) {
+                Long qps = this.qpsSnapshot.getOrDefault(propertyKey, DEFAULT_QPS);
+                for (RateLimiterConfigChangeListener listener : this.listeners) {
+                    try {
+                        listener.onQpsChange(configKey, qps);
+                    } catch (Exception e) {
+                        logger.error("RateLimiter config change listener failed, key：{}", configKey, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * get formatted property key of a request key
+     * Request keys are method or uri keys, once the cache is full the key is formatted on every call
+     *
+     * @param configKey config key
+     * @return property key
+     */
+    protected String getPropertyKey(String configKey) {
+        String propertyKey = this.propertyKeys.get(configKey);
+        if (propertyKey == null) {
+            propertyKey = formatPropertyKey(configKey);
+            if (this.propertyKeys.size() < MAXIMUM_PROPERTY_KEY_CACHE_SIZE
+                && this.propertyKeys.putIfAbsent(configKey, propertyKey) == null
+                && !configKey.equals(parseConfigKey(propertyKey))) {
+                this.underivedConfigKeys.computeIfAbsent(propertyKey, key -> ConcurrentHashMap.newKeySet()).add(configKey);
+            }
+        }
+        return propertyKey;
+    }
 
     /**
      * data convert to properties
@@ -92,6 +314,17 @@ public abstract class AbstractRateLimiterConfigCentre implements RateLimiterConf
      * @return property key
      */
     protected String formatPropertyKey(String requestUri) {
-        return requestUri.replaceAll("/", ".");
+        return requestUri.replace('/', '.');
+    }
+
+    /**
+     * parse the request key of a property key, the reverse of {@link #formatPropertyKey(String)}
+     * Exact for request uris, a request key containing '.' is remembered when looked up
+     *
+     * @param propertyKey property key
+     * @return request key
+     */
+    protected String parseConfigKey(String propertyKey) {
+        return propertyKey.replace('.', '/');
     }
 }
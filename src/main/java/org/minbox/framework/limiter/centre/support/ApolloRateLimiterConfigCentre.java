@@ -17,23 +17,152 @@
 
 package org.minbox.framework.limiter.centre.support;
 
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
 import org.minbox.framework.limiter.exception.RateLimiterException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
 
 /**
+ * Apollo Config Support
  * The {@link RateLimiterConfigCentre} Apollo implementation class
+ * <p>
+ * The {@link #DATA_ID} namespace is loaded into the config snapshot and loaded again by the change listener,
+ * the request path never calls the apollo client.
+ * <p>
+ * The apollo client can not publish config, QPS registered by {@link #setQps(String, Long)} are only applied locally,
+ * values of the namespace always take precedence: keys defined by the namespace are skipped.
+ * The namespace is read without a lock, the snapshot is then merged with the registered QPS under the snapshot lock.
  *
  * @author 恒宇少年
  */
 public class ApolloRateLimiterConfigCentre extends AbstractRateLimiterConfigCentre {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(ApolloRateLimiterConfigCentre.class);
+    /**
+     * Apollo Config of the rate limiter namespace
+     */
+    private Config config;
+    /**
+     * QPS registered locally, property key -> QPS
+     * guarded by the snapshot lock
+     */
+    private final Map<String, Long> registeredQps = new HashMap<>();
+    /**
+     * property keys defined by the namespace when last loaded
+     * guarded by the snapshot lock
+     */
+    private Set<String> namespaceKeys = Collections.emptySet();
+
+    public ApolloRateLimiterConfigCentre() {
+        this(ConfigService.getConfig(DATA_ID));
+    }
+
+    public ApolloRateLimiterConfigCentre(Config config) {
+        this.config = config;
+
+        // check config not null
+        Assert.notNull(config, "Config is required.");
+
+        // load config data from apollo
+        loadConfigData();
+        logger.info("ApiBoot RateLimiter apollo config properties load complete.");
 
+        // Enable monitoring of receiving configuration changes
+        addConfigChangeListener();
+    }
+
+    /**
+     * get QPS config from apollo
+     * for example properties:
+     * 1. /user/list = .user.list: 5
+     * 2. /user/detail = .user.detail: 10
+     *
+     * @param configKey config key
+     * @return qps
+     * @throws RateLimiterException ApiBoot Exception
+     */
     @Override
     public Long getQps(String configKey) throws RateLimiterException {
-        return 0L;
+        return getSnapshotQps(configKey);
     }
 
+    /**
+     * set qps config locally
+     * Skipped if the namespace defines the key, checked under the snapshot lock so a concurrent load is never overwritten
+     *
+     * @param configKey config key
+     * @param QPS       QPS value
+     * @throws RateLimiterException ApiBoot Exception
+     */
     @Override
     public void setQps(String configKey, Long QPS) throws RateLimiterException {
+        String propertyKey = getPropertyKey(configKey);
+        if (QPS.equals(getSnapshot().get(propertyKey))) {
+            return;
+        }
+        updateSnapshot(previous -> {
+            if (this.namespaceKeys.contains(propertyKey)) {
+                return previous;
+            }
+            this.registeredQps.put(propertyKey, QPS);
+            Map<String, Long> snapshot = new HashMap<>(previous);
+            snapshot.put(propertyKey, QPS);
+            return snapshot;
+        });
+    }
+
+    /**
+     * load rate limiter config data into the config snapshot
+     * The namespace is read without a lock, merged over the locally registered QPS under the snapshot lock
+     */
+    protected void loadConfigData() {
+        Properties properties = new Properties();
+        for (String propertyKey : this.config.getPropertyNames()) {
+            String value = this.config.getProperty(propertyKey, null);
+            if (value != null) {
+                properties.setProperty(propertyKey, value);
+            }
+        }
+        Set<String> keys = properties.stringPropertyNames();
+        Map<String, Long> namespaceQps = parseQps(properties);
+        updateSnapshot(previous -> {
+            this.namespaceKeys = keys;
+            Map<String, Long> snapshot = new HashMap<>(this.registeredQps);
+            snapshot.keySet().removeAll(keys);
+            snapshot.putAll(namespaceQps);
+            return snapshot;
+        });
+    }
 
+    /**
+     * add config change listener
+     * If you modify the configuration through the apollo configuration center,
+     * listen to the changes and load the config snapshot again.
+     */
+    protected void addConfigChangeListener() {
+        this.config.addChangeListener(new ConfigChangeListener() {
+            /**
+             * Update local config snapshot
+             * @param changeEvent Changed configuration keys
+             */
+            @Override
+            public void onChange(ConfigChangeEvent changeEvent) {
+                loadConfigData();
+                logger.info("Update local current RateLimiter configuration is complete，changed keys：{}", changeEvent.changedKeys());
+            }
+        });
     }
 }
@@ -26,18 +26,27 @@ import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
 import org.minbox.framework.limiter.exception.RateLimiterException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.util.Assert;
-import org.springframework.util.StringUtils;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Nacos Config Support
  * The {@link RateLimiterConfigCentre} Nacos implement class
+ * <p>
+ * QPS registered by {@link #setQps(String, Long)} are applied locally at once
+ * and published to nacos in the background by a {@link RateLimiterConfigPublisher}.
+ * A publish loads the latest nacos config and only adds the registered keys it misses,
+ * the values changed by an operator are never overwritten.
  *
  * @author 恒宇少年
  */
-public class NacosRateLimiterConfigCentre extends AbstractRateLimiterConfigCentre {
+public class NacosRateLimiterConfigCentre extends AbstractRateLimiterConfigCentre implements DisposableBean {
     /**
      * logger instance
      */
@@ -47,12 +56,17 @@ public class NacosRateLimiterConfigCentre extends AbstractRateLimiterConfigCentr
      */
     private ConfigService configService;
     /**
-     * rate limiter config properties
+     * QPS registered locally and not published yet, property key -> QPS
      */
-    private Properties configProperties;
+    private final ConcurrentMap<String, String> pendingProperties = new ConcurrentHashMap<>();
+    /**
+     * Publish the config to nacos off the request thread
+     */
+    private RateLimiterConfigPublisher configPublisher;
 
     public NacosRateLimiterConfigCentre(ConfigService configService) {
         this.configService = configService;
+        this.configPublisher = new RateLimiterConfigPublisher(this::publishConfigData);
 
         // check configService not null
         Assert.notNull(configService, "ConfigService is required.");
@@ -61,7 +75,7 @@ public class NacosRateLimiterConfigCentre extends AbstractRateLimiterConfigCentr
         String configData = loadConfigData();
 
         // convert config data to properties
-        this.configProperties = toProperties(configData);
+        updateSnapshot(toProperties(configData));
         logger.info("ApiBoot RateLimiter nacos config properties load complete.");
 
         // Enable monitoring of receiving configuration changes
@@ -80,20 +94,12 @@ public class NacosRateLimiterConfigCentre extends AbstractRateLimiterConfigCentr
      */
     @Override
     public Long getQps(String configKey) throws RateLimiterException {
-        try {
-            String propertyKey = formatPropertyKey(configKey);
-            String qps = this.configProperties.getProperty(propertyKey);
-            if (!StringUtils.isEmpty(qps)) {
-                return Long.valueOf(qps);
-            }
-        } catch (Exception e) {
-            logger.error(e.getMessage(), e);
-        }
-        return DEFAULT_QPS;
+        return getSnapshotQps(configKey);
     }
 
     /**
      * set qps config to nacos
+     * The local config is updated at once, the publish is queued and never blocks the request
      *
      * @param configKey config key
      * @param QPS       QPS value
@@ -101,20 +107,53 @@ public class NacosRateLimiterConfigCentre extends AbstractRateLimiterConfigCentr
      */
     @Override
     public void setQps(String configKey, Long QPS) throws RateLimiterException {
-        try {
-            String propertyKey = formatPropertyKey(configKey);
-            // update local cache config
-            this.configProperties.setProperty(propertyKey, String.valueOf(QPS));
+        // already registered with the same value
+        if (QPS.equals(getSnapshot().get(getPropertyKey(configKey)))) {
+            return;
+        }
+        String propertyKey = getPropertyKey(configKey);
+        // update local cache config
+        this.pendingProperties.put(propertyKey, String.valueOf(QPS));
+        updateSnapshot(configKey, QPS);
+        this.configPublisher.requestPublish();
+    }
+
+    /**
+     * publish the pending QPS to nacos
+     * Called by the {@link RateLimiterConfigPublisher} thread.
+     * The pending keys are merged into the latest nacos config, keys already present in nacos keep their value.
+     *
+     * @throws Exception publish failed
+     */
+    protected void publishConfigData() throws Exception {
+        if (this.pendingProperties.isEmpty()) {
+            return;
+        }
+        Map<String, String> published = new HashMap<>(this.pendingProperties);
+        Properties properties = toProperties(loadConfigData());
+        boolean changed = false;
+        for (Map.Entry<String, String> pending : published.entrySet()) {
+            if (!properties.containsKey(pending.getKey())) {
+                properties.setProperty(pending.getKey(), pending.getValue());
+                changed = true;
+            }
+        }
+        if (changed) {
             // convert properties to string
-            String configData = fromProperties(this.configProperties);
-            if (!StringUtils.isEmpty(configData)) {
-                // execute publish config
-                this.configService.publishConfig(DATA_ID, Constants.DEFAULT_GROUP, configData);
-                logger.info("ApiBoot RateLimiter nacos config publish successfully.");
+            String configData = fromProperties(properties);
+            // execute publish config
+            if (!this.configService.publishConfig(DATA_ID, Constants.DEFAULT_GROUP, configData)) {
+                throw new RateLimiterException("Publish ApiBoot RateLimiter config data fail.");
             }
-        } catch (Exception e) {
-            throw new RateLimiterException(e.getMessage(), e);
+            logger.info("ApiBoot RateLimiter nacos config publish successfully.");
         }
+        // a value registered again meanwhile stays pending
+        published.forEach(this.pendingProperties::remove);
+    }
+
+    @Override
+    public void destroy() {
+        this.configPublisher.shutdown();
     }
 
     /**
@@ -146,7 +185,17 @@ public class NacosRateLimiterConfigCentre extends AbstractRateLimiterConfigCentr
                  */
                 @Override
                 public void innerReceive(Properties properties) {
-                    configProperties = properties;
+                    // the nacos value wins, the keys nacos does not have yet stay registered locally
+                    Properties merged = new Properties();
+                    merged.putAll(properties);
+                    pendingProperties.forEach((propertyKey, qps) -> {
+                        if (properties.containsKey(propertyKey)) {
+                            pendingProperties.remove(propertyKey, qps);
+                        } else {
+                            merged.setProperty(propertyKey, qps);
+                        }
+                    });
+                    updateSnapshot(merged);
                     logger.info("Update local current RateLimiter configuration is complete，content：{}", properties.toString());
                 }
             });
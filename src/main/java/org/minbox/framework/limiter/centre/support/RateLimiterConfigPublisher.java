@@ -0,0 +1,173 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.centre.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalescing write-behind publisher of the rate limiter config
+ * <p>
+ * A request only marks the config as changed, the config is published by a single daemon thread.
+ * All changes made before a publish starts are sent by that publish, at most one publish per {@link #minIntervalMillis}.
+ * A failed publish is retried with an exponential backoff up to {@link #maxBackoffMillis}.
+ *
+ * @author 恒宇少年
+ */
+public class RateLimiterConfigPublisher {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(RateLimiterConfigPublisher.class);
+    /**
+     * default minimum interval between two publishes
+     */
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 1000L;
+    /**
+     * default maximum retry backoff
+     */
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30000L;
+    /**
+     * publish action, sends the whole current config
+     */
+    private final PublishAction action;
+    /**
+     * minimum interval between two publishes
+     */
+    private final long minIntervalMillis;
+    /**
+     * maximum retry backoff
+     */
+    private final long maxBackoffMillis;
+    /**
+     * publisher thread
+     */
+    private final ScheduledExecutorService executor;
+    /**
+     * Whether the config changed since the last publish started
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    /**
+     * Whether a publish is scheduled, only one at a time
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    /**
+     * current retry backoff, only used by the publisher thread
+     */
+    private long backoffMillis;
+
+    public RateLimiterConfigPublisher(PublishAction action) {
+        this(action, DEFAULT_MIN_INTERVAL_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    public RateLimiterConfigPublisher(PublishAction action, long minIntervalMillis, long maxBackoffMillis) {
+        Assert.notNull(action, "PublishAction is required.");
+        Assert.isTrue(minIntervalMillis > 0, "The min interval millis must be greater than 0.");
+        Assert.isTrue(maxBackoffMillis >= minIntervalMillis, "The max backoff millis must not be less than the min interval millis.");
+        this.action = action;
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.backoffMillis = minIntervalMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "rate-limiter-config-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.executor = executor;
+    }
+
+    /**
+     * Mark the config as changed, never blocks
+     * Changes are coalesced into the next publish
+     */
+    public void requestPublish() {
+        dirty.set(true);
+        schedule(minIntervalMillis);
+    }
+
+    private void schedule(long delayMillis) {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.schedule(this::publish, delayMillis, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                // shutdown, the pending changes are flushed by shutdown
+                scheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Publish the config if it changed, runs on the publisher thread
+     */
+    private void publish() {
+        scheduled.set(false);
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            action.publish();
+            backoffMillis = minIntervalMillis;
+        } catch (Exception e) {
+            // publish again later, with the changes made meanwhile
+            dirty.set(true);
+            logger.error("ApiBoot RateLimiter config publish failed, retry in {} millis.", backoffMillis, e);
+            long delayMillis = backoffMillis;
+            backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            schedule(delayMillis);
+            return;
+        }
+        // changed while publishing
+        if (dirty.get()) {
+            schedule(minIntervalMillis);
+        }
+    }
+
+    /**
+     * Stop the publisher thread, pending changes are published one last time
+     */
+    public void shutdown() {
+        executor.shutdown();
+        if (dirty.getAndSet(false)) {
+            try {
+                action.publish();
+            } catch (Exception e) {
+                logger.error("ApiBoot RateLimiter config publish failed on shutdown.", e);
+            }
+        }
+    }
+
+    /**
+     * Publish the current config to the config centre
+     */
+    @FunctionalInterface
+    public interface PublishAction {
+        /**
+         * publish the whole current config
+         *
+         * @throws Exception publish failed
+         */
+        void publish() throws Exception;
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.concurrency;
+
+import org.minbox.framework.limiter.context.RateLimiterRegistry;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Adaptive concurrency limiter support
+ * <p>
+ * The limit of each request key follows the latency of its calls, with the gradient algorithm:
+ * a long term average latency is compared with the latency of each call,
+ * <pre>
+ * gradient = clamp(tolerance * longRtt / rtt, 0.5, 1)
+ * limit    = limit * (1 - smoothing) + (limit * gradient + sqrt(limit)) * smoothing
+ * </pre>
+ * While the latency stays close to the average the limit grows by its square root, a queue of calls probing
+ * for more concurrency; when the latency rises above {@link #tolerance} times the average it shrinks, down to half per sample.
+ * The limit only grows while at least half of it is used, an idle method does not earn concurrency it never tested.
+ * <p>
+ * The limit is bounded by the ceiling passed with each call, the static limit of the method.
+ * <p>
+ * Each sample updates the averages with a single compare-and-set, a sample losing the race with another one is dropped:
+ * no lock, no retry, the cost is a few floating point operations per call.
+ *
+ * @author 恒宇少年
+ */
+public class AdaptiveConcurrencyLimiter implements ConcurrencyLimiter {
+    /**
+     * default limit of a new request key
+     */
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    /**
+     * default latency increase tolerated before the limit shrinks
+     */
+    public static final double DEFAULT_TOLERANCE = 1.5;
+    /**
+     * default weight of a new limit
+     */
+    public static final double DEFAULT_SMOOTHING = 0.2;
+    /**
+     * default number of samples of the long term average latency
+     */
+    public static final int DEFAULT_LONG_WINDOW = 600;
+    /**
+     * lowest limit, one call is always allowed
+     */
+    static final double MIN_LIMIT = 1;
+    /**
+     * An idle limit without permits in flight is dropped after this long
+     */
+    private static final long LIMIT_IDLE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    /**
+     * Cache an adaptive limit for each request key
+     */
+    private final RateLimiterRegistry<AdaptiveLimit> limits;
+    /**
+     * limit of a new request key
+     */
+    private volatile int initialLimit = DEFAULT_INITIAL_LIMIT;
+    /**
+     * latency increase tolerated before the limit shrinks
+     */
+    private volatile double tolerance = DEFAULT_TOLERANCE;
+    /**
+     * weight of a new limit
+     */
+    private volatile double smoothing = DEFAULT_SMOOTHING;
+    /**
+     * number of samples of the long term average latency
+     */
+    private volatile int longWindow = DEFAULT_LONG_WINDOW;
+
+    public AdaptiveConcurrencyLimiter() {
+        this(RateLimiterRegistry.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public AdaptiveConcurrencyLimiter(int maximumSize) {
+        this.limits = new RateLimiterRegistry<>(maximumSize, limit -> LIMIT_IDLE_NANOS, limit -> limit.counter.tryRetire());
+    }
+
+    /**
+     * adaptive away
+     *
+     * @param requestKey     request key
+     * @param maxConcurrency ceiling of the adaptive limit
+     * @return permit to release when the call completes, null if the limit is reached
+     */
+    @Override
+    public ConcurrencyPermit tryAcquire(String requestKey, int maxConcurrency) {
+        for (; ; ) {
+            AdaptiveLimit limit = limits.computeIfAbsent(requestKey, key -> new AdaptiveLimit(Math.min(maxConcurrency, initialLimit)));
+            int acquired = limit.counter.tryAcquire(Math.min(maxConcurrency, limit.getLimit()));
+            if (acquired > 0) {
+                return new AdaptivePermit(this, limit, maxConcurrency);
+            }
+            if (acquired == 0) {
+                return null;
+            }
+            // retired by the registry sweep, removed right after, retry with a new limit
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Update the limit with the latency of a completed call
+     *
+     * @param limit     adaptive limit of the request key
+     * @param rttNanos  latency of the call
+     * @param inFlight  calls in flight, the completed call included
+     * @param ceiling   highest limit
+     */
+    void onSample(AdaptiveLimit limit, long rttNanos, int inFlight, int ceiling) {
+        double rtt = Math.max(1L, rttNanos);
+
+        long longRttBits = limit.longRttBits;
+        double longRtt = Double.longBitsToDouble(longRttBits);
+        longRtt = longRtt == 0 ? rtt : longRtt + (rtt - longRtt) / longWindow;
+        // the average follows a lasting latency drop faster, the limit recovers sooner after an incident
+        if (longRtt / rtt > 2) {
+            longRtt *= 0.95;
+        }
+        AdaptiveLimit.LONG_RTT.compareAndSet(limit, longRttBits, Double.doubleToRawLongBits(longRtt));
+
+        long limitBits = limit.limitBits;
+        double current = Double.longBitsToDouble(limitBits);
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRtt / rtt));
+        double next = current * gradient + Math.sqrt(current);
+        next = current * (1 - smoothing) + next * smoothing;
+        next = Math.max(MIN_LIMIT, Math.min(ceiling, next));
+        // not enough calls to tell whether more concurrency would hurt
+        if (next > current && inFlight < current / 2) {
+            return;
+        }
+        AdaptiveLimit.LIMIT.compareAndSet(limit, limitBits, Double.doubleToRawLongBits(next));
+    }
+
+    /**
+     * get current limit of a request key
+     *
+     * @param requestKey request key
+     * @return limit, 0 if the key has no limit yet
+     */
+    public int getLimit(String requestKey) {
+        AdaptiveLimit limit = limits.get(requestKey);
+        return limit != null ? limit.getLimit() : 0;
+    }
+
+    /**
+     * get the limit registry, exposes size and eviction counters
+     *
+     * @return RateLimiterRegistry
+     */
+    public RateLimiterRegistry<AdaptiveLimit> getLimits() {
+        return limits;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        Assert.isTrue(initialLimit > 0, "The initial limit must be greater than 0.");
+        this.initialLimit = initialLimit;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(double tolerance) {
+        Assert.isTrue(tolerance >= 1, "The tolerance must not be less than 1.");
+        this.tolerance = tolerance;
+    }
+
+    public double getSmoothing() {
+        return smoothing;
+    }
+
+    public void setSmoothing(double smoothing) {
+        Assert.isTrue(smoothing > 0 && smoothing <= 1, "The smoothing must be in (0, 1].");
+        this.smoothing = smoothing;
+    }
+
+    public int getLongWindow() {
+        return longWindow;
+    }
+
+    public void setLongWindow(int longWindow) {
+        Assert.isTrue(longWindow > 0, "The long window must be greater than 0.");
+        this.longWindow = longWindow;
+    }
+
+    /**
+     * Adaptive limit of one request key
+     * The limit and the long term latency are doubles stored as raw long bits, updated with CAS
+     */
+    static class AdaptiveLimit {
+        /**
+         * CAS updater of {@link #limitBits}
+         */
+        static final AtomicLongFieldUpdater<AdaptiveLimit> LIMIT =
+            AtomicLongFieldUpdater.newUpdater(AdaptiveLimit.class, "limitBits");
+        /**
+         * CAS updater of {@link #longRttBits}
+         */
+        static final AtomicLongFieldUpdater<AdaptiveLimit> LONG_RTT =
+            AtomicLongFieldUpdater.newUpdater(AdaptiveLimit.class, "longRttBits");
+        /**
+         * calls in flight
+         */
+        final ConcurrencyCounter counter = new ConcurrencyCounter();
+        /**
+         * current limit
+         */
+        volatile long limitBits;
+        /**
+         * long term average latency in nanos, 0 before the first sample
+         */
+        volatile long longRttBits;
+
+        AdaptiveLimit(int initialLimit) {
+            this.limitBits = Double.doubleToRawLongBits(Math.max(MIN_LIMIT, initialLimit));
+        }
+
+        int getLimit() {
+            return (int) Double.longBitsToDouble(limitBits);
+        }
+    }
+
+    /**
+     * Permit of an adaptive limit, the latency is measured from {@link #start()} to {@link #release()}
+     * A call that never started, rejected by another limit, does not update the limit
+     */
+    static class AdaptivePermit implements ConcurrencyPermit {
+        /**
+         * CAS updater of {@link #released}
+         */
+        private static final AtomicIntegerFieldUpdater<AdaptivePermit> RELEASED =
+            AtomicIntegerFieldUpdater.newUpdater(AdaptivePermit.class, "released");
+        private final AdaptiveConcurrencyLimiter limiter;
+        private final AdaptiveLimit limit;
+        /**
+         * highest limit
+         */
+        private final int ceiling;
+        /**
+         * call start, {@link System#nanoTime()} based
+         */
+        private volatile long startedAt;
+        /**
+         * Whether the call started
+         */
+        private volatile boolean started;
+        /**
+         * 1 once released
+         */
+        private volatile int released;
+
+        AdaptivePermit(AdaptiveConcurrencyLimiter limiter, AdaptiveLimit limit, int ceiling) {
+            this.limiter = limiter;
+            this.limit = limit;
+            this.ceiling = ceiling;
+        }
+
+        @Override
+        public void start() {
+            if (!started) {
+                startedAt = System.nanoTime();
+                started = true;
+            }
+        }
+
+        @Override
+        public void release() {
+            if (!RELEASED.compareAndSet(this, 0, 1)) {
+                return;
+            }
+            if (started) {
+                limiter.onSample(limit, System.nanoTime() - startedAt, limit.counter.getInFlight(), ceiling);
+            }
+            limit.counter.release();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.concurrency;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Lock-free counter of the calls in flight of one request key
+ * <p>
+ * A permit is one fetch-and-add: the counter is incremented first and rolled back when it went above the limit.
+ * Unlike a compare-and-set loop a contended acquire never retries, the price is that a call racing with a rollback
+ * may see the limit reached while a permit is about to be returned.
+ * <p>
+ * A counter without permits in flight can be retired, every later acquire fails,
+ * the registry then replaces it with a new counter.
+ *
+ * @author 恒宇少年
+ */
+public class ConcurrencyCounter {
+    /**
+     * Value of a retired counter, stays negative whatever the concurrent increments
+     */
+    private static final int RETIRED = Integer.MIN_VALUE / 2;
+    /**
+     * CAS updater of {@link #inFlight}
+     */
+    private static final AtomicIntegerFieldUpdater<ConcurrencyCounter> IN_FLIGHT =
+        AtomicIntegerFieldUpdater.newUpdater(ConcurrencyCounter.class, "inFlight");
+    /**
+     * number of calls in flight
+     */
+    private volatile int inFlight;
+
+    /**
+     * Attempt to obtain a permit
+     *
+     * @param maxConcurrency maximum number of calls in flight
+     * @return 1 : permit obtained, 0 : the limit is reached, -1 : the counter is retired
+     */
+    public int tryAcquire(int maxConcurrency) {
+        int current = IN_FLIGHT.incrementAndGet(this);
+        if (current < 0) {
+            return -1;
+        }
+        if (current > maxConcurrency) {
+            IN_FLIGHT.decrementAndGet(this);
+            return 0;
+        }
+        return 1;
+    }
+
+    /**
+     * Return a permit
+     */
+    public void release() {
+        IN_FLIGHT.decrementAndGet(this);
+    }
+
+    /**
+     * Retire the counter if no permit is in flight
+     *
+     * @return true : the counter is retired
+     */
+    public boolean tryRetire() {
+        return IN_FLIGHT.compareAndSet(this, 0, RETIRED);
+    }
+
+    /**
+     * get number of calls in flight
+     *
+     * @return in flight, 0 if retired
+     */
+    public int getInFlight() {
+        return Math.max(0, inFlight);
+    }
+}
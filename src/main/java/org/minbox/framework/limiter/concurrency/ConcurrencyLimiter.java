@@ -0,0 +1,43 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.concurrency;
+
+/**
+ * Concurrency (bulkhead) limiter
+ * <p>
+ * Limits the number of calls in flight instead of the calls per second:
+ * a permit is taken before the call and released when it completes, whatever its outcome.
+ * <p>
+ * Local permit counter of a single application
+ * {@link LocalConcurrencyLimiter}
+ * <p>
+ * Permits leased from redis, shared by every node of a distributed application
+ * {@link RedisConcurrencyLimiter}
+ *
+ * @author 恒宇少年
+ */
+public interface ConcurrencyLimiter {
+    /**
+     * Attempt to obtain a permit of the request key
+     *
+     * @param requestKey     request key
+     * @param maxConcurrency maximum number of calls in flight
+     * @return permit to release when the call completes, null if the limit is reached
+     */
+    ConcurrencyPermit tryAcquire(String requestKey, int maxConcurrency);
+}
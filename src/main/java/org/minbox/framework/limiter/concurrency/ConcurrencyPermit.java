@@ -0,0 +1,39 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.concurrency;
+
+/**
+ * Permit of one call in flight
+ * Must be released exactly once when the call completes, further releases are ignored
+ *
+ * @author 恒宇少年
+ */
+public interface ConcurrencyPermit {
+    /**
+     * The limited call starts, after the other limits allowed it
+     * default nothing to do, adaptive limiters measure the latency of the call from here
+     */
+    default void start() {
+        //...
+    }
+
+    /**
+     * Release the permit
+     */
+    void release();
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.concurrency;
+
+import org.minbox.framework.limiter.context.RateLimiterRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Local concurrency limiter support
+ * <p>
+ * One {@link ConcurrencyCounter} per request key in a {@link RateLimiterRegistry}.
+ * A counter is only expired or evicted once it has no permit in flight, it is retired at the same time
+ * so a call still holding a reference to it retries with the new counter.
+ *
+ * @author 恒宇少年
+ */
+public class LocalConcurrencyLimiter implements ConcurrencyLimiter {
+    /**
+     * An idle counter without permits in flight is dropped after this long
+     */
+    private static final long COUNTER_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /**
+     * Cache a counter for each request key
+     */
+    private final RateLimiterRegistry<ConcurrencyCounter> counters;
+
+    public LocalConcurrencyLimiter() {
+        this(RateLimiterRegistry.DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public LocalConcurrencyLimiter(int maximumSize) {
+        this.counters = new RateLimiterRegistry<>(maximumSize, counter -> COUNTER_IDLE_NANOS, ConcurrencyCounter::tryRetire);
+    }
+
+    @Override
+    public ConcurrencyPermit tryAcquire(String requestKey, int maxConcurrency) {
+        for (; ; ) {
+            ConcurrencyCounter counter = counters.computeIfAbsent(requestKey, key -> new ConcurrencyCounter());
+            int acquired = counter.tryAcquire(maxConcurrency);
+            if (acquired > 0) {
+                return new LocalPermit(counter);
+            }
+            if (acquired == 0) {
+                return null;
+            }
+            // retired by the registry sweep, removed right after, retry with a new counter
+            Thread.yield();
+        }
+    }
+
+    /**
+     * get the counter registry, exposes size and eviction counters
+     *
+     * @return RateLimiterRegistry
+     */
+    public RateLimiterRegistry<ConcurrencyCounter> getCounters() {
+        return counters;
+    }
+
+    /**
+     * Permit of a local counter, released once
+     */
+    static class LocalPermit implements ConcurrencyPermit {
+        /**
+         * CAS updater of {@link #released}
+         */
+        private static final AtomicIntegerFieldUpdater<LocalPermit> RELEASED =
+            AtomicIntegerFieldUpdater.newUpdater(LocalPermit.class, "released");
+        /**
+         * counter of the request key
+         */
+        private final ConcurrencyCounter counter;
+        /**
+         * 1 once released
+         */
+        private volatile int released;
+
+        LocalPermit(ConcurrencyCounter counter) {
+            this.counter = counter;
+        }
+
+        @Override
+        public void release() {
+            if (RELEASED.compareAndSet(this, 0, 1)) {
+                counter.release();
+            }
+        }
+    }
+}
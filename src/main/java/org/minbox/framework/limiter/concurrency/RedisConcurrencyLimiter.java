@@ -0,0 +1,349 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.concurrency;
+
+import org.minbox.framework.limiter.support.CachedRedisScript;
+import org.minbox.framework.limiter.support.RedisCircuitBreaker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redis lua concurrency limiter support
+ * <p>
+ * The permits in flight of a request key are the members of a sorted set, scored by the expiry of their lease
+ * in redis server time. Acquiring drops the expired permits, counts the others and adds one if the limit allows it,
+ * in one script call; releasing removes the member.
+ * <p>
+ * A node that crashes never releases its permits, they are dropped when their lease expires.
+ * Calls running longer than a third of the lease have it renewed in the background, so a slow call
+ * keeps its permit as long as its node is alive.
+ * <p>
+ * When redis fails the permit is taken from a {@link LocalConcurrencyLimiter} with the same limit per node.
+ * A {@link RedisCircuitBreaker} guards the redis calls: while it is open no call waits for the redis timeout,
+ * the permits are taken locally at once, and the permits leased from redis are neither renewed nor released,
+ * their lease expires. Failures are logged at most once per {@link #FAILURE_LOG_INTERVAL_NANOS}.
+ *
+ * @author 恒宇少年
+ */
+public class RedisConcurrencyLimiter implements ConcurrencyLimiter, DisposableBean {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(RedisConcurrencyLimiter.class);
+    /**
+     * Acquire Redis Script file name.
+     */
+    private static final String ACQUIRE_LUA_PATH = "META-INF/scripts/concurrency-limiter.lua";
+    /**
+     * Renew Redis Script file name.
+     */
+    private static final String RENEW_LUA_PATH = "META-INF/scripts/concurrency-renew.lua";
+    /**
+     * default permit lease in milliseconds
+     */
+    public static final long DEFAULT_LEASE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * redis failures are logged at most once per interval
+     */
+    static final long FAILURE_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    /**
+     * redis template
+     */
+    private final RedisTemplate redisTemplate;
+    /**
+     * acquire script
+     */
+    private final CachedRedisScript acquireScript;
+    /**
+     * renew script
+     */
+    private final CachedRedisScript renewScript;
+    /**
+     * permit lease in milliseconds
+     */
+    private final long leaseMillis;
+    /**
+     * encoded permit lease in microseconds
+     */
+    private final byte[] encodedLeaseMicros;
+    /**
+     * prefix of the permit ids of this instance
+     */
+    private final String instanceId = UUID.randomUUID().toString();
+    /**
+     * permit id sequence
+     */
+    private final AtomicLong sequence = new AtomicLong();
+    /**
+     * permits in flight of this instance, renewed in the background
+     */
+    private final Set<RedisPermit> inFlight = ConcurrentHashMap.newKeySet();
+    /**
+     * permits used while redis is unavailable
+     */
+    private final LocalConcurrencyLimiter fallback = new LocalConcurrencyLimiter();
+    /**
+     * lease renewal and circuit breaker probe thread
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+    /**
+     * redis circuit breaker
+     */
+    private final RedisCircuitBreaker circuitBreaker;
+    /**
+     * last logged redis failure, {@link System#nanoTime()} based
+     */
+    private final AtomicLong failureLoggedAt = new AtomicLong(System.nanoTime() - FAILURE_LOG_INTERVAL_NANOS);
+    /**
+     * redis failures not logged since the last logged one
+     */
+    private final AtomicLong suppressedFailures = new AtomicLong();
+
+    public RedisConcurrencyLimiter(RedisTemplate redisTemplate) {
+        this(redisTemplate, DEFAULT_LEASE_MILLIS);
+    }
+
+    public RedisConcurrencyLimiter(RedisTemplate redisTemplate, long leaseMillis) {
+        Assert.notNull(redisTemplate, "No RedisTemplate implementation class was found.");
+        Assert.isTrue(leaseMillis > 0, "The lease millis must be greater than 0.");
+        this.redisTemplate = redisTemplate;
+        this.leaseMillis = leaseMillis;
+        this.encodedLeaseMicros = encode(TimeUnit.MILLISECONDS.toMicros(leaseMillis));
+        this.acquireScript = new CachedRedisScript(ACQUIRE_LUA_PATH);
+        this.renewScript = new CachedRedisScript(RENEW_LUA_PATH);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "redis-concurrency-limiter-renew");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.circuitBreaker = new RedisCircuitBreaker(
+            () -> redisTemplate.execute((RedisCallback<String>) RedisConnection::ping), this.scheduler);
+        long renewIntervalMillis = Math.max(1, leaseMillis / 3);
+        this.scheduler.scheduleWithFixedDelay(this::renewLeases, renewIntervalMillis, renewIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * redis lua away, locally while the circuit breaker is open
+     *
+     * @param requestKey     request key
+     * @param maxConcurrency maximum number of calls in flight
+     * @return permit to release when the call completes, null if the limit is reached
+     */
+    @Override
+    public ConcurrencyPermit tryAcquire(String requestKey, int maxConcurrency) {
+        if (circuitBreaker.isOpen()) {
+            return fallback.tryAcquire(requestKey, maxConcurrency);
+        }
+        try {
+            RedisPermit permit = new RedisPermit(this, getKey(requestKey), instanceId + ":" + sequence.incrementAndGet());
+            List<Long> result = execute(acquireScript, permit.key, encode(maxConcurrency), encodedLeaseMicros, permit.id);
+            // Index 1 value is the number of permits in flight
+            if (logger.isDebugEnabled()) {
+                logger.debug("Number of permits in flight for key {} is {}", requestKey, result.get(1));
+            }
+            if (result.get(0) != 1L) {
+                return null;
+            }
+            inFlight.add(permit);
+            return permit;
+        } catch (Exception e) {
+            logFailure("Error acquiring concurrency permit from redis, limited locally", e);
+            return fallback.tryAcquire(requestKey, maxConcurrency);
+        }
+    }
+
+    /**
+     * Renew the leases of the calls running for longer than a third of the lease
+     */
+    private void renewLeases() {
+        if (circuitBreaker.isOpen()) {
+            return;
+        }
+        long renewBefore = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(leaseMillis) / 3;
+        for (RedisPermit permit : inFlight) {
+            if (permit.renewedAt - renewBefore > 0) {
+                continue;
+            }
+            try {
+                List<Long> result = execute(renewScript, permit.key, encodedLeaseMicros, permit.id);
+                if (result.get(0) != 1L) {
+                    logger.warn("Concurrency permit {} lease expired before the call completed.", new String(permit.id, StandardCharsets.UTF_8));
+                }
+                permit.renewedAt = System.nanoTime();
+            } catch (Exception e) {
+                logFailure("Error renewing concurrency permit lease", e);
+            }
+        }
+    }
+
+    private List<Long> execute(CachedRedisScript script, byte[] key, byte[]... args) {
+        byte[][] keysAndArgs = new byte[args.length + 1][];
+        keysAndArgs[0] = key;
+        System.arraycopy(args, 0, keysAndArgs, 1, args.length);
+        return execute((RedisCallback<List<Long>>) connection -> script.execute(connection, 1, keysAndArgs));
+    }
+
+    /**
+     * Call redis, the result is reported to the circuit breaker
+     *
+     * @param callback redis call
+     * @param <T>      result type
+     * @return call result
+     */
+    private <T> T execute(RedisCallback<T> callback) {
+        try {
+            T result = (T) redisTemplate.execute(callback);
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * Log a redis failure, at most once per {@link #FAILURE_LOG_INTERVAL_NANOS}
+     * with the number of failures not logged since the previous one
+     *
+     * @param message failure message
+     * @param e       redis failure
+     */
+    private void logFailure(String message, Exception e) {
+        long now = System.nanoTime();
+        long loggedAt = failureLoggedAt.get();
+        if (now - loggedAt < FAILURE_LOG_INTERVAL_NANOS || !failureLoggedAt.compareAndSet(loggedAt, now)) {
+            suppressedFailures.incrementAndGet();
+            return;
+        }
+        logger.error("{}, {} more failures since the last log", message, suppressedFailures.getAndSet(0), e);
+    }
+
+    /**
+     * Release a permit, a failed release is dropped when its lease expires
+     * Not released while the circuit breaker is open
+     *
+     * @param permit redis permit
+     */
+    private void release(RedisPermit permit) {
+        inFlight.remove(permit);
+        if (circuitBreaker.isOpen()) {
+            return;
+        }
+        try {
+            execute((RedisCallback<Long>) connection -> connection.zRem(permit.key, permit.id));
+        } catch (Exception e) {
+            logFailure("Error releasing concurrency permit, dropped when its lease expires", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        this.scheduler.shutdownNow();
+    }
+
+    public long getLeaseMillis() {
+        return leaseMillis;
+    }
+
+    public RedisCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * get number of permits in flight of this instance
+     *
+     * @return in flight
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    private static byte[] encode(long value) {
+        return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * get Key
+     * use `{}` around the request key to use Redis Key hash tags
+     *
+     * @param id resource key（request uri）
+     * @return encoded permits key
+     */
+    static byte[] getKey(String id) {
+        return ("concurrency_limiter.{" + id + "}.permits").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Permit leased from redis, released once
+     */
+    static class RedisPermit implements ConcurrencyPermit {
+        /**
+         * CAS updater of {@link #released}
+         */
+        private static final AtomicIntegerFieldUpdater<RedisPermit> RELEASED =
+            AtomicIntegerFieldUpdater.newUpdater(RedisPermit.class, "released");
+        /**
+         * limiter of the permit
+         */
+        private final RedisConcurrencyLimiter limiter;
+        /**
+         * encoded permits key
+         */
+        final byte[] key;
+        /**
+         * encoded permit id
+         */
+        final byte[] id;
+        /**
+         * last lease renewal, {@link System#nanoTime()} based
+         */
+        volatile long renewedAt = System.nanoTime();
+        /**
+         * 1 once released
+         */
+        private volatile int released;
+
+        RedisPermit(RedisConcurrencyLimiter limiter, byte[] key, String id) {
+            this.limiter = limiter;
+            this.key = key;
+            this.id = id.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void release() {
+            if (RELEASED.compareAndSet(this, 0, 1)) {
+                limiter.release(this);
+            }
+        }
+    }
+}
@@ -28,6 +28,13 @@ import lombok.Data;
 public class RateLimiterConfig {
     /**
      * interceptor url prefix
+     * Limited by the {@link org.minbox.framework.limiter.web.RateLimiterFilter} or the {@link org.minbox.framework.limiter.web.RateLimiterWebFilter},
+     * each pattern is one request key, such as {@code /api/order}, {@code /api/*}{@code /detail} or {@code /api/user/**}
      */
     private String[] interceptorUrl;
+    /**
+     * QPS of each interceptor url, when the config centre has none
+     * default 0, the global QPS
+     */
+    private Double interceptorQPS = 0D;
 }
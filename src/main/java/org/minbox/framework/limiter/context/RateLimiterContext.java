@@ -18,10 +18,11 @@
 package org.minbox.framework.limiter.context;
 
 import com.google.common.util.concurrent.RateLimiter;
+import org.minbox.framework.limiter.MinBoxRateLimiter;
+import org.minbox.framework.limiter.support.TokenBucket;
 import org.springframework.util.ObjectUtils;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ApiBoot Rate Limiter Context
@@ -29,10 +30,32 @@ import java.util.concurrent.ConcurrentMap;
  * @author 恒宇少年
  */
 public class RateLimiterContext {
+    /**
+     * Refill time of a guava rate limiter, stored permits are limited to one second
+     */
+    private static final long GUAVA_REFILL_NANOS = TimeUnit.SECONDS.toNanos(1);
     /**
      * Cache a rateLimiter for each request address
      */
-    private static final ConcurrentMap<String, RateLimiter> RATE_LIMITER_MAP = new ConcurrentHashMap();
+    private static final RateLimiterRegistry<RateLimiter> RATE_LIMITER_REGISTRY =
+        new RateLimiterRegistry<>(RateLimiterRegistry.DEFAULT_MAXIMUM_SIZE, rateLimiter -> GUAVA_REFILL_NANOS, RateLimiterContext::isPaidOff);
+    /**
+     * Cache a token bucket for each request address
+     */
+    private static final RateLimiterRegistry<TokenBucket> TOKEN_BUCKET_REGISTRY =
+        new RateLimiterRegistry<>(RateLimiterRegistry.DEFAULT_MAXIMUM_SIZE, TokenBucket::getRefillNanos, TokenBucket::isFull);
+
+    /**
+     * Whether a guava rate limiter has paid the permits it granted ahead
+     * Guava grants several permits at once and waits for the debt afterwards, a rate limiter in debt is kept.
+     * A rate limiter without debt may give one permit to the check, it is removed right after
+     *
+     * @param rateLimiter guava rate limiter
+     * @return true : the rate limiter may be removed
+     */
+    static boolean isPaidOff(RateLimiter rateLimiter) {
+        return rateLimiter.tryAcquire(0, TimeUnit.MICROSECONDS);
+    }
 
     /**
      * get rate limiter
@@ -41,7 +64,7 @@ public class RateLimiterContext {
      * @return RateLimiter
      */
     public static RateLimiter getRateLimiter(String requestUri) {
-        return RATE_LIMITER_MAP.get(requestUri);
+        return RATE_LIMITER_REGISTRY.get(requestUri);
     }
 
     /**
@@ -54,9 +77,103 @@ public class RateLimiterContext {
     public static RateLimiter cacheRateLimiter(String requestUri, double qps) {
         RateLimiter rateLimiter = getRateLimiter(requestUri);
         if (ObjectUtils.isEmpty(rateLimiter)) {
-            rateLimiter = RateLimiter.create(qps);
-            RATE_LIMITER_MAP.put(requestUri, rateLimiter);
+            rateLimiter = RATE_LIMITER_REGISTRY.computeIfAbsent(requestUri, key -> RateLimiter.create(qps));
         }
         return rateLimiter;
     }
+
+    /**
+     * Change the rate of a cached rate limiter in place
+     * The rate limiters of the key expression values of the request uri change too,
+     * a rate limiter without a QPS is removed, recreated with the next priority QPS
+     *
+     * @param requestUri request uri
+     * @param qps        new qps
+     */
+    public static void updateRateLimiter(String requestUri, double qps) {
+        String keyPrefix = requestUri + MinBoxRateLimiter.KEY_SEPARATOR;
+        RATE_LIMITER_REGISTRY.forEach((key, rateLimiter) -> {
+            if (key.equals(requestUri) || key.startsWith(keyPrefix)) {
+                if (qps <= 0) {
+                    RATE_LIMITER_REGISTRY.remove(key);
+                } else {
+                    rateLimiter.setRate(qps);
+                }
+            }
+        });
+    }
+
+    /**
+     * get token bucket
+     *
+     * @param requestUri request uri
+     * @return TokenBucket
+     */
+    public static TokenBucket getTokenBucket(String requestUri) {
+        return TOKEN_BUCKET_REGISTRY.get(requestUri);
+    }
+
+    /**
+     * cache request uri token bucket
+     *
+     * @param requestUri request uri
+     * @param qps        qps
+     * @return TokenBucket
+     */
+    public static TokenBucket cacheTokenBucket(String requestUri, double qps) {
+        TokenBucket tokenBucket = getTokenBucket(requestUri);
+        if (ObjectUtils.isEmpty(tokenBucket)) {
+            tokenBucket = TOKEN_BUCKET_REGISTRY.computeIfAbsent(requestUri, key -> new TokenBucket(qps));
+        }
+        return tokenBucket;
+    }
+
+    /**
+     * Change the rate of a cached token bucket in place, stored tokens are kept
+     * The token buckets of the key expression values of the request uri change too,
+     * a token bucket without a QPS is removed, recreated with the next priority QPS
+     *
+     * @param requestUri request uri
+     * @param qps        new qps
+     */
+    public static void updateTokenBucket(String requestUri, double qps) {
+        String keyPrefix = requestUri + MinBoxRateLimiter.KEY_SEPARATOR;
+        TOKEN_BUCKET_REGISTRY.forEach((key, tokenBucket) -> {
+            if (key.equals(requestUri) || key.startsWith(keyPrefix)) {
+                if (qps <= 0) {
+                    TOKEN_BUCKET_REGISTRY.remove(key);
+                } else {
+                    tokenBucket.setRate(qps);
+                }
+            }
+        });
+    }
+
+    /**
+     * get the guava rate limiter registry, exposes size and eviction counters
+     *
+     * @return RateLimiterRegistry
+     */
+    public static RateLimiterRegistry<RateLimiter> getRateLimiterRegistry() {
+        return RATE_LIMITER_REGISTRY;
+    }
+
+    /**
+     * get the token bucket registry, exposes size and eviction counters
+     *
+     * @return RateLimiterRegistry
+     */
+    public static RateLimiterRegistry<TokenBucket> getTokenBucketRegistry() {
+        return TOKEN_BUCKET_REGISTRY;
+    }
+
+    /**
+     * set the maximum number of cached rate limiters of each registry
+     *
+     * @param maximumSize maximum size
+     */
+    public static void setMaximumSize(int maximumSize) {
+        RATE_LIMITER_REGISTRY.setMaximumSize(maximumSize);
+        TOKEN_BUCKET_REGISTRY.setMaximumSize(maximumSize);
+    }
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.context;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Bounded, idle-evicting registry of rate limiters
+ * <p>
+ * An entry idle for longer than its refill time is expired, a bucket idle that long would be full anyway.
+ * When the registry holds more than {@link #maximumSize} entries, the least recently used entry of a small sample is evicted.
+ * <p>
+ * Maintenance is amortized over the insertions: each insertion sweeps at most {@link #SWEEP_BATCH_SIZE} entries
+ * from where the previous sweep stopped. Only one thread sweeps at a time, the others skip the sweep instead of waiting.
+ * <p>
+ * An entry is only removed by the sweep if the {@link #removable} predicate accepts it, such as a concurrency counter
+ * without permits in flight, or a bucket that owes no permits reserved ahead: a new bucket would cancel the debt.
+ * The predicate may retire the value, it is called right before the removal.
+ * Entries the predicate keeps may hold the registry above {@link #maximumSize} until they become removable.
+ *
+ * @param <V> rate limiter type
+ * @author 恒宇少年
+ */
+public class RateLimiterRegistry<V> {
+    /**
+     * default maximum number of entries
+     */
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+    /**
+     * number of entries visited by one sweep
+     */
+    static final int SWEEP_BATCH_SIZE = 16;
+    /**
+     * The access time is only written when older than this, avoid a write per lookup on hot keys
+     */
+    private static final long ACCESS_TIME_GRANULARITY = TimeUnit.MILLISECONDS.toNanos(1);
+    /**
+     * rate limiter entries
+     */
+    private final ConcurrentMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    /**
+     * refill time of a rate limiter in nanos
+     */
+    private final ToLongFunction<V> refillNanos;
+    /**
+     * Whether the sweep may remove a rate limiter
+     */
+    private final Predicate<V> removable;
+    /**
+     * Only one thread sweeps at a time
+     */
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    /**
+     * number of entries evicted because of the maximum size
+     */
+    private final LongAdder evictionCount = new LongAdder();
+    /**
+     * number of entries expired because of idle time
+     */
+    private final LongAdder expirationCount = new LongAdder();
+    /**
+     * maximum number of entries
+     */
+    private volatile int maximumSize;
+    /**
+     * Position of the next sweep, only used by the sweeping thread
+     */
+    private Iterator<Map.Entry<String, Entry<V>>> sweepCursor;
+
+    public RateLimiterRegistry(ToLongFunction<V> refillNanos) {
+        this(DEFAULT_MAXIMUM_SIZE, refillNanos);
+    }
+
+    public RateLimiterRegistry(int maximumSize, ToLongFunction<V> refillNanos) {
+        this(maximumSize, refillNanos, value -> true);
+    }
+
+    public RateLimiterRegistry(int maximumSize, ToLongFunction<V> refillNanos, Predicate<V> removable) {
+        this.maximumSize = maximumSize;
+        this.refillNanos = refillNanos;
+        this.removable = removable;
+    }
+
+    /**
+     * get rate limiter
+     *
+     * @param key request key
+     * @return rate limiter, null if absent
+     */
+    public V get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        entry.access(System.nanoTime());
+        return entry.value;
+    }
+
+    /**
+     * get rate limiter, create and register it if absent
+     *
+     * @param key     request key
+     * @param factory rate limiter factory
+     * @return rate limiter
+     */
+    public V computeIfAbsent(String key, Function<String, V> factory) {
+        V value = get(key);
+        if (value != null) {
+            return value;
+        }
+        value = entries.computeIfAbsent(key, k -> new Entry<>(factory.apply(k), refillNanos, System.nanoTime())).value;
+        // An insertion above the maximum size evicts two entries, the size converges back to the maximum
+        sweep();
+        if (entries.size() > maximumSize) {
+            sweep();
+        }
+        return value;
+    }
+
+    /**
+     * register rate limiter, replacing the current one
+     *
+     * @param key   request key
+     * @param value rate limiter
+     */
+    public void put(String key, V value) {
+        if (entries.put(key, new Entry<>(value, refillNanos, System.nanoTime())) == null) {
+            sweep();
+            if (entries.size() > maximumSize) {
+                sweep();
+            }
+        }
+    }
+
+    /**
+     * remove rate limiter
+     *
+     * @param key request key
+     * @return removed rate limiter, null if absent
+     */
+    public V remove(String key) {
+        Entry<V> entry = entries.remove(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Visit the entries
+     *
+     * @param action entry action
+     */
+    public void forEach(BiConsumer<String, V> action) {
+        entries.forEach((key, entry) -> action.accept(key, entry.value));
+    }
+
+    /**
+     * Expire idle entries and evict entries above the maximum size, one batch at a time
+     */
+    void sweep() {
+        if (!sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            Map.Entry<String, Entry<V>> eldest = null;
+            for (int i = 0; i < SWEEP_BATCH_SIZE; i++) {
+                if (sweepCursor == null || !sweepCursor.hasNext()) {
+                    sweepCursor = entries.entrySet().iterator();
+                    if (!sweepCursor.hasNext()) {
+                        break;
+                    }
+                }
+                Map.Entry<String, Entry<V>> candidate = sweepCursor.next();
+                Entry<V> entry = candidate.getValue();
+                if (entry.isExpired(now)) {
+                    if (removable.test(entry.value) && entries.remove(candidate.getKey(), entry)) {
+                        expirationCount.increment();
+                    }
+                } else if (eldest == null || entry.accessTime - eldest.getValue().accessTime < 0) {
+                    eldest = candidate;
+                }
+            }
+            if (eldest != null && entries.size() > maximumSize && removable.test(eldest.getValue().value)
+                && entries.remove(eldest.getKey(), eldest.getValue())) {
+                evictionCount.increment();
+            }
+        } finally {
+            sweeping.set(false);
+        }
+    }
+
+    /**
+     * get number of entries
+     *
+     * @return size
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * get number of entries evicted because of the maximum size
+     *
+     * @return eviction count
+     */
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * get number of entries expired because of idle time
+     *
+     * @return expiration count
+     */
+    public long expirationCount() {
+        return expirationCount.sum();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public void setMaximumSize(int maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    /**
+     * Registry entry
+     *
+     * @param <V> rate limiter type
+     */
+    static class Entry<V> {
+        /**
+         * rate limiter
+         */
+        final V value;
+        /**
+         * idle time after which the entry expires
+         */
+        final long expireAfterNanos;
+        /**
+         * last access time, {@link System#nanoTime()} based
+         */
+        volatile long accessTime;
+
+        Entry(V value, ToLongFunction<V> refillNanos, long now) {
+            this.value = value;
+            this.expireAfterNanos = refillNanos.applyAsLong(value);
+            this.accessTime = now;
+        }
+
+        void access(long now) {
+            if (now - accessTime > ACCESS_TIME_GRANULARITY) {
+                accessTime = now;
+            }
+        }
+
+        boolean isExpired(long now) {
+            return now - accessTime > expireAfterNanos;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.minbox.framework.limiter.context.RateLimiterRegistry;
+import org.minbox.framework.limiter.support.RedisCircuitBreaker;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micrometer {@link RateLimiterMetrics}
+ * <p>
+ * Meters:
+ * <ul>
+ * <li>{@code minbox.ratelimiter.requests} counter, tags {@code key} and {@code result} (permitted, rejected)</li>
+ * <li>{@code minbox.ratelimiter.acquire} timer, tag {@code key}</li>
+ * <li>{@code minbox.ratelimiter.redis.script} timer with percentile histogram, tag {@code result} (success, failure)</li>
+ * <li>{@code minbox.ratelimiter.fallback} counter, tag {@code mode} (local, fail_open)</li>
+ * <li>{@code minbox.ratelimiter.registry.size} gauge and {@code minbox.ratelimiter.registry.evictions} counter, tag {@code name}</li>
+ * <li>{@code minbox.ratelimiter.redis.circuit.open} gauge, 1 while the breaker is open, tag {@code name}</li>
+ * </ul>
+ * The {@code key} tag is the method key, never the key expression value. Methods registered after
+ * {@link #maximumKeys} share the {@code key=other} meters, the tag cardinality stays bounded.
+ *
+ * @author 恒宇少年
+ */
+public class MicrometerRateLimiterMetrics implements RateLimiterMetrics {
+    /**
+     * default maximum number of distinct key tags
+     */
+    public static final int DEFAULT_MAXIMUM_KEYS = 1000;
+    /**
+     * key tag of the methods above the maximum
+     */
+    static final String OTHER_KEY = "other";
+    /**
+     * meter registry
+     */
+    private final MeterRegistry meterRegistry;
+    /**
+     * maximum number of distinct key tags
+     */
+    private final int maximumKeys;
+    /**
+     * Key metrics of each method key, only read when a method descriptor is created
+     */
+    private final ConcurrentMap<String, RateLimiterKeyMetrics> keyMetrics = new ConcurrentHashMap<>();
+    /**
+     * redis script round trip of successful calls
+     */
+    private final Timer scriptSuccess;
+    /**
+     * redis script round trip of failed calls
+     */
+    private final Timer scriptFailure;
+    /**
+     * requests limited by a local bucket while redis is unavailable
+     */
+    private final Counter localFallback;
+    /**
+     * requests allowed while redis is unavailable
+     */
+    private final Counter failOpen;
+
+    public MicrometerRateLimiterMetrics(MeterRegistry meterRegistry) {
+        this(meterRegistry, DEFAULT_MAXIMUM_KEYS);
+    }
+
+    public MicrometerRateLimiterMetrics(MeterRegistry meterRegistry, int maximumKeys) {
+        Assert.notNull(meterRegistry, "MeterRegistry is required.");
+        Assert.isTrue(maximumKeys > 0, "The maximum keys must be greater than 0.");
+        this.meterRegistry = meterRegistry;
+        this.maximumKeys = maximumKeys;
+        this.scriptSuccess = scriptTimer("success");
+        this.scriptFailure = scriptTimer("failure");
+        this.localFallback = fallbackCounter("local");
+        this.failOpen = fallbackCounter("fail_open");
+    }
+
+    private Timer scriptTimer(String result) {
+        return Timer.builder("minbox.ratelimiter.redis.script")
+            .description("Round trip of the redis rate limiter scripts")
+            .tag("result", result)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    private Counter fallbackCounter(String mode) {
+        return Counter.builder("minbox.ratelimiter.fallback")
+            .description("Requests decided without redis")
+            .tag("mode", mode)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public RateLimiterKeyMetrics getKeyMetrics(String requestKey) {
+        RateLimiterKeyMetrics metrics = keyMetrics.get(requestKey);
+        if (metrics != null) {
+            return metrics;
+        }
+        // the size check races with other registrations, the bound may be exceeded by a few keys
+        String keyTag = keyMetrics.size() < maximumKeys ? requestKey : OTHER_KEY;
+        return keyMetrics.computeIfAbsent(requestKey, key -> new MicrometerKeyMetrics(meterRegistry, keyTag));
+    }
+
+    @Override
+    public void recordScriptExecution(long nanos, boolean success) {
+        (success ? scriptSuccess : scriptFailure).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordFallback(boolean local) {
+        (local ? localFallback : failOpen).increment();
+    }
+
+    @Override
+    public void bindRegistry(String name, RateLimiterRegistry<?> registry) {
+        Gauge.builder("minbox.ratelimiter.registry.size", registry, RateLimiterRegistry::size)
+            .description("Rate limiters cached by the registry")
+            .tag("name", name)
+            .register(meterRegistry);
+        FunctionCounter.builder("minbox.ratelimiter.registry.evictions", registry, RateLimiterRegistry::evictionCount)
+            .description("Rate limiters evicted because the registry is full")
+            .tag("name", name)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void bindCircuitBreaker(String name, RedisCircuitBreaker circuitBreaker) {
+        Gauge.builder("minbox.ratelimiter.redis.circuit.open", circuitBreaker, breaker -> breaker.isOpen() ? 1 : 0)
+            .description("1 while redis calls are short-circuited")
+            .tag("name", name)
+            .register(meterRegistry);
+    }
+
+    /**
+     * Pre-registered meters of one method key
+     */
+    static class MicrometerKeyMetrics implements RateLimiterKeyMetrics {
+        private final Counter permitted;
+        private final Counter rejected;
+        private final Timer acquire;
+
+        MicrometerKeyMetrics(MeterRegistry meterRegistry, String key) {
+            this.permitted = requestCounter(meterRegistry, key, "permitted");
+            this.rejected = requestCounter(meterRegistry, key, "rejected");
+            this.acquire = Timer.builder("minbox.ratelimiter.acquire")
+                .description("Time spent deciding whether a request is allowed")
+                .tag("key", key)
+                .register(meterRegistry);
+        }
+
+        private static Counter requestCounter(MeterRegistry meterRegistry, String key, String result) {
+            return Counter.builder("minbox.ratelimiter.requests")
+                .description("Rate limited requests")
+                .tag("key", key)
+                .tag("result", result)
+                .register(meterRegistry);
+        }
+
+        @Override
+        public void record(boolean permitted, long acquireNanos) {
+            (permitted ? this.permitted : this.rejected).increment();
+            this.acquire.record(acquireNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.metrics;
+
+/**
+ * Metrics of one rate limited method
+ * Pre-registered meters, recording is a counter increment and a timer update
+ *
+ * @author 恒宇少年
+ */
+public interface RateLimiterKeyMetrics {
+    /**
+     * Records nothing
+     */
+    RateLimiterKeyMetrics NOOP = (permitted, acquireNanos) -> {
+    };
+
+    /**
+     * Record a rate limiter decision
+     *
+     * @param permitted    true : the request was allowed
+     * @param acquireNanos time spent deciding, in nanos
+     */
+    void record(boolean permitted, long acquireNanos);
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.metrics;
+
+import org.minbox.framework.limiter.context.RateLimiterRegistry;
+import org.minbox.framework.limiter.support.RedisCircuitBreaker;
+
+/**
+ * ApiBoot RateLimiter metrics
+ * <p>
+ * Meters are resolved when a limiter or a method descriptor is created, never per request:
+ * the interceptor keeps the {@link RateLimiterKeyMetrics} of each method and records its decisions directly.
+ * Every method defaults to nothing, {@link #NOOP} is used when no metrics are configured.
+ *
+ * @author 恒宇少年
+ * @see MicrometerRateLimiterMetrics
+ */
+public interface RateLimiterMetrics {
+    /**
+     * Records nothing
+     */
+    RateLimiterMetrics NOOP = new RateLimiterMetrics() {
+    };
+
+    /**
+     * get the metrics of a rate limited method
+     * Called once per method descriptor, the result is kept by the descriptor
+     *
+     * @param requestKey request key of the method, without key expression value
+     * @return key metrics
+     */
+    default RateLimiterKeyMetrics getKeyMetrics(String requestKey) {
+        return RateLimiterKeyMetrics.NOOP;
+    }
+
+    /**
+     * Record the round trip of a redis script call
+     *
+     * @param nanos   round trip time in nanos
+     * @param success false if the call failed
+     */
+    default void recordScriptExecution(long nanos, boolean success) {
+        //...
+    }
+
+    /**
+     * Record a request decided without redis, redis failed or the circuit breaker is open
+     *
+     * @param local true : limited by a local bucket, false : allowed unconditionally (fail-open)
+     */
+    default void recordFallback(boolean local) {
+        //...
+    }
+
+    /**
+     * Expose the size of a rate limiter registry
+     *
+     * @param name     registry name
+     * @param registry rate limiter registry
+     */
+    default void bindRegistry(String name, RateLimiterRegistry<?> registry) {
+        //...
+    }
+
+    /**
+     * Expose the state of a redis circuit breaker
+     *
+     * @param name           rate limiter name
+     * @param circuitBreaker redis circuit breaker
+     */
+    default void bindCircuitBreaker(String name, RedisCircuitBreaker circuitBreaker) {
+        //...
+    }
+}
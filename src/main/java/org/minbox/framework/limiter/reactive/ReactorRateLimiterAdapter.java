@@ -0,0 +1,166 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.reactive;
+
+import org.minbox.framework.limiter.MinBoxRateLimiter;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * Reactor adapter of {@link MinBoxRateLimiter}
+ * <p>
+ * The token is requested on subscription through {@link MinBoxRateLimiter#tryAcquireAsync(Double, String)},
+ * no thread is blocked while waiting for the limiter
+ *
+ * @author 恒宇少年
+ */
+public class ReactorRateLimiterAdapter {
+    /**
+     * rate limiter
+     */
+    private final MinBoxRateLimiter minBoxRateLimiter;
+
+    public ReactorRateLimiterAdapter(MinBoxRateLimiter minBoxRateLimiter) {
+        this.minBoxRateLimiter = minBoxRateLimiter;
+    }
+
+    /**
+     * Attempt to obtain a request current limit token on subscription
+     *
+     * @param QPS        queries per second
+     * @param requestKey request key
+     * @return emits true : allow access to
+     */
+    public Mono<Boolean> tryAcquire(Double QPS, String requestKey) {
+        return Mono.defer(() -> Mono.fromCompletionStage(minBoxRateLimiter.tryAcquireAsync(QPS, requestKey)));
+    }
+
+    /**
+     * Attempt to obtain several request current limit tokens on subscription
+     *
+     * @param QPS        queries per second
+     * @param requestKey request key
+     * @param permits    number of tokens
+     * @return emits true : allow access to
+     */
+    public Mono<Boolean> tryAcquire(Double QPS, String requestKey, int permits) {
+        return Mono.defer(() -> Mono.fromCompletionStage(minBoxRateLimiter.tryAcquireAsync(QPS, requestKey, permits)));
+    }
+
+    /**
+     * Attempt to obtain a token of every request key on subscription
+     *
+     * @param QPS         queries per second of each key
+     * @param requestKeys request keys
+     * @return emits true : allow access to
+     * @see MinBoxRateLimiter#tryAcquireAsync(Double[], String[])
+     */
+    public Mono<Boolean> tryAcquire(Double[] QPS, String[] requestKeys) {
+        return Mono.defer(() -> Mono.fromCompletionStage(minBoxRateLimiter.tryAcquireAsync(QPS, requestKeys)));
+    }
+
+    /**
+     * Attempt to obtain several tokens of every request key on subscription
+     *
+     * @param QPS         queries per second of each key
+     * @param requestKeys request keys
+     * @param permits     number of tokens of each key
+     * @return emits true : allow access to
+     * @see MinBoxRateLimiter#tryAcquireAsync(Double[], String[], int)
+     */
+    public Mono<Boolean> tryAcquire(Double[] QPS, String[] requestKeys, int permits) {
+        return Mono.defer(() -> Mono.fromCompletionStage(minBoxRateLimiter.tryAcquireAsync(QPS, requestKeys, permits)));
+    }
+
+    /**
+     * Subscribe to the source only if a token is obtained
+     *
+     * @param QPS        queries per second
+     * @param requestKey request key
+     * @param source     limited source, only called when a token is obtained
+     * @param overflow   result after flow exceeding
+     * @param <T>        element type
+     * @return limited mono
+     */
+    public <T> Mono<T> limit(Double QPS, String requestKey, Supplier<? extends Mono<T>> source, Supplier<? extends Mono<T>> overflow) {
+        return limit(tryAcquire(QPS, requestKey), source, overflow);
+    }
+
+    /**
+     * Subscribe to the source only if the acquire emits true
+     *
+     * @param acquire  token request, such as {@link #tryAcquire(Double[], String[])}
+     * @param source   limited source, only called when a token is obtained
+     * @param overflow result after flow exceeding
+     * @param <T>      element type
+     * @return limited mono
+     */
+    public <T> Mono<T> limit(Mono<Boolean> acquire, Supplier<? extends Mono<T>> source, Supplier<? extends Mono<T>> overflow) {
+        return acquire.flatMap(allowed -> allowed ? source.get() : overflow.get());
+    }
+
+    /**
+     * Subscribe to the source only if a token is obtained
+     *
+     * @param QPS        queries per second
+     * @param requestKey request key
+     * @param source     limited source, only called when a token is obtained
+     * @param overflow   result after flow exceeding
+     * @param <T>        element type
+     * @return limited flux
+     */
+    public <T> Flux<T> limitMany(Double QPS, String requestKey, Supplier<? extends Publisher<T>> source, Supplier<? extends Publisher<T>> overflow) {
+        return limitMany(tryAcquire(QPS, requestKey), source, overflow);
+    }
+
+    /**
+     * Subscribe to the source only if the acquire emits true
+     *
+     * @param acquire  token request, such as {@link #tryAcquire(Double[], String[])}
+     * @param source   limited source, only called when a token is obtained
+     * @param overflow result after flow exceeding
+     * @param <T>      element type
+     * @return limited flux
+     */
+    public <T> Flux<T> limitMany(Mono<Boolean> acquire, Supplier<? extends Publisher<T>> source, Supplier<? extends Publisher<T>> overflow) {
+        return acquire.flatMapMany(allowed -> allowed ? source.get() : overflow.get());
+    }
+
+    /**
+     * Whether the type is a {@link Mono}
+     *
+     * @param type method return type
+     * @return true : mono type
+     */
+    public static boolean isMono(Class<?> type) {
+        return Mono.class.isAssignableFrom(type);
+    }
+
+    /**
+     * Whether the type is a {@link Flux}
+     *
+     * @param type method return type
+     * @return true : flux type
+     */
+    public static boolean isFlux(Class<?> type) {
+        return Flux.class.isAssignableFrom(type);
+    }
+}
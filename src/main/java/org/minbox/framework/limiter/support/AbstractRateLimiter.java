@@ -20,14 +20,22 @@ package org.minbox.framework.limiter.support;
 import org.minbox.framework.limiter.MinBoxRateLimiter;
 import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
 import org.minbox.framework.limiter.centre.support.AbstractRateLimiterConfigCentre;
+import org.minbox.framework.limiter.metrics.RateLimiterMetrics;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 
+import java.util.concurrent.locks.LockSupport;
+
 /**
  * ApiBoot RateLimiter Abstract Support
+ * <p>
+ * The QPS change listener is registered by {@link #afterPropertiesSet()}, once the subclass is fully constructed.
+ * A rate limiter created outside of a spring context calls it itself.
  *
  * @author 恒宇少年
  */
-public abstract class AbstractRateLimiter implements MinBoxRateLimiter {
+public abstract class AbstractRateLimiter implements MinBoxRateLimiter, InitializingBean {
     /**
      * global QPS
      */
@@ -36,12 +44,38 @@ public abstract class AbstractRateLimiter implements MinBoxRateLimiter {
      * ApiBoot RateLimiter Config Centre
      */
     private RateLimiterConfigCentre rateLimiterConfigCentre;
+    /**
+     * rate limiter metrics
+     */
+    private RateLimiterMetrics rateLimiterMetrics = RateLimiterMetrics.NOOP;
 
     public AbstractRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre) {
         this.globalQPS = globalQPS;
         this.rateLimiterConfigCentre = rateLimiterConfigCentre;
     }
 
+    /**
+     * Listen to the QPS changes of the configuration center
+     * Not done by the constructor, a change notified meanwhile would reach a partly constructed subclass
+     */
+    @Override
+    public void afterPropertiesSet() {
+        if (rateLimiterConfigCentre != null) {
+            rateLimiterConfigCentre.addConfigChangeListener(this::onQpsChange);
+        }
+    }
+
+    /**
+     * QPS of a request key changed in the configuration center
+     * default nothing to do, the QPS is read on every request
+     *
+     * @param configKey config key
+     * @param QPS       new QPS value, {@link AbstractRateLimiterConfigCentre#DEFAULT_QPS} if removed
+     */
+    protected void onQpsChange(String configKey, Long QPS) {
+        //...
+    }
+
     /**
      * Priority to get QPS
      * order
@@ -54,21 +88,61 @@ public abstract class AbstractRateLimiter implements MinBoxRateLimiter {
      * @return QPS value
      */
     protected Long getPriorityQPS(String configKey, Double annotationQPS) {
+        // keys of the same method share the config of the method
+        int separatorIndex = configKey.indexOf(KEY_SEPARATOR);
+        if (separatorIndex >= 0) {
+            configKey = configKey.substring(0, separatorIndex);
+        }
         // first：config centre value
         Long centreConfigValue = rateLimiterConfigCentre.getQps(configKey);
         if (!AbstractRateLimiterConfigCentre.DEFAULT_QPS.equals(centreConfigValue)) {
             return centreConfigValue;
         }
-        // If the configuration center does not have the qps of the key
-        // set qps to config centre
-        else {
-            rateLimiterConfigCentre.setQps(configKey, annotationQPS.longValue());
-        }
         // second：@RateLimiter value
         if (!ObjectUtils.isEmpty(annotationQPS) && annotationQPS > 0) {
+            // If the configuration center does not have the qps of the key
+            // set qps to config centre, a missing QPS is not registered as 0
+            rateLimiterConfigCentre.setQps(configKey, annotationQPS.longValue());
             return annotationQPS.longValue();
         }
         // third：global value
         return globalQPS;
     }
+
+    public RateLimiterMetrics getRateLimiterMetrics() {
+        return rateLimiterMetrics;
+    }
+
+    /**
+     * set rate limiter metrics
+     * Subclasses bind the registries they own to the metrics
+     *
+     * @param rateLimiterMetrics rate limiter metrics
+     */
+    public void setRateLimiterMetrics(RateLimiterMetrics rateLimiterMetrics) {
+        Assert.notNull(rateLimiterMetrics, "RateLimiterMetrics is required.");
+        this.rateLimiterMetrics = rateLimiterMetrics;
+    }
+
+    /**
+     * Park the calling thread for the reserved wait time
+     * <p>
+     * The tokens are already reserved, an interrupt does not end the wait but is restored afterwards.
+     * Parking holds no monitor, virtual threads are not pinned
+     *
+     * @param waitNanos wait time in nanos
+     */
+    protected static void parkUninterruptibly(long waitNanos) {
+        boolean interrupted = false;
+        long deadline = System.nanoTime() + waitNanos;
+        for (long remaining = waitNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
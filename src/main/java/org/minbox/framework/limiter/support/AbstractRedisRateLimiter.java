@@ -0,0 +1,517 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
+import org.minbox.framework.limiter.context.RateLimiterRegistry;
+import org.minbox.framework.limiter.exception.RateLimiterException;
+import org.minbox.framework.limiter.metrics.RateLimiterMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * ApiBoot RateLimiter Redis Abstract Support
+ * <p>
+ * Scripts are called by digest with keys and arguments already encoded to bytes,
+ * no serializer, key list or argument string is created per call
+ * <p>
+ * A {@link RedisCircuitBreaker} guards the script calls. When redis fails, or while the breaker is open,
+ * requests are limited by a local token bucket per key with the QPS divided by the estimated number of
+ * live instances ({@link RedisInstanceHeartbeat}), instead of being allowed unconditionally.
+ * The rate limiters of an application share one heartbeat and its scheduler.
+ *
+ * @author 恒宇少年
+ */
+public abstract class AbstractRedisRateLimiter extends AbstractRateLimiter implements DisposableBean {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(AbstractRedisRateLimiter.class);
+    /**
+     * encoded argument "1"
+     */
+    protected static final byte[] ONE = encode(1L);
+    /**
+     * encoded argument "0"
+     */
+    protected static final byte[] ZERO = encode(0L);
+    /**
+     * Encoded script arguments of a key idle for this long are dropped
+     */
+    private static final long ARGUMENTS_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /**
+     * Thrown instead of calling redis while the circuit breaker is open, shared, the stack trace is never used
+     */
+    private static final RateLimiterException SHORT_CIRCUITED = new RateLimiterException("Redis rate limiter circuit breaker is open.");
+    /**
+     * Whether reactor is on the classpath
+     */
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Flux", AbstractRedisRateLimiter.class.getClassLoader());
+    /**
+     * redis template
+     */
+    private RedisTemplate redisTemplate;
+    /**
+     * Non-blocking script execution, null if the connection factory is not reactive
+     */
+    private ReactiveRedisScriptExecutor reactiveScriptExecutor;
+    /**
+     * Cache encoded script keys and arguments for each request key
+     */
+    private final RateLimiterRegistry<ScriptArguments> scriptArguments = new RateLimiterRegistry<>(arguments -> ARGUMENTS_IDLE_NANOS);
+    /**
+     * Local token buckets used while redis is unavailable
+     */
+    private final RateLimiterRegistry<TokenBucket> fallbackBuckets =
+        new RateLimiterRegistry<>(RateLimiterRegistry.DEFAULT_MAXIMUM_SIZE, TokenBucket::getRefillNanos, TokenBucket::isFull);
+    /**
+     * redis circuit breaker
+     */
+    private final RedisCircuitBreaker circuitBreaker;
+    /**
+     * live instances estimate
+     */
+    private final RedisInstanceHeartbeat instanceHeartbeat;
+    /**
+     * scheduler of the retained heartbeat, runs the circuit breaker probes and the background redis calls
+     */
+    private final ScheduledExecutorService scheduler;
+    /**
+     * Whether the heartbeat was released, only once
+     */
+    private final AtomicBoolean destroyed = new AtomicBoolean();
+    /**
+     * Whether requests are limited locally when redis is unavailable, otherwise they are allowed
+     */
+    private volatile boolean localFallback = true;
+
+    public AbstractRedisRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate) {
+        this(globalQPS, rateLimiterConfigCentre, redisTemplate, null);
+    }
+
+    /**
+     * Use the given instance heartbeat, such as an application bean given to every redis rate limiter
+     *
+     * @param globalQPS               global QPS
+     * @param rateLimiterConfigCentre config centre
+     * @param redisTemplate           redis template
+     * @param instanceHeartbeat       heartbeat shared by the rate limiters of the application,
+     *                                such as {@link RedisInstanceHeartbeat#getShared(RedisTemplate, String)} with the application name,
+     *                                null for {@link RedisInstanceHeartbeat#getShared(RedisTemplate)}
+     */
+    public AbstractRedisRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate,
+                                    RedisInstanceHeartbeat instanceHeartbeat) {
+        super(globalQPS, rateLimiterConfigCentre);
+        this.redisTemplate = redisTemplate;
+        Assert.notNull(redisTemplate, "No RedisTemplate implementation class was found.");
+
+        // The lettuce connection factory is both blocking and reactive
+        RedisConnectionFactory connectionFactory = redisTemplate.getConnectionFactory();
+        if (REACTOR_PRESENT && connectionFactory instanceof ReactiveRedisConnectionFactory) {
+            this.reactiveScriptExecutor = new ReactiveRedisScriptExecutor((ReactiveRedisConnectionFactory) connectionFactory);
+        }
+
+        this.instanceHeartbeat = instanceHeartbeat != null ? instanceHeartbeat : RedisInstanceHeartbeat.getShared(redisTemplate);
+        this.scheduler = this.instanceHeartbeat.retain();
+        this.circuitBreaker = new RedisCircuitBreaker(
+            () -> redisTemplate.execute((RedisCallback<String>) RedisConnection::ping), this.scheduler);
+    }
+
+    /**
+     * get redis keys of a request key
+     * use `{}` around the request key to use Redis Key hash tags
+     *
+     * @param requestKey request key
+     * @return redis keys
+     */
+    protected abstract List<String> getRedisKeys(String requestKey);
+
+    /**
+     * get encoded script keys and arguments
+     * Only encoded again when the arguments of the key change
+     *
+     * @param requestKey request key
+     * @param first      first script argument
+     * @param second     second script argument
+     * @return script arguments
+     */
+    protected ScriptArguments getScriptArguments(String requestKey, long first, long second) {
+        return getScriptArguments(requestKey, null, first, second);
+    }
+
+    /**
+     * get encoded script keys and arguments, with other redis keys than {@link #getRedisKeys(String)}
+     *
+     * @param requestKey request key
+     * @param redisKeys  redis keys of the request key, null for {@link #getRedisKeys(String)}
+     * @param first      first script argument
+     * @param second     second script argument
+     * @return script arguments
+     */
+    protected ScriptArguments getScriptArguments(String requestKey, Function<String, List<String>> redisKeys, long first, long second) {
+        ScriptArguments arguments = this.scriptArguments.get(requestKey);
+        if (arguments == null || arguments.first != first || arguments.second != second) {
+            byte[][] keys = arguments != null ? arguments.keys :
+                encode(redisKeys != null ? redisKeys.apply(requestKey) : getRedisKeys(requestKey));
+            arguments = new ScriptArguments(keys, first, second);
+            this.scriptArguments.put(requestKey, arguments);
+        }
+        return arguments;
+    }
+
+    /**
+     * Execute lua script
+     *
+     * @param script      lua script
+     * @param numKeys     number of keys
+     * @param keysAndArgs encoded keys followed by encoded arguments
+     * @return script result
+     */
+    protected List<Long> execute(CachedRedisScript script, int numKeys, byte[]... keysAndArgs) {
+        if (this.circuitBreaker.isOpen()) {
+            throw SHORT_CIRCUITED;
+        }
+        long start = System.nanoTime();
+        try {
+            List<Long> result = (List<Long>) this.redisTemplate.execute((RedisCallback<List<Long>>) connection -> script.execute(connection, numKeys, keysAndArgs));
+            getRateLimiterMetrics().recordScriptExecution(System.nanoTime() - start, true);
+            this.circuitBreaker.onSuccess();
+            return result;
+        } catch (RuntimeException e) {
+            getRateLimiterMetrics().recordScriptExecution(System.nanoTime() - start, false);
+            this.circuitBreaker.onFailure();
+            throw e;
+        }
+    }
+
+    /**
+     * Execute lua script without blocking the calling thread
+     * Runs on the calling thread when the connection factory is not reactive
+     *
+     * @param script      lua script
+     * @param numKeys     number of keys
+     * @param keysAndArgs encoded keys followed by encoded arguments
+     * @return completes with the script result
+     */
+    protected CompletableFuture<List<Long>> executeAsync(CachedRedisScript script, int numKeys, byte[]... keysAndArgs) {
+        if (this.reactiveScriptExecutor == null) {
+            CompletableFuture<List<Long>> result = new CompletableFuture<>();
+            try {
+                result.complete(execute(script, numKeys, keysAndArgs));
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }
+        if (this.circuitBreaker.isOpen()) {
+            CompletableFuture<List<Long>> result = new CompletableFuture<>();
+            result.completeExceptionally(SHORT_CIRCUITED);
+            return result;
+        }
+        long start = System.nanoTime();
+        return this.reactiveScriptExecutor.execute(script, numKeys, keysAndArgs)
+            .whenComplete((result, e) -> {
+                getRateLimiterMetrics().recordScriptExecution(System.nanoTime() - start, e == null);
+                if (e == null) {
+                    this.circuitBreaker.onSuccess();
+                } else {
+                    this.circuitBreaker.onFailure();
+                }
+            });
+    }
+
+    /**
+     * Limit the request locally, redis failed or the circuit breaker is open
+     * The local bucket gets the QPS divided by the estimated number of live instances
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param e             redis failure
+     * @return true : allow access to
+     */
+    protected boolean fallback(Double annotationQPS, String requestKey, Throwable e) {
+        return fallback(annotationQPS, requestKey, 1, e);
+    }
+
+    /**
+     * Limit a request of several tokens locally
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @param e             redis failure
+     * @return true : allow access to
+     * @see #fallback(Double, String, Throwable)
+     */
+    protected boolean fallback(Double annotationQPS, String requestKey, int permits, Throwable e) {
+        onRedisFailure(e);
+        return !this.localFallback || tryAcquireLocally(annotationQPS, requestKey, permits);
+    }
+
+    /**
+     * Limit the request locally for every request key
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()} of each key
+     * @param requestKeys   request keys
+     * @param e             redis failure
+     * @return true : allow access to
+     * @see #fallback(Double, String, Throwable)
+     */
+    protected boolean fallback(Double[] annotationQPS, String[] requestKeys, Throwable e) {
+        return fallback(annotationQPS, requestKeys, 1, e);
+    }
+
+    /**
+     * Limit a request of several tokens locally for every request key
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()} of each key
+     * @param requestKeys   request keys
+     * @param permits       number of tokens of each key
+     * @param e             redis failure
+     * @return true : allow access to
+     * @see #fallback(Double, String, Throwable)
+     */
+    protected boolean fallback(Double[] annotationQPS, String[] requestKeys, int permits, Throwable e) {
+        onRedisFailure(e);
+        if (!this.localFallback) {
+            return true;
+        }
+        for (int i = 0; i < requestKeys.length; i++) {
+            if (!tryAcquireLocally(annotationQPS[i], requestKeys[i], permits)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Report a request decided without redis
+     *
+     * @param e redis failure
+     */
+    private void onRedisFailure(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause != SHORT_CIRCUITED) {
+            /*
+             * We don't want a hard dependency on Redis to allow traffic. Make sure to set
+             * an alert so you know if this is happening too much. Stripe's observed
+             * failure rate is 0.01%.
+             */
+            logger.error("Error determining if user allowed from redis", cause);
+        }
+        getRateLimiterMetrics().recordFallback(this.localFallback);
+    }
+
+    /**
+     * Limit the request with the local token bucket of the key
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @return true : allow access to
+     */
+    private boolean tryAcquireLocally(Double annotationQPS, String requestKey, int permits) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return true;
+            }
+            double localQPS = Math.max(1D, (double) QPS / this.instanceHeartbeat.getInstances());
+            TokenBucket tokenBucket = this.fallbackBuckets.computeIfAbsent(requestKey, key -> new TokenBucket(localQPS));
+            // the configured rate, equal unless the QPS or the instances changed
+            if (tokenBucket.getRate() != localQPS) {
+                tokenBucket.setRate(localQPS);
+            }
+            return tokenBucket.tryAcquire(permits);
+        } catch (Exception fallbackException) {
+            logger.error("Error determining if user allowed from local fallback", fallbackException);
+        }
+        return true;
+    }
+
+    /**
+     * set rate limiter metrics, binds the local fallback registry and the circuit breaker
+     *
+     * @param rateLimiterMetrics rate limiter metrics
+     */
+    @Override
+    public void setRateLimiterMetrics(RateLimiterMetrics rateLimiterMetrics) {
+        super.setRateLimiterMetrics(rateLimiterMetrics);
+        String name = getClass().getSimpleName();
+        rateLimiterMetrics.bindRegistry(name + ".fallback", this.fallbackBuckets);
+        rateLimiterMetrics.bindCircuitBreaker(name, this.circuitBreaker);
+    }
+
+    @Override
+    public void destroy() {
+        if (this.destroyed.compareAndSet(false, true)) {
+            this.instanceHeartbeat.release();
+        }
+    }
+
+    public RedisCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public RedisInstanceHeartbeat getInstanceHeartbeat() {
+        return instanceHeartbeat;
+    }
+
+    public boolean isLocalFallback() {
+        return localFallback;
+    }
+
+    public void setLocalFallback(boolean localFallback) {
+        this.localFallback = localFallback;
+    }
+
+    protected RedisTemplate getRedisTemplate() {
+        return redisTemplate;
+    }
+
+    /**
+     * get the scheduler of the instance heartbeat, for the redis calls kept off the request threads
+     *
+     * @return scheduler, shut down once every rate limiter released the heartbeat
+     */
+    protected ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Concat encoded keys and arguments
+     *
+     * @param keys encoded keys
+     * @param args encoded arguments
+     * @return encoded keys followed by encoded arguments
+     */
+    protected static byte[][] keysAndArgs(byte[][] keys, byte[]... args) {
+        byte[][] keysAndArgs = new byte[keys.length + args.length][];
+        System.arraycopy(keys, 0, keysAndArgs, 0, keys.length);
+        System.arraycopy(args, 0, keysAndArgs, keys.length, args.length);
+        return keysAndArgs;
+    }
+
+    /**
+     * Encode keys
+     *
+     * @param keys redis keys
+     * @return encoded keys
+     */
+    protected static byte[][] encode(List<String> keys) {
+        byte[][] encoded = new byte[keys.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    /**
+     * Encode a number as redis expects it, ASCII decimal digits, without an intermediate String
+     *
+     * @param value number
+     * @return encoded number
+     */
+    protected static byte[] encode(long value) {
+        if (value == Long.MIN_VALUE) {
+            return Long.toString(value).getBytes(StandardCharsets.US_ASCII);
+        }
+        boolean negative = value < 0;
+        long remaining = negative ? -value : value;
+        int length = negative ? 2 : 1;
+        for (long i = remaining; i >= 10; i /= 10) {
+            length++;
+        }
+        byte[] encoded = new byte[length];
+        for (int i = length - 1; i >= (negative ? 1 : 0); i--) {
+            encoded[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        if (negative) {
+            encoded[0] = '-';
+        }
+        return encoded;
+    }
+
+    /**
+     * Encoded keys and arguments of one request key
+     * The scripts take two numeric arguments followed by the requested tokens
+     */
+    protected static class ScriptArguments {
+        /**
+         * encoded keys
+         */
+        final byte[][] keys;
+        /**
+         * first argument, such as the rate
+         */
+        final long first;
+        /**
+         * second argument, such as the capacity
+         */
+        final long second;
+        /**
+         * encoded first argument
+         */
+        final byte[] encodedFirst;
+        /**
+         * encoded second argument
+         */
+        final byte[] encodedSecond;
+        /**
+         * encoded keys followed by both arguments and one requested token
+         */
+        final byte[][] keysAndArgs;
+
+        ScriptArguments(byte[][] keys, long first, long second) {
+            this.keys = keys;
+            this.first = first;
+            this.second = second;
+            this.encodedFirst = encode(first);
+            this.encodedSecond = encode(second);
+            this.keysAndArgs = keysAndArgs(keys, encodedFirst, encodedSecond, ONE);
+        }
+
+        /**
+         * get encoded keys followed by both arguments and the requested tokens
+         *
+         * @param permits number of requested tokens
+         * @return encoded keys and arguments, shared when one token is requested
+         */
+        byte[][] keysAndArgs(int permits) {
+            return permits == 1 ? keysAndArgs : AbstractRedisRateLimiter.keysAndArgs(keys, encodedFirst, encodedSecond, encode(permits));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scripting.support.ResourceScriptSource;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Lua script called by its SHA1 digest
+ * <p>
+ * The script body is only sent again when redis answers NOSCRIPT,
+ * after a restart or a SCRIPT FLUSH, EVAL caches it again on the server.
+ *
+ * @author 恒宇少年
+ */
+public class CachedRedisScript {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(CachedRedisScript.class);
+    /**
+     * Redis error prefix of an unknown script digest
+     */
+    private static final String NO_SCRIPT_ERROR = "NOSCRIPT";
+    /**
+     * script body
+     */
+    private final byte[] script;
+    /**
+     * script SHA1 digest
+     */
+    private final String sha1;
+
+    public CachedRedisScript(String scriptPath) {
+        DefaultRedisScript<List> redisScript = new DefaultRedisScript<>();
+        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(scriptPath)));
+        this.script = redisScript.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        this.sha1 = redisScript.getSha1();
+        Assert.hasText(this.sha1, "Unable to load Lua script.");
+    }
+
+    /**
+     * Execute the script by its digest
+     *
+     * @param connection  redis connection
+     * @param numKeys     number of keys
+     * @param keysAndArgs encoded keys followed by encoded arguments
+     * @return script result
+     */
+    public List<Long> execute(RedisConnection connection, int numKeys, byte[]... keysAndArgs) {
+        try {
+            return connection.evalSha(sha1, ReturnType.MULTI, numKeys, keysAndArgs);
+        } catch (RuntimeException e) {
+            if (!isNoScriptError(e)) {
+                throw e;
+            }
+            logger.debug("Lua script {} is not cached by redis, load it again.", sha1);
+            return connection.eval(script, ReturnType.MULTI, numKeys, keysAndArgs);
+        }
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    public byte[] getScript() {
+        return script;
+    }
+
+    /**
+     * Whether the exception was caused by an unknown script digest
+     *
+     * @param e exception instance
+     * @return true : redis answered NOSCRIPT
+     */
+    static boolean isNoScriptError(Throwable e) {
+        for (Throwable current = e; current != null; current = current.getCause()) {
+            String message = current.getMessage();
+            if (message != null && message.contains(NO_SCRIPT_ERROR)) {
+                return true;
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+        }
+        return false;
+    }
+}
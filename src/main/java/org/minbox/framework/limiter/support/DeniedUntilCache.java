@@ -0,0 +1,116 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Local near cache of the request keys denied by a redis bucket
+ * <p>
+ * Remembers, per request key, about the earliest time the denied tokens could be refilled.
+ * Tokens are only refilled at the rate and spent by the other nodes, so a request for at least as many tokens
+ * before that time would be denied by redis as well and is rejected without the script round trip.
+ * <p>
+ * Approximate, not exact: redis computes the refill time from its own clock while running the script,
+ * somewhere between the call and the reply. The caller counts it from before the call,
+ * so the cached time is early by up to the call latency and the cache never denies longer than redis would,
+ * a request in that window only costs a script call. A QPS change made on another node is seen
+ * when the config centre notifies this node, until then the old refill time applies.
+ * <p>
+ * Direct-mapped and lossy: each key hashes to one slot of a fixed array, a colliding key overwrites the slot.
+ * A lost entry only costs one script call. Entries are immutable, slots are read and written without lock.
+ *
+ * @author 恒宇少年
+ */
+class DeniedUntilCache {
+    /**
+     * cache slots, the length is a power of two
+     */
+    private final AtomicReferenceArray<Entry> slots;
+    /**
+     * slot index mask
+     */
+    private final int mask;
+
+    DeniedUntilCache(int size) {
+        int capacity = Integer.highestOneBit(Math.max(1, size - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Whether redis would deny the tokens
+     *
+     * @param requestKey   request key
+     * @param permits      number of requested tokens
+     * @param maxWaitNanos longest accepted wait, 0 if the tokens must be available now
+     * @return true : the tokens can not be refilled within the wait
+     */
+    boolean isDenied(String requestKey, int permits, long maxWaitNanos) {
+        Entry entry = slots.get(indexOf(requestKey));
+        return entry != null && permits >= entry.permits && entry.deniedUntil - System.nanoTime() > maxWaitNanos
+            && entry.requestKey.equals(requestKey);
+    }
+
+    /**
+     * Remember a denial
+     *
+     * @param requestKey  request key
+     * @param permits     number of denied tokens
+     * @param deniedUntil {@link System#nanoTime()} based time redis refills the denied tokens,
+     *                    counted from before the script call
+     */
+    void deny(String requestKey, int permits, long deniedUntil) {
+        slots.lazySet(indexOf(requestKey), new Entry(requestKey, permits, deniedUntil));
+    }
+
+    /**
+     * Forget every denial, such as after a QPS change
+     */
+    void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.lazySet(i, null);
+        }
+    }
+
+    private int indexOf(String requestKey) {
+        int hash = requestKey.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * Denial of one request key
+     */
+    private static class Entry {
+        private final String requestKey;
+        /**
+         * number of denied tokens, requests for fewer tokens may be allowed earlier
+         */
+        private final int permits;
+        /**
+         * earliest refill time of the denied tokens, {@link System#nanoTime()} based
+         */
+        private final long deniedUntil;
+
+        Entry(String requestKey, int permits, long deniedUntil) {
+            this.requestKey = requestKey;
+            this.permits = permits;
+            this.deniedUntil = deniedUntil;
+        }
+    }
+}
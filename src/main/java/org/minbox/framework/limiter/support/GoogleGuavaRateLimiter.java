@@ -20,6 +20,9 @@ package org.minbox.framework.limiter.support;
 
 import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
 import org.minbox.framework.limiter.context.RateLimiterContext;
+import org.minbox.framework.limiter.metrics.RateLimiterMetrics;
+
+import java.util.concurrent.TimeUnit;
 
 /**
  * Google guava rate limiter support
@@ -47,4 +50,60 @@ public class GoogleGuavaRateLimiter extends AbstractRateLimiter {
         com.google.common.util.concurrent.RateLimiter rateLimiter = RateLimiterContext.cacheRateLimiter(requestKey, QPS);
         return rateLimiter.tryAcquire();
     }
+
+    /**
+     * google guava away, several tokens at once
+     * Guava grants any number of available permits, the next calls wait for the debt
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey, int permits) {
+        Long QPS = getPriorityQPS(requestKey, annotationQPS);
+        if (QPS <= 0) {
+            return true;
+        }
+        com.google.common.util.concurrent.RateLimiter rateLimiter = RateLimiterContext.cacheRateLimiter(requestKey, QPS);
+        return rateLimiter.tryAcquire(permits);
+    }
+
+    /**
+     * google guava away, wait up to the timeout for the permits
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @param timeout       maximum time to wait
+     * @param unit          time unit of the timeout
+     * @return true : allow access to
+     */
+    @Override
+    public boolean acquire(Double annotationQPS, String requestKey, int permits, long timeout, TimeUnit unit) {
+        Long QPS = getPriorityQPS(requestKey, annotationQPS);
+        if (QPS <= 0) {
+            return true;
+        }
+        com.google.common.util.concurrent.RateLimiter rateLimiter = RateLimiterContext.cacheRateLimiter(requestKey, QPS);
+        return rateLimiter.tryAcquire(permits, timeout, unit);
+    }
+
+    /**
+     * Apply the new QPS to the cached rate limiter of the key
+     *
+     * @param configKey config key
+     * @param QPS       new QPS value
+     */
+    @Override
+    protected void onQpsChange(String configKey, Long QPS) {
+        RateLimiterContext.updateRateLimiter(configKey, QPS);
+    }
+
+    @Override
+    public void setRateLimiterMetrics(RateLimiterMetrics rateLimiterMetrics) {
+        super.setRateLimiterMetrics(rateLimiterMetrics);
+        rateLimiterMetrics.bindRegistry("guava", RateLimiterContext.getRateLimiterRegistry());
+    }
 }
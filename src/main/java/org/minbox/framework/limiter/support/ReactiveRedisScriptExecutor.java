@@ -0,0 +1,96 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import org.springframework.data.redis.connection.ReactiveRedisConnection;
+import org.springframework.data.redis.connection.ReactiveRedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking {@link CachedRedisScript} execution on the reactive (Lettuce) connection
+ * <p>
+ * Only created when reactor is on the classpath and the connection factory is reactive,
+ * keeps the reactor types out of {@link AbstractRedisRateLimiter}
+ *
+ * @author 恒宇少年
+ */
+class ReactiveRedisScriptExecutor {
+    /**
+     * reactive connection factory
+     */
+    private final ReactiveRedisConnectionFactory connectionFactory;
+
+    ReactiveRedisScriptExecutor(ReactiveRedisConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    /**
+     * Execute the script by its digest, without blocking the calling thread
+     *
+     * @param script      lua script
+     * @param numKeys     number of keys
+     * @param keysAndArgs encoded keys followed by encoded arguments
+     * @return completes with the script result
+     */
+    CompletableFuture<List<Long>> execute(CachedRedisScript script, int numKeys, byte[]... keysAndArgs) {
+        return Flux.usingWhen(Mono.fromSupplier(connectionFactory::getReactiveConnection),
+            connection -> execute(connection, script, numKeys, keysAndArgs),
+            ReactiveRedisConnection::closeLater)
+            .collectList()
+            .map(ReactiveRedisScriptExecutor::toResult)
+            .toFuture();
+    }
+
+    private Flux<Object> execute(ReactiveRedisConnection connection, CachedRedisScript script, int numKeys, byte[][] keysAndArgs) {
+        Flux<Object> result = connection.scriptingCommands().evalSha(script.getSha1(), ReturnType.MULTI, numKeys, wrap(keysAndArgs));
+        return result.onErrorResume(CachedRedisScript::isNoScriptError,
+            e -> connection.scriptingCommands().eval(ByteBuffer.wrap(script.getScript()), ReturnType.MULTI, numKeys, wrap(keysAndArgs)));
+    }
+
+    /**
+     * Multi bulk replies are either emitted element by element or as one list, depending on the driver
+     *
+     * @param elements emitted elements
+     * @return script result
+     */
+    private static List<Long> toResult(List<Object> elements) {
+        if (elements.size() == 1 && elements.get(0) instanceof List) {
+            return (List<Long>) elements.get(0);
+        }
+        List<Long> result = new ArrayList<>(elements.size());
+        for (Object element : elements) {
+            result.add((Long) element);
+        }
+        return result;
+    }
+
+    private static ByteBuffer[] wrap(byte[][] keysAndArgs) {
+        ByteBuffer[] buffers = new ByteBuffer[keysAndArgs.length];
+        for (int i = 0; i < keysAndArgs.length; i++) {
+            buffers[i] = ByteBuffer.wrap(keysAndArgs[i]);
+        }
+        return buffers;
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Circuit breaker of the redis rate limiters
+ * <p>
+ * Opens after {@link #failureThreshold} consecutive failed script calls. While open no request calls redis,
+ * a background probe pings redis every {@link #probeIntervalMillis} and closes the breaker on the first success.
+ * State changes are notified to the {@link StateListener}s.
+ *
+ * @author 恒宇少年
+ */
+public class RedisCircuitBreaker {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(RedisCircuitBreaker.class);
+    /**
+     * default number of consecutive failures opening the breaker
+     */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    /**
+     * default interval between two probes of an open breaker
+     */
+    public static final long DEFAULT_PROBE_INTERVAL_MILLIS = 1000L;
+    /**
+     * redis health check, throws when redis is unavailable
+     */
+    private final Probe probe;
+    /**
+     * probe scheduler
+     */
+    private final ScheduledExecutorService scheduler;
+    /**
+     * current state
+     */
+    private final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+    /**
+     * consecutive failures
+     */
+    private final AtomicInteger failures = new AtomicInteger();
+    /**
+     * state change listeners
+     */
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * number of consecutive failures opening the breaker
+     */
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    /**
+     * interval between two probes of an open breaker
+     */
+    private volatile long probeIntervalMillis = DEFAULT_PROBE_INTERVAL_MILLIS;
+
+    public RedisCircuitBreaker(Probe probe, ScheduledExecutorService scheduler) {
+        Assert.notNull(probe, "Probe is required.");
+        Assert.notNull(scheduler, "ScheduledExecutorService is required.");
+        this.probe = probe;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Whether redis calls are short-circuited
+     *
+     * @return true : the breaker is open
+     */
+    public boolean isOpen() {
+        return state.get() == State.OPEN;
+    }
+
+    /**
+     * A redis call succeeded
+     */
+    public void onSuccess() {
+        // avoid a write per call while healthy
+        if (failures.get() != 0) {
+            failures.set(0);
+        }
+    }
+
+    /**
+     * A redis call failed
+     */
+    public void onFailure() {
+        if (failures.incrementAndGet() >= failureThreshold && state.compareAndSet(State.CLOSED, State.OPEN)) {
+            logger.warn("Redis rate limiter circuit breaker opened after {} consecutive failures.", failures.get());
+            fireStateChange(State.CLOSED, State.OPEN);
+            scheduleProbe();
+        }
+    }
+
+    private void scheduleProbe() {
+        try {
+            scheduler.schedule(this::probe, probeIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // scheduler shutdown, the breaker stays open
+            logger.debug("Redis rate limiter circuit breaker probe not scheduled.", e);
+        }
+    }
+
+    private void probe() {
+        try {
+            probe.check();
+        } catch (Exception e) {
+            logger.debug("Redis rate limiter circuit breaker probe failed.", e);
+            scheduleProbe();
+            return;
+        }
+        failures.set(0);
+        if (state.compareAndSet(State.OPEN, State.CLOSED)) {
+            logger.info("Redis rate limiter circuit breaker closed, redis is available again.");
+            fireStateChange(State.OPEN, State.CLOSED);
+        }
+    }
+
+    private void fireStateChange(State previous, State current) {
+        for (StateListener listener : listeners) {
+            try {
+                listener.onStateChange(previous, current);
+            } catch (Exception e) {
+                logger.error("Redis rate limiter circuit breaker listener failed.", e);
+            }
+        }
+    }
+
+    /**
+     * Add a listener of state changes
+     *
+     * @param listener state listener
+     */
+    public void addStateListener(StateListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+        Assert.isTrue(failureThreshold > 0, "The failure threshold must be greater than 0.");
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getProbeIntervalMillis() {
+        return probeIntervalMillis;
+    }
+
+    public void setProbeIntervalMillis(long probeIntervalMillis) {
+        Assert.isTrue(probeIntervalMillis > 0, "The probe interval millis must be greater than 0.");
+        this.probeIntervalMillis = probeIntervalMillis;
+    }
+
+    /**
+     * Circuit breaker state
+     */
+    public enum State {
+        /**
+         * redis is called
+         */
+        CLOSED,
+        /**
+         * redis is not called, requests are limited locally
+         */
+        OPEN
+    }
+
+    /**
+     * Circuit breaker state change listener
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        /**
+         * the state changed
+         *
+         * @param previous previous state
+         * @param current  current state
+         */
+        void onStateChange(State previous, State current);
+    }
+
+    /**
+     * Redis health check
+     */
+    @FunctionalInterface
+    public interface Probe {
+        /**
+         * check redis
+         *
+         * @throws Exception redis is unavailable
+         */
+        void check() throws Exception;
+    }
+}
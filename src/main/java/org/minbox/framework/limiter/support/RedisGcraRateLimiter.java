@@ -0,0 +1,203 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.Assert;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis lua GCRA (generic cell rate algorithm) rate limiter support
+ * <p>
+ * Same limits as {@link RedisLuaRateLimiter}, but the bucket is a single key:
+ * the theoretical arrival time of the next request, written by one SET with a TTL.
+ * The script replies allowed, remaining, retry after and reset after in microseconds.
+ *
+ * @author 恒宇少年
+ */
+public class RedisGcraRateLimiter extends AbstractRedisRateLimiter {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(RedisGcraRateLimiter.class);
+    /**
+     * Redis Script file name.
+     */
+    private static final String GCRA_LUA_PATH = "META-INF/scripts/gcra-rate-limiter.lua";
+    /**
+     * Redis Script.
+     */
+    private CachedRedisScript redisScript;
+    /**
+     * burst period, configured separately from the QPS
+     * at most QPS * maxBurstSeconds requests arrive at once
+     */
+    private double maxBurstSeconds = RedisLuaRateLimiter.DEFAULT_MAX_BURST_SECONDS;
+
+    public RedisGcraRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate) {
+        this(globalQPS, rateLimiterConfigCentre, redisTemplate, null);
+    }
+
+    public RedisGcraRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate,
+                                RedisInstanceHeartbeat instanceHeartbeat) {
+        super(globalQPS, rateLimiterConfigCentre, redisTemplate, instanceHeartbeat);
+        this.redisScript = new CachedRedisScript(GCRA_LUA_PATH);
+    }
+
+    /**
+     * redis gcra away
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey) {
+        return tryAcquire(annotationQPS, requestKey, 1);
+    }
+
+    /**
+     * redis gcra away, several requests at once
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of requests
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey, int permits) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return true;
+            }
+            ScriptArguments arguments = getScriptArguments(requestKey, QPS, RedisLuaRateLimiter.getBurstCapacity(QPS, maxBurstSeconds));
+            List<Long> gcraResult = execute(this.redisScript, 1, arguments.keysAndArgs(permits));
+
+            // Index 1 value is the number of remaining requests, index 2 the retry after and index 3 the reset after
+            if (logger.isDebugEnabled()) {
+                logger.debug("Number of remaining requests is {}, retry after {}us, reset after {}us",
+                    gcraResult.get(1), gcraResult.get(2), gcraResult.get(3));
+            }
+            return gcraResult.get(0) == 1L;
+        } catch (Exception e) {
+            return fallback(annotationQPS, requestKey, permits, e);
+        }
+    }
+
+    /**
+     * redis gcra away, wait up to the timeout for the permits
+     * The script moves the arrival time forward and returns the wait time, the calling thread parks once
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of requests
+     * @param timeout       maximum time to wait
+     * @param unit          time unit of the timeout
+     * @return true : allow access to
+     */
+    @Override
+    public boolean acquire(Double annotationQPS, String requestKey, int permits, long timeout, TimeUnit unit) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return true;
+            }
+            ScriptArguments arguments = getScriptArguments(requestKey, QPS, RedisLuaRateLimiter.getBurstCapacity(QPS, maxBurstSeconds));
+            List<Long> gcraResult = execute(this.redisScript, 1, keysAndArgs(arguments.keys, arguments.encodedFirst,
+                arguments.encodedSecond, encode(permits), encode(unit.toMicros(timeout))));
+            if (gcraResult.get(0) != 1L) {
+                return false;
+            }
+            // Index 2 value is the wait time in microseconds of the reserved requests
+            parkUninterruptibly(TimeUnit.MICROSECONDS.toNanos(gcraResult.get(2)));
+            return true;
+        } catch (Exception e) {
+            return fallback(annotationQPS, requestKey, permits, e);
+        }
+    }
+
+    /**
+     * redis gcra away, without blocking the calling thread
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @return completes with true : allow access to
+     */
+    @Override
+    public CompletionStage<Boolean> tryAcquireAsync(Double annotationQPS, String requestKey) {
+        return tryAcquireAsync(annotationQPS, requestKey, 1);
+    }
+
+    /**
+     * redis gcra away, several requests at once, without blocking the calling thread
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of requests
+     * @return completes with true : allow access to
+     */
+    @Override
+    public CompletionStage<Boolean> tryAcquireAsync(Double annotationQPS, String requestKey, int permits) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return CompletableFuture.completedFuture(true);
+            }
+            ScriptArguments arguments = getScriptArguments(requestKey, QPS, RedisLuaRateLimiter.getBurstCapacity(QPS, maxBurstSeconds));
+            return executeAsync(this.redisScript, 1, arguments.keysAndArgs(permits))
+                .thenApply(gcraResult -> gcraResult.get(0) == 1L)
+                .exceptionally(e -> fallback(annotationQPS, requestKey, permits, e));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(fallback(annotationQPS, requestKey, permits, e));
+        }
+    }
+
+    public double getMaxBurstSeconds() {
+        return maxBurstSeconds;
+    }
+
+    public void setMaxBurstSeconds(double maxBurstSeconds) {
+        Assert.isTrue(maxBurstSeconds > 0, "The max burst seconds must be greater than 0.");
+        this.maxBurstSeconds = maxBurstSeconds;
+    }
+
+    @Override
+    protected List<String> getRedisKeys(String requestKey) {
+        return getKeys(requestKey);
+    }
+
+    /**
+     * get Keys
+     *
+     * @param id resource key（request uri）
+     * @return theoretical arrival time key
+     */
+    static List<String> getKeys(String id) {
+        // use `{}` around keys to use Redis Key hash tags
+        return Collections.singletonList("gcra_rate_limiter.{" + id + "}.tat");
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimate the number of live application instances sharing the redis rate limits
+ * <p>
+ * Every instance adds itself to the sorted set of its application, {@link #INSTANCES_KEY_PREFIX} followed by the application id,
+ * scored by the redis server time, every {@link #HEARTBEAT_INTERVAL_MILLIS}.
+ * Members without a heartbeat for {@link #INSTANCE_TIMEOUT_MILLIS} are removed, the set size is the estimate.
+ * The last estimate is kept while redis is unavailable.
+ * <p>
+ * The application id, such as {@code spring.application.name}, keeps the instances of the other applications
+ * using the same redis out of the estimate. Applications sharing a redis must be given their own id,
+ * they all count as one application under {@link #DEFAULT_APPLICATION_ID}.
+ * <p>
+ * One heartbeat per application: the redis rate limiters of an application share it, see {@link #getShared(RedisTemplate, String)},
+ * or are given the same instance. Its scheduler also runs the circuit breaker probes of those rate limiters.
+ * The heartbeat beats while at least one rate limiter retains it, the last release removes this instance from the set
+ * and forgets the shared heartbeat.
+ *
+ * @author 恒宇少年
+ */
+public class RedisInstanceHeartbeat {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(RedisInstanceHeartbeat.class);
+    /**
+     * prefix of the sorted set of the live instances of an application
+     */
+    public static final String INSTANCES_KEY_PREFIX = "rate_limiter_instances.";
+    /**
+     * application id of the heartbeats not given one
+     */
+    public static final String DEFAULT_APPLICATION_ID = "default";
+    /**
+     * interval between two heartbeats
+     */
+    static final long HEARTBEAT_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    /**
+     * instances without a heartbeat for this long are not counted
+     */
+    static final long INSTANCE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    /**
+     * shared heartbeat of each connection factory and application id
+     */
+    private static final Map<List<Object>, RedisInstanceHeartbeat> SHARED = new HashMap<>();
+    /**
+     * redis template
+     */
+    private final RedisTemplate redisTemplate;
+    /**
+     * encoded sorted set key of the application
+     */
+    private final byte[] instancesKey;
+    /**
+     * key of this heartbeat in {@link #SHARED}, null if not shared
+     */
+    private List<Object> sharedKey;
+    /**
+     * encoded member of this instance
+     */
+    private final byte[] instanceId = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+    /**
+     * last estimated number of live instances
+     */
+    private volatile int instances = 1;
+    /**
+     * heartbeat and circuit breaker probe thread, null while not retained
+     */
+    private volatile ScheduledExecutorService scheduler;
+    /**
+     * number of rate limiters using the heartbeat
+     */
+    private int references;
+
+    public RedisInstanceHeartbeat(RedisTemplate redisTemplate) {
+        this(redisTemplate, DEFAULT_APPLICATION_ID);
+    }
+
+    public RedisInstanceHeartbeat(RedisTemplate redisTemplate, String applicationId) {
+        Assert.notNull(redisTemplate, "No RedisTemplate implementation class was found.");
+        Assert.hasText(applicationId, "The application id is required.");
+        this.redisTemplate = redisTemplate;
+        this.instancesKey = (INSTANCES_KEY_PREFIX + applicationId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * get the heartbeat shared by the rate limiters using the connection factory of the template
+     *
+     * @param redisTemplate redis template
+     * @return shared heartbeat of {@link #DEFAULT_APPLICATION_ID}
+     */
+    public static RedisInstanceHeartbeat getShared(RedisTemplate redisTemplate) {
+        return getShared(redisTemplate, DEFAULT_APPLICATION_ID);
+    }
+
+    /**
+     * get the heartbeat shared by the rate limiters of an application using the connection factory of the template
+     * It is forgotten when the last rate limiter releases it, see {@link #release()}
+     *
+     * @param redisTemplate redis template
+     * @param applicationId application id, such as {@code spring.application.name}
+     * @return shared heartbeat
+     */
+    public static RedisInstanceHeartbeat getShared(RedisTemplate redisTemplate, String applicationId) {
+        List<Object> key = Arrays.asList(redisTemplate.getConnectionFactory(), applicationId);
+        synchronized (SHARED) {
+            return SHARED.computeIfAbsent(key, k -> {
+                RedisInstanceHeartbeat heartbeat = new RedisInstanceHeartbeat(redisTemplate, applicationId);
+                heartbeat.sharedKey = k;
+                return heartbeat;
+            });
+        }
+    }
+
+    /**
+     * Use the heartbeat, the first rate limiter starts it, the first heartbeat is sent at once
+     *
+     * @return scheduler of the heartbeat
+     */
+    public synchronized ScheduledExecutorService retain() {
+        if (references++ == 0) {
+            // shared again if it was forgotten by a last release meanwhile
+            if (sharedKey != null) {
+                synchronized (SHARED) {
+                    SHARED.putIfAbsent(sharedKey, this);
+                }
+            }
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "redis-rate-limiter-health");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            scheduler.scheduleWithFixedDelay(this::beat, 0, HEARTBEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            this.scheduler = scheduler;
+        }
+        return this.scheduler;
+    }
+
+    /**
+     * Stop using the heartbeat, the last rate limiter stops it and removes this instance from the set
+     * A shared heartbeat is forgotten, it no longer holds its connection factory and template
+     */
+    public synchronized void release() {
+        if (references > 0 && --references == 0) {
+            if (sharedKey != null) {
+                synchronized (SHARED) {
+                    SHARED.remove(sharedKey, this);
+                }
+            }
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+            try {
+                redisTemplate.execute((RedisCallback<Long>) connection -> connection.zRem(instancesKey, instanceId));
+            } catch (Exception e) {
+                logger.debug("Rate limiter instance heartbeat failed to leave, expires in {} millis.", INSTANCE_TIMEOUT_MILLIS, e);
+            }
+        }
+    }
+
+    /**
+     * Register this instance and count the live instances
+     */
+    void beat() {
+        try {
+            Long count = (Long) redisTemplate.execute((RedisCallback<Long>) this::beat);
+            if (count != null) {
+                instances = (int) Math.max(1L, count);
+            }
+        } catch (Exception e) {
+            logger.debug("Rate limiter instance heartbeat failed, keep {} instances.", instances, e);
+        }
+    }
+
+    private Long beat(RedisConnection connection) {
+        Long now = connection.time();
+        connection.zAdd(instancesKey, now, instanceId);
+        connection.zRemRangeByScore(instancesKey, 0, now - INSTANCE_TIMEOUT_MILLIS);
+        connection.pExpire(instancesKey, INSTANCE_TIMEOUT_MILLIS * 2);
+        return connection.zCard(instancesKey);
+    }
+
+    /**
+     * get estimated number of live instances
+     *
+     * @return instances, at least one
+     */
+    public int getInstances() {
+        return instances;
+    }
+}
@@ -0,0 +1,506 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
+import org.minbox.framework.limiter.context.RateLimiterRegistry;
+import org.minbox.framework.limiter.metrics.RateLimiterMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.util.Assert;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Redis lua rate limiter support with local token leases
+ * <p>
+ * Each node takes a batch of tokens from the shared bucket in one script call
+ * and spends them locally, so only one request per lease pays the Redis round trip.
+ * The batch size follows the rate observed on this node during the previous lease
+ * and is never larger than {@link #maxLeaseTokens}, nor than the tokens the bucket holds.
+ * <p>
+ * Accuracy: tokens are never issued twice, a leased token can only be spent later
+ * than it was taken, at most {@link #leaseMillis} later.
+ * The global limit therefore drifts by no more than {@code maxLeaseTokens} per node within a lease period.
+ * Tokens taken from the shared bucket are never dropped: unused tokens of an expired lease are returned on the next lease,
+ * a partial grant is kept in the lease, and the unused tokens of an evicted lease are queued
+ * and returned by the heartbeat scheduler within a lease period. No request thread pays for the return.
+ *
+ * @author 恒宇少年
+ */
+public class RedisLeaseRateLimiter extends AbstractRedisRateLimiter {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(RedisLeaseRateLimiter.class);
+    /**
+     * Redis Script file name.
+     */
+    private static final String LEASE_LUA_PATH = "META-INF/scripts/qps-lease-rate-limiter.lua";
+    /**
+     * default lease validity period in milliseconds
+     */
+    public static final long DEFAULT_LEASE_MILLIS = 100L;
+    /**
+     * default upper bound of tokens leased by one node at once
+     */
+    public static final long DEFAULT_MAX_LEASE_TOKENS = 50L;
+    /**
+     * Redis Script.
+     */
+    private CachedRedisScript redisScript;
+    /**
+     * lease validity period in milliseconds
+     */
+    private long leaseMillis;
+    /**
+     * upper bound of tokens leased by one node at once
+     */
+    private long maxLeaseTokens;
+    /**
+     * burst period, configured separately from the QPS
+     */
+    private double maxBurstSeconds = RedisLuaRateLimiter.DEFAULT_MAX_BURST_SECONDS;
+    /**
+     * Cache a token lease for each request key
+     */
+    private final RateLimiterRegistry<TokenLease> leases;
+    /**
+     * unused tokens of the retired leases, waiting to be returned to the shared bucket
+     */
+    private final Queue<ReturnedTokens> returnedTokens = new ConcurrentLinkedQueue<>();
+    /**
+     * periodic return of the queued tokens on the heartbeat scheduler
+     */
+    private final ScheduledFuture<?> returnTask;
+
+    public RedisLeaseRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate) {
+        this(globalQPS, rateLimiterConfigCentre, redisTemplate, DEFAULT_LEASE_MILLIS, DEFAULT_MAX_LEASE_TOKENS);
+    }
+
+    public RedisLeaseRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate,
+                                 long leaseMillis, long maxLeaseTokens) {
+        this(globalQPS, rateLimiterConfigCentre, redisTemplate, null, leaseMillis, maxLeaseTokens);
+    }
+
+    public RedisLeaseRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate,
+                                 RedisInstanceHeartbeat instanceHeartbeat, long leaseMillis, long maxLeaseTokens) {
+        super(globalQPS, rateLimiterConfigCentre, redisTemplate, instanceHeartbeat);
+        Assert.isTrue(leaseMillis > 0, "The lease millis must be greater than 0.");
+        Assert.isTrue(maxLeaseTokens > 0, "The max lease tokens must be greater than 0.");
+        this.redisScript = new CachedRedisScript(LEASE_LUA_PATH);
+        this.leaseMillis = leaseMillis;
+        this.maxLeaseTokens = maxLeaseTokens;
+        // An idle lease has expired, dropping it only drops its unused tokens
+        long leaseNanos = TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+        this.leases = new RateLimiterRegistry<>(RateLimiterRegistry.DEFAULT_MAXIMUM_SIZE, lease -> leaseNanos, this::retire);
+        this.returnTask = getScheduler().scheduleWithFixedDelay(this::flushReturnedTokens, leaseMillis, leaseMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * redis lease away
+     * Spend a locally leased token, renew the lease from redis when it is exhausted or expired
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey) {
+        return tryAcquire(annotationQPS, requestKey, 1);
+    }
+
+    /**
+     * redis lease away, several tokens at once
+     * The lease is renewed with at least the requested tokens. When the bucket grants fewer,
+     * the request is denied and the granted tokens stay leased for the next requests.
+     * A lease retired by the registry sweep is replaced, see {@link #retire(TokenLease)}
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey, int permits) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return true;
+            }
+            TokenLease lease = getLease(requestKey);
+            long now = System.nanoTime();
+            if (lease.tryConsume(now, permits)) {
+                return true;
+            }
+            // Another thread is renewing the lease, take the tokens without waiting for it
+            if (!lease.beginRenew()) {
+                long granted = lease(lease, QPS, permits, 0);
+                if (granted >= permits) {
+                    return true;
+                }
+                // a partial grant stays leased, or goes back to the shared bucket if the lease was retired meanwhile
+                if (granted > 0 && !lease.give(granted)) {
+                    returnTokens(lease, granted);
+                }
+                return false;
+            }
+            try {
+                long returned = lease.expire();
+                long batchSize = Math.max(permits, lease.nextBatchSize(now, returned, QPS, leaseMillis, maxLeaseTokens));
+                long granted = lease(lease, QPS, batchSize, returned);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Lease {} tokens for key {}, {} tokens granted", batchSize, requestKey, granted);
+                }
+                if (granted <= 0) {
+                    lease.renew(now, 0, 0, now);
+                    return false;
+                }
+                long expireAt = now + TimeUnit.MILLISECONDS.toNanos(leaseMillis);
+                if (granted < permits) {
+                    lease.renew(now, granted, granted, expireAt);
+                    return false;
+                }
+                // The requested tokens are spent by this request
+                lease.renew(now, granted, granted - permits, expireAt);
+                return true;
+            } finally {
+                lease.endRenew();
+            }
+        } catch (Exception e) {
+            return fallback(annotationQPS, requestKey, permits, e);
+        }
+    }
+
+    /**
+     * redis lease away, several tokens at once
+     * A lease is not waited for: the tokens are taken at once from the lease or a renewal,
+     * otherwise the call is denied and spends none of them, see {@link #tryAcquire(Double, String, int)}
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @param timeout       maximum time to wait, not used
+     * @param unit          time unit of the timeout
+     * @return true : allow access to
+     */
+    @Override
+    public boolean acquire(Double annotationQPS, String requestKey, int permits, long timeout, TimeUnit unit) {
+        return tryAcquire(annotationQPS, requestKey, permits);
+    }
+
+    /**
+     * get the lease of a request key
+     * A lease retired by the sweep is removed right after, retry until a live lease is registered
+     *
+     * @param requestKey request key
+     * @return live token lease
+     */
+    private TokenLease getLease(String requestKey) {
+        for (; ; ) {
+            TokenLease lease = leases.computeIfAbsent(requestKey, key -> new TokenLease(encode(getRedisKeys(key))));
+            if (!lease.isRetired()) {
+                return lease;
+            }
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Retire a lease before the registry sweep removes it, its unused tokens are queued for the shared bucket
+     * A lease being renewed is kept, it is not idle
+     *
+     * @param lease token lease
+     * @return true : the lease may be removed
+     */
+    private boolean retire(TokenLease lease) {
+        if (!lease.beginRenew()) {
+            return false;
+        }
+        // the renew flag is never cleared, a thread still holding the lease leases without it
+        returnTokens(lease, lease.retire());
+        return true;
+    }
+
+    /**
+     * Queue unused tokens to be returned to the shared bucket, the calling thread never calls redis
+     * Called by the registry sweep on a request thread, see {@link #flushReturnedTokens()}
+     *
+     * @param lease  token lease
+     * @param tokens number of unused tokens
+     */
+    private void returnTokens(TokenLease lease, long tokens) {
+        long QPS = lease.QPS;
+        if (tokens > 0 && QPS > 0) {
+            returnedTokens.offer(new ReturnedTokens(lease.keys, QPS, tokens));
+        }
+    }
+
+    /**
+     * Return the queued unused tokens to the shared bucket, on the heartbeat scheduler
+     * Nothing is requested, the script adds the tokens back up to the capacity.
+     * When redis fails the queued tokens are dropped, they expire with the bucket
+     */
+    void flushReturnedTokens() {
+        ReturnedTokens returned;
+        while ((returned = returnedTokens.poll()) != null) {
+            long capacity = RedisLuaRateLimiter.getBurstCapacity(returned.QPS, maxBurstSeconds);
+            try {
+                execute(this.redisScript, 2, keysAndArgs(returned.keys, encode(returned.QPS), encode(capacity), ZERO, encode(returned.tokens)));
+            } catch (Exception e) {
+                long dropped = returned.tokens;
+                while ((returned = returnedTokens.poll()) != null) {
+                    dropped += returned.tokens;
+                }
+                logger.warn("Return {} unused tokens failed, they expire with the bucket.", dropped, e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Take a batch of tokens from the shared bucket
+     *
+     * @param lease     token lease of the request key
+     * @param QPS       qps
+     * @param requested number of tokens requested
+     * @param returned  number of unused tokens given back
+     * @return number of tokens granted
+     */
+    private long lease(TokenLease lease, long QPS, long requested, long returned) {
+        lease.QPS = QPS;
+        long capacity = RedisLuaRateLimiter.getBurstCapacity(QPS, maxBurstSeconds);
+        List<Long> leaseResult = execute(this.redisScript, 2,
+            keysAndArgs(lease.keys, encode(QPS), encode(capacity), requested == 1 ? ONE : encode(requested), returned == 0 ? ZERO : encode(returned)));
+        // Index 0 value is the number of granted tokens
+        return leaseResult.get(0);
+    }
+
+    @Override
+    protected List<String> getRedisKeys(String requestKey) {
+        return RedisLuaRateLimiter.getKeys(requestKey);
+    }
+
+    @Override
+    public void setRateLimiterMetrics(RateLimiterMetrics rateLimiterMetrics) {
+        super.setRateLimiterMetrics(rateLimiterMetrics);
+        rateLimiterMetrics.bindRegistry(getClass().getSimpleName() + ".leases", this.leases);
+    }
+
+    /**
+     * Return the queued tokens before releasing the heartbeat
+     */
+    @Override
+    public void destroy() {
+        this.returnTask.cancel(false);
+        flushReturnedTokens();
+        super.destroy();
+    }
+
+    public double getMaxBurstSeconds() {
+        return maxBurstSeconds;
+    }
+
+    public void setMaxBurstSeconds(double maxBurstSeconds) {
+        Assert.isTrue(maxBurstSeconds > 0, "The max burst seconds must be greater than 0.");
+        this.maxBurstSeconds = maxBurstSeconds;
+    }
+
+    /**
+     * Unused tokens of a retired lease
+     */
+    private static class ReturnedTokens {
+        /**
+         * encoded bucket keys
+         */
+        private final byte[][] keys;
+        /**
+         * QPS of the lease
+         */
+        private final long QPS;
+        /**
+         * number of unused tokens
+         */
+        private final long tokens;
+
+        ReturnedTokens(byte[][] keys, long QPS, long tokens) {
+            this.keys = keys;
+            this.QPS = QPS;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * Tokens leased by this node for one request key
+     */
+    static class TokenLease {
+        /**
+         * token count of a retired lease, below any count a lease can reach
+         */
+        private static final long RETIRED = Long.MIN_VALUE / 2;
+        /**
+         * encoded bucket keys
+         */
+        private final byte[][] keys;
+        /**
+         * remaining leased tokens
+         */
+        private final AtomicLong tokens = new AtomicLong();
+        /**
+         * Only one thread renews the lease at a time
+         */
+        private final AtomicBoolean renewing = new AtomicBoolean();
+        /**
+         * lease expire time, {@link System#nanoTime()} based
+         */
+        private volatile long expireAt;
+        /**
+         * lease start time, {@link System#nanoTime()} based
+         */
+        private volatile long leasedAt;
+        /**
+         * number of tokens granted by the current lease
+         */
+        private volatile long granted;
+        /**
+         * QPS of the last lease, used to return unused tokens
+         */
+        private volatile long QPS;
+
+        TokenLease(byte[][] keys) {
+            this.keys = keys;
+        }
+
+        /**
+         * Spend leased tokens
+         *
+         * @param now     current nano time
+         * @param permits number of tokens
+         * @return true : the tokens were spent
+         */
+        boolean tryConsume(long now, int permits) {
+            if (now - expireAt >= 0) {
+                return false;
+            }
+            for (; ; ) {
+                long current = tokens.get();
+                if (current < permits) {
+                    return false;
+                }
+                if (tokens.compareAndSet(current, current - permits)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Add tokens granted outside of a renewal
+         * Spendable until the lease expires, returned by the next renewal otherwise
+         *
+         * @param granted number of granted tokens
+         * @return false if the lease is retired, the tokens were not added
+         */
+        boolean give(long granted) {
+            for (; ; ) {
+                long current = tokens.get();
+                if (current < 0) {
+                    return false;
+                }
+                if (tokens.compareAndSet(current, current + granted)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Retire the lease, only called while holding the renew flag
+         *
+         * @return unused tokens
+         */
+        long retire() {
+            return Math.max(0, tokens.getAndSet(RETIRED));
+        }
+
+        boolean isRetired() {
+            return tokens.get() < 0;
+        }
+
+        boolean beginRenew() {
+            return renewing.compareAndSet(false, true);
+        }
+
+        void endRenew() {
+            renewing.set(false);
+        }
+
+        /**
+         * Expire the current lease
+         *
+         * @return unused tokens of the current lease
+         */
+        long expire() {
+            return Math.max(0, tokens.getAndSet(0));
+        }
+
+        /**
+         * Batch size for the next lease
+         * <p>
+         * Tokens spent per period during the previous lease, plus one, bounded by the QPS of a lease period and maxLeaseTokens
+         *
+         * @param now            current nano time
+         * @param unused         unused tokens of the previous lease
+         * @param QPS            qps
+         * @param leaseMillis    lease validity period
+         * @param maxLeaseTokens upper bound of leased tokens
+         * @return batch size
+         */
+        long nextBatchSize(long now, long unused, long QPS, long leaseMillis, long maxLeaseTokens) {
+            long batchSize = 1;
+            long elapsed = now - leasedAt;
+            if (granted > 0 && elapsed > 0) {
+                long spent = granted - unused;
+                batchSize = spent * TimeUnit.MILLISECONDS.toNanos(leaseMillis) / elapsed + 1;
+            }
+            long periodTokens = Math.max(1, QPS * leaseMillis / 1000);
+            return Math.max(1, Math.min(batchSize, Math.min(periodTokens, maxLeaseTokens)));
+        }
+
+        /**
+         * Renew the lease
+         *
+         * @param now      current nano time
+         * @param granted  number of tokens granted
+         * @param tokens   number of tokens left to spend locally,
+         *                 added to the partial grants given since {@link #expire()}
+         * @param expireAt lease expire time
+         */
+        void renew(long now, long granted, long tokens, long expireAt) {
+            this.leasedAt = now;
+            this.granted = granted;
+            this.expireAt = expireAt;
+            this.tokens.addAndGet(tokens);
+        }
+    }
+}
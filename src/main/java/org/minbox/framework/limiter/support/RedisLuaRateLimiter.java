@@ -18,27 +18,47 @@
 package org.minbox.framework.limiter.support;
 
 import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
+import org.minbox.framework.limiter.context.RateLimiterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
-import org.springframework.data.redis.core.script.RedisScript;
-import org.springframework.data.redis.serializer.RedisSerializer;
-import org.springframework.data.redis.serializer.StringRedisSerializer;
-import org.springframework.scripting.support.ResourceScriptSource;
 import org.springframework.util.Assert;
 
-import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Redis lua rate limiter support
+ * <p>
+ * A denied request key is remembered locally until about the time the bucket can refill the denied tokens,
+ * see {@link DeniedUntilCache}: while a key is exhausted, further requests are rejected without the script round trip.
+ * The refill time is counted from before the script call, the cache errs on the side of calling redis again.
+ * The multi-dimension limits always run the script
+ * <p>
+ * Sharded mode, see {@link #setShards(int)}: a logical bucket is split into sub-buckets with their own hash tag,
+ * {@code qps_rate_limiter.{key#0}} to {@code qps_rate_limiter.{key#N-1}}, spread over the redis cluster slots.
+ * The rate and the capacity are divided between the sub-buckets, the remainders go to the first ones so that they add up exactly.
+ * Each call takes its tokens from a random sub-bucket, and probes one other random sub-bucket when the first is empty.
+ * <p>
+ * Accuracy of the sharded mode:
+ * <ul>
+ * <li>over-admission: none beyond the logical bucket, except that each sub-bucket holds at least one token,
+ * at most N - 1 extra burst tokens when the capacity is smaller than N</li>
+ * <li>under-admission: a call is denied while tokens are left in sub-buckets it did not probe.
+ * Simulated with random arrivals against one bucket of the same QPS: with 30 tokens per second or more per sub-bucket
+ * the sharded bucket admits within 1% of one bucket at any load; 8 sub-buckets of a 100 QPS limit admit 1% less at full load,
+ * 32 sub-buckets of a 100 QPS limit 8% less at full load and 2% less at 80% load. The spill-over probe halves the error.
+ * Keep QPS / N above 30. The simulation and these bounds are checked by {@code RedisLuaRateLimiterShardingTest}</li>
+ * <li>a call needs all its tokens from one sub-bucket, more tokens than a sub-bucket holds are never granted</li>
+ * </ul>
  *
  * @author 恒宇少年
  */
-public class RedisLuaRateLimiter extends AbstractRateLimiter {
+public class RedisLuaRateLimiter extends AbstractRedisRateLimiter {
     /**
      * logger instance
      */
@@ -49,27 +69,67 @@ public class RedisLuaRateLimiter extends AbstractRateLimiter {
      */
     private static final String QPS_LUA_PATH = "META-INF/scripts/qps-rate-limiter.lua";
     /**
-     * redis template
+     * Multi-dimension Redis Script file name.
      */
-    private RedisTemplate redisTemplate;
+    private static final String QPS_MULTI_LUA_PATH = "META-INF/scripts/qps-multi-rate-limiter.lua";
+    /**
+     * default burst period, the bucket holds at most one second of QPS
+     */
+    public static final double DEFAULT_MAX_BURST_SECONDS = 1.0D;
+    /**
+     * default number of slots of the denied keys near cache
+     */
+    public static final int DEFAULT_DENIED_CACHE_SIZE = 1024;
+    /**
+     * The sub-bucket keys of an idle request key are dropped after this long
+     */
+    private static final long SHARD_KEYS_IDLE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /**
+     * separator of the request key and the sub-bucket number
+     */
+    private static final char SHARD_SEPARATOR = '#';
     /**
      * Redis Script.
      */
-    private RedisScript<List<Long>> redisScript;
+    private CachedRedisScript redisScript;
+    /**
+     * Multi-dimension Redis Script.
+     */
+    private CachedRedisScript multiRedisScript;
+    /**
+     * burst period, configured separately from the QPS
+     * the bucket capacity is QPS * maxBurstSeconds
+     */
+    private double maxBurstSeconds = DEFAULT_MAX_BURST_SECONDS;
+    /**
+     * Denied keys near cache, null if disabled
+     */
+    private volatile DeniedUntilCache deniedUntilCache = new DeniedUntilCache(DEFAULT_DENIED_CACHE_SIZE);
+    /**
+     * number of sub-buckets of each logical bucket, 1 if not sharded
+     */
+    private volatile int shards = 1;
+    /**
+     * Cache the sub-bucket keys of each request key
+     */
+    private final RateLimiterRegistry<String[]> shardKeys = new RateLimiterRegistry<>(keys -> SHARD_KEYS_IDLE_NANOS);
 
     public RedisLuaRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate) {
-        super(globalQPS, rateLimiterConfigCentre);
-        this.redisTemplate = redisTemplate;
-        this.redisScript = getRedisScript();
+        this(globalQPS, rateLimiterConfigCentre, redisTemplate, null);
+    }
 
-        Assert.notNull(redisTemplate, "No RedisTemplate implementation class was found.");
-        Assert.notNull(redisScript, "Unable to load Lua script.");
+    public RedisLuaRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate,
+                               RedisInstanceHeartbeat instanceHeartbeat) {
+        super(globalQPS, rateLimiterConfigCentre, redisTemplate, instanceHeartbeat);
+        this.redisScript = new CachedRedisScript(QPS_LUA_PATH);
+        this.multiRedisScript = new CachedRedisScript(QPS_MULTI_LUA_PATH);
     }
 
     /**
      * redis lua away
      * Processing traffic restrictions using LUA scripts
-     * Processing with Spring Cloud Gateway official script
+     * Processing with Spring Cloud Gateway official script,
+     * tokens are refilled continuously based on the redis server time in microseconds
      *
      * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
      * @param requestKey    request key
@@ -77,47 +137,475 @@ public class RedisLuaRateLimiter extends AbstractRateLimiter {
      */
     @Override
     public boolean tryAcquire(Double annotationQPS, String requestKey) {
+        return tryAcquire(annotationQPS, requestKey, 1);
+    }
+
+    /**
+     * redis lua away, several tokens at once
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey, int permits) {
         try {
             Long QPS = getPriorityQPS(requestKey, annotationQPS);
             if (QPS <= 0) {
                 return true;
             }
-            // get keys
-            List<String> keys = getKeys(requestKey);
+            DeniedUntilCache deniedUntilCache = this.deniedUntilCache;
+            String[] shardKeys = getShardKeys(requestKey, QPS);
+            if (shardKeys == null) {
+                return tryAcquireShard(deniedUntilCache, QPS, requestKey, 1, 0, permits);
+            }
+            // spill over to one other sub-bucket when the first one is empty
+            int shard = ThreadLocalRandom.current().nextInt(shardKeys.length);
+            int probe = nextShard(shard, shardKeys.length);
+            return tryAcquireShard(deniedUntilCache, QPS, shardKeys[shard], shardKeys.length, shard, permits)
+                || tryAcquireShard(deniedUntilCache, QPS, shardKeys[probe], shardKeys.length, probe, permits);
+        } catch (Exception e) {
+            return fallback(annotationQPS, requestKey, permits, e);
+        }
+    }
 
-            // Parameters and serialization of return values
-            RedisSerializer<String> serializer = new StringRedisSerializer();
+    /**
+     * Take tokens from one bucket
+     *
+     * @param deniedUntilCache denied keys near cache, null if disabled
+     * @param QPS              qps of the logical bucket
+     * @param bucketKey        request key of the bucket, the request key when not sharded
+     * @param shards           number of sub-buckets
+     * @param shard            sub-bucket number
+     * @param permits          number of tokens
+     * @return true : allow access to
+     */
+    private boolean tryAcquireShard(DeniedUntilCache deniedUntilCache, long QPS, String bucketKey, int shards, int shard, int permits) {
+        if (deniedUntilCache != null && deniedUntilCache.isDenied(bucketKey, permits, 0L)) {
+            return false;
+        }
+        // get encoded keys and arguments
+        ScriptArguments arguments = getShardArguments(QPS, bucketKey, shards, shard);
 
-            // execute lua script
-            List<Long> tokenResult = (List<Long>) this.redisTemplate.execute(this.redisScript, serializer, serializer, keys, String.valueOf(QPS), String.valueOf(QPS), Instant.now().getEpochSecond() + "", "1");
+        // execute lua script
+        long startNanos = System.nanoTime();
+        List<Long> tokenResult = execute(this.redisScript, 2, arguments.keysAndArgs(permits));
 
-            // Index 1 value is the number of remaining requestable tokens
-            Long newTokens = tokenResult.get(1);
-            if (logger.isDebugEnabled()) {
-                logger.debug("Number of remaining tokens for this request is {}", newTokens);
+        // Index 1 value is the number of remaining requestable tokens
+        if (logger.isDebugEnabled()) {
+            logger.debug("Number of remaining tokens for this request is {}", tokenResult.get(1));
+        }
+        // Index 0 value is whether the token was granted, remaining tokens are truncated fractions
+        return isAllowed(deniedUntilCache, bucketKey, permits, startNanos, tokenResult);
+    }
+
+    /**
+     * redis lua away, wait up to the timeout for the permits
+     * The script reserves the tokens and returns the wait time, the calling thread parks once
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @param timeout       maximum time to wait
+     * @param unit          time unit of the timeout
+     * @return true : allow access to
+     */
+    @Override
+    public boolean acquire(Double annotationQPS, String requestKey, int permits, long timeout, TimeUnit unit) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return true;
             }
-            return newTokens > 0;
+            DeniedUntilCache deniedUntilCache = this.deniedUntilCache;
+            String[] shardKeys = getShardKeys(requestKey, QPS);
+            long waitMicros;
+            if (shardKeys == null) {
+                waitMicros = reserveShard(deniedUntilCache, QPS, requestKey, 1, 0, permits, timeout, unit);
+            } else {
+                int shard = ThreadLocalRandom.current().nextInt(shardKeys.length);
+                waitMicros = reserveShard(deniedUntilCache, QPS, shardKeys[shard], shardKeys.length, shard, permits, timeout, unit);
+                if (waitMicros < 0) {
+                    int probe = nextShard(shard, shardKeys.length);
+                    waitMicros = reserveShard(deniedUntilCache, QPS, shardKeys[probe], shardKeys.length, probe, permits, timeout, unit);
+                }
+            }
+            if (waitMicros < 0) {
+                return false;
+            }
+            parkUninterruptibly(TimeUnit.MICROSECONDS.toNanos(waitMicros));
+            return true;
+        } catch (Exception e) {
+            return fallback(annotationQPS, requestKey, permits, e);
+        }
+    }
+
+    /**
+     * Reserve tokens of one bucket if they are refilled within the timeout
+     * The script reserves the tokens and returns the wait time
+     *
+     * @param deniedUntilCache denied keys near cache, null if disabled
+     * @param QPS              qps of the logical bucket
+     * @param bucketKey        request key of the bucket, the request key when not sharded
+     * @param shards           number of sub-buckets
+     * @param shard            sub-bucket number
+     * @param permits          number of tokens
+     * @param timeout          maximum time to wait
+     * @param unit             time unit of the timeout
+     * @return wait time in microseconds of the reserved tokens, -1 if they were not reserved
+     */
+    private long reserveShard(DeniedUntilCache deniedUntilCache, long QPS, String bucketKey, int shards, int shard, int permits,
+                              long timeout, TimeUnit unit) {
+        if (deniedUntilCache != null && deniedUntilCache.isDenied(bucketKey, permits, unit.toNanos(timeout))) {
+            return -1L;
+        }
+        ScriptArguments arguments = getShardArguments(QPS, bucketKey, shards, shard);
+        long startNanos = System.nanoTime();
+        List<Long> tokenResult = execute(this.redisScript, 2, keysAndArgs(arguments.keys, arguments.encodedFirst,
+            arguments.encodedSecond, encode(permits), encode(unit.toMicros(timeout))));
+        if (!isAllowed(deniedUntilCache, bucketKey, permits, startNanos, tokenResult)) {
+            return -1L;
+        }
+        // Index 2 value is the wait time in microseconds of the reserved tokens
+        return tokenResult.get(2);
+    }
+
+    /**
+     * redis lua away, without blocking the calling thread
+     * The script runs on the reactive connection when the connection factory supports it
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @return completes with true : allow access to
+     */
+    @Override
+    public CompletionStage<Boolean> tryAcquireAsync(Double annotationQPS, String requestKey) {
+        return tryAcquireAsync(annotationQPS, requestKey, 1);
+    }
+
+    /**
+     * redis lua away, several tokens at once, without blocking the calling thread
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @return completes with true : allow access to
+     */
+    @Override
+    public CompletionStage<Boolean> tryAcquireAsync(Double annotationQPS, String requestKey, int permits) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return CompletableFuture.completedFuture(true);
+            }
+            DeniedUntilCache deniedUntilCache = this.deniedUntilCache;
+            String[] shardKeys = getShardKeys(requestKey, QPS);
+            CompletionStage<Boolean> acquired;
+            if (shardKeys == null) {
+                acquired = tryAcquireShardAsync(deniedUntilCache, QPS, requestKey, 1, 0, permits);
+            } else {
+                int shard = ThreadLocalRandom.current().nextInt(shardKeys.length);
+                int probe = nextShard(shard, shardKeys.length);
+                acquired = tryAcquireShardAsync(deniedUntilCache, QPS, shardKeys[shard], shardKeys.length, shard, permits)
+                    .thenCompose(allowed -> allowed ? CompletableFuture.completedFuture(true) :
+                        tryAcquireShardAsync(deniedUntilCache, QPS, shardKeys[probe], shardKeys.length, probe, permits));
+            }
+            return acquired.exceptionally(e -> fallback(annotationQPS, requestKey, permits, e));
         } catch (Exception e) {
-            /*
-             * We don't want a hard dependency on Redis to allow traffic. Make sure to set
-             * an alert so you know if this is happening too much. Stripe's observed
-             * failure rate is 0.01%.
-             */
-            logger.error("Error determining if user allowed from redis", e);
+            return CompletableFuture.completedFuture(fallback(annotationQPS, requestKey, permits, e));
         }
-        return true;
     }
 
     /**
-     * get Redis Script
+     * Take tokens from one bucket, without blocking the calling thread
      *
-     * @return RedisScript
+     * @param deniedUntilCache denied keys near cache, null if disabled
+     * @param QPS              qps of the logical bucket
+     * @param bucketKey        request key of the bucket, the request key when not sharded
+     * @param shards           number of sub-buckets
+     * @param shard            sub-bucket number
+     * @param permits          number of tokens
+     * @return completes with true : allow access to
      */
-    RedisScript<List<Long>> getRedisScript() {
-        DefaultRedisScript redisScript = new DefaultRedisScript<>();
-        redisScript.setScriptSource(new ResourceScriptSource(new ClassPathResource(QPS_LUA_PATH)));
-        redisScript.setResultType(List.class);
-        return redisScript;
+    private CompletionStage<Boolean> tryAcquireShardAsync(DeniedUntilCache deniedUntilCache, long QPS, String bucketKey, int shards, int shard,
+                                                          int permits) {
+        if (deniedUntilCache != null && deniedUntilCache.isDenied(bucketKey, permits, 0L)) {
+            return CompletableFuture.completedFuture(false);
+        }
+        ScriptArguments arguments = getShardArguments(QPS, bucketKey, shards, shard);
+        long startNanos = System.nanoTime();
+        return executeAsync(this.redisScript, 2, arguments.keysAndArgs(permits))
+            .thenApply(tokenResult -> isAllowed(deniedUntilCache, bucketKey, permits, startNanos, tokenResult));
+    }
+
+    /**
+     * get encoded keys and arguments of one bucket
+     * The rate and the capacity of the logical bucket are divided between the sub-buckets,
+     * the remainders go to the first sub-buckets
+     *
+     * @param QPS       qps of the logical bucket
+     * @param bucketKey request key of the bucket
+     * @param shards    number of sub-buckets
+     * @param shard     sub-bucket number
+     * @return script arguments
+     */
+    private ScriptArguments getShardArguments(long QPS, String bucketKey, int shards, int shard) {
+        long capacity = getBurstCapacity(QPS, maxBurstSeconds);
+        if (shards == 1) {
+            return getScriptArguments(bucketKey, QPS, capacity);
+        }
+        long shardCapacity = Math.max(1L, getShardShare(capacity, shards, shard));
+        return getScriptArguments(bucketKey, getShardShare(QPS, shards, shard), shardCapacity);
+    }
+
+    /**
+     * get the share of one sub-bucket, the remainder goes to the first sub-buckets
+     *
+     * @param total  rate or capacity of the logical bucket
+     * @param shards number of sub-buckets
+     * @param shard  sub-bucket number
+     * @return share of the sub-bucket, the shares add up to the total
+     */
+    static long getShardShare(long total, int shards, int shard) {
+        return total / shards + (shard < total % shards ? 1 : 0);
+    }
+
+    /**
+     * get request keys of the sub-buckets
+     * Each sub-bucket has at least one token per second, the QPS bounds the number of sub-buckets
+     *
+     * @param requestKey request key
+     * @param QPS        qps of the logical bucket
+     * @return sub-bucket request keys, null if not sharded
+     */
+    private String[] getShardKeys(String requestKey, long QPS) {
+        int shards = (int) Math.min(this.shards, QPS);
+        if (shards <= 1) {
+            return null;
+        }
+        String[] keys = shardKeys.computeIfAbsent(requestKey, key -> newShardKeys(key, shards));
+        if (keys.length != shards) {
+            keys = newShardKeys(requestKey, shards);
+            shardKeys.put(requestKey, keys);
+        }
+        return keys;
+    }
+
+    private static String[] newShardKeys(String requestKey, int shards) {
+        String[] keys = new String[shards];
+        for (int i = 0; i < shards; i++) {
+            keys[i] = requestKey + SHARD_SEPARATOR + i;
+        }
+        return keys;
+    }
+
+    /**
+     * get a random sub-bucket other than the given one
+     *
+     * @param shard  sub-bucket number
+     * @param shards number of sub-buckets
+     * @return other sub-bucket number
+     */
+    static int nextShard(int shard, int shards) {
+        return (shard + 1 + ThreadLocalRandom.current().nextInt(shards - 1)) % shards;
+    }
+
+    /**
+     * Whether the script granted the tokens, remember the key as denied otherwise
+     *
+     * @param deniedUntilCache denied keys near cache, null if disabled
+     * @param requestKey       request key
+     * @param permits          number of requested tokens
+     * @param startNanos       {@link System#nanoTime()} before the script call
+     * @param tokenResult      script result
+     * @return true : allow access to
+     */
+    private static boolean isAllowed(DeniedUntilCache deniedUntilCache, String requestKey, int permits, long startNanos,
+                                     List<Long> tokenResult) {
+        if (tokenResult.get(0) == 1L) {
+            return true;
+        }
+        // Index 2 value is the time in microseconds until the requested tokens are refilled,
+        // counted from when redis ran the script, which is after the call started
+        if (deniedUntilCache != null) {
+            deniedUntilCache.deny(requestKey, permits, startNanos + TimeUnit.MICROSECONDS.toNanos(tokenResult.get(2)));
+        }
+        return false;
+    }
+
+    /**
+     * The QPS of a key changed, its refill time too
+     * The denied keys are forgotten, they are checked by redis again with the new rate
+     *
+     * @param configKey config key
+     * @param QPS       new QPS value
+     */
+    @Override
+    protected void onQpsChange(String configKey, Long QPS) {
+        DeniedUntilCache deniedUntilCache = this.deniedUntilCache;
+        if (deniedUntilCache != null) {
+            deniedUntilCache.clear();
+        }
+    }
+
+    /**
+     * redis lua away, several limits in one script call
+     * The buckets of all request keys are refilled and checked, and only debited if every bucket allows the call
+     * <p>
+     * The keys share the hash tag of the first request key, see {@link #getMultiKeys(String)}
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()} of each key
+     * @param requestKeys   request keys
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double[] annotationQPS, String[] requestKeys) {
+        return tryAcquire(annotationQPS, requestKeys, 1);
+    }
+
+    /**
+     * redis lua away, several tokens of every limit in one script call
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()} of each key
+     * @param requestKeys   request keys
+     * @param permits       number of tokens of each key
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double[] annotationQPS, String[] requestKeys, int permits) {
+        try {
+            byte[][] keysAndArgs = getMultiKeysAndArgs(annotationQPS, requestKeys, permits);
+            if (keysAndArgs == null) {
+                return true;
+            }
+            List<Long> tokenResult = execute(this.multiRedisScript, (keysAndArgs.length - 1) / 2, keysAndArgs);
+            // Index 1 value is the position of the first denying key
+            if (logger.isDebugEnabled() && tokenResult.get(0) != 1L) {
+                logger.debug("Request denied by limit {} of {}", tokenResult.get(1), requestKeys.length);
+            }
+            return tokenResult.get(0) == 1L;
+        } catch (Exception e) {
+            return fallback(annotationQPS, requestKeys, permits, e);
+        }
+    }
+
+    /**
+     * redis lua away, several limits in one script call, without blocking the calling thread
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()} of each key
+     * @param requestKeys   request keys
+     * @return completes with true : allow access to
+     */
+    @Override
+    public CompletionStage<Boolean> tryAcquireAsync(Double[] annotationQPS, String[] requestKeys) {
+        return tryAcquireAsync(annotationQPS, requestKeys, 1);
+    }
+
+    /**
+     * redis lua away, several tokens of every limit in one script call, without blocking the calling thread
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()} of each key
+     * @param requestKeys   request keys
+     * @param permits       number of tokens of each key
+     * @return completes with true : allow access to
+     */
+    @Override
+    public CompletionStage<Boolean> tryAcquireAsync(Double[] annotationQPS, String[] requestKeys, int permits) {
+        try {
+            byte[][] keysAndArgs = getMultiKeysAndArgs(annotationQPS, requestKeys, permits);
+            if (keysAndArgs == null) {
+                return CompletableFuture.completedFuture(true);
+            }
+            return executeAsync(this.multiRedisScript, (keysAndArgs.length - 1) / 2, keysAndArgs)
+                .thenApply(tokenResult -> tokenResult.get(0) == 1L)
+                .exceptionally(e -> fallback(annotationQPS, requestKeys, permits, e));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(fallback(annotationQPS, requestKeys, permits, e));
+        }
+    }
+
+    /**
+     * get encoded keys and arguments of the multi-dimension script
+     * Keys without a QPS are not limited and left out
+     *
+     * @param annotationQPS QPS of each key
+     * @param requestKeys   request keys
+     * @param permits       number of requested tokens
+     * @return both keys of each limited key, then its rate and capacity, then the requested tokens; null if no key is limited
+     */
+    private byte[][] getMultiKeysAndArgs(Double[] annotationQPS, String[] requestKeys, int permits) {
+        ScriptArguments[] dimensions = new ScriptArguments[requestKeys.length];
+        int limited = 0;
+        for (int i = 0; i < requestKeys.length; i++) {
+            Long QPS = getPriorityQPS(requestKeys[i], annotationQPS[i]);
+            if (QPS > 0) {
+                dimensions[limited++] = getScriptArguments(requestKeys[i], RedisLuaRateLimiter::getMultiKeys, QPS, getBurstCapacity(QPS, maxBurstSeconds));
+            }
+        }
+        if (limited == 0) {
+            return null;
+        }
+        byte[][] keysAndArgs = new byte[limited * 4 + 1][];
+        for (int i = 0; i < limited; i++) {
+            keysAndArgs[i * 2] = dimensions[i].keys[0];
+            keysAndArgs[i * 2 + 1] = dimensions[i].keys[1];
+            keysAndArgs[limited * 2 + i * 2] = dimensions[i].encodedFirst;
+            keysAndArgs[limited * 2 + i * 2 + 1] = dimensions[i].encodedSecond;
+        }
+        keysAndArgs[limited * 4] = permits == 1 ? ONE : encode(permits);
+        return keysAndArgs;
+    }
+
+    public double getMaxBurstSeconds() {
+        return maxBurstSeconds;
+    }
+
+    public void setMaxBurstSeconds(double maxBurstSeconds) {
+        Assert.isTrue(maxBurstSeconds > 0, "The max burst seconds must be greater than 0.");
+        this.maxBurstSeconds = maxBurstSeconds;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    /**
+     * set number of sub-buckets of each logical bucket
+     * default 1, not sharded. Set it before the first request: the tokens of the previous buckets are not carried over
+     *
+     * @param shards number of sub-buckets
+     */
+    public void setShards(int shards) {
+        Assert.isTrue(shards > 0, "The shards must be greater than 0.");
+        this.shards = shards;
+    }
+
+    /**
+     * set number of slots of the denied keys near cache
+     * default {@link #DEFAULT_DENIED_CACHE_SIZE}, rounded up to a power of two; 0 disables the cache
+     *
+     * @param deniedCacheSize number of slots
+     */
+    public void setDeniedCacheSize(int deniedCacheSize) {
+        Assert.isTrue(deniedCacheSize >= 0, "The denied cache size must not be negative.");
+        this.deniedUntilCache = deniedCacheSize > 0 ? new DeniedUntilCache(deniedCacheSize) : null;
+    }
+
+    /**
+     * get burst capacity of the bucket
+     *
+     * @param QPS             qps
+     * @param maxBurstSeconds burst period
+     * @return bucket capacity, at least one token
+     */
+    static long getBurstCapacity(long QPS, double maxBurstSeconds) {
+        return Math.max(1L, (long) Math.ceil(QPS * maxBurstSeconds));
+    }
+
+    @Override
+    protected List<String> getRedisKeys(String requestKey) {
+        return getKeys(requestKey);
     }
 
     /**
@@ -138,4 +626,28 @@ public class RedisLuaRateLimiter extends AbstractRateLimiter {
         String timestampKey = prefix + "}.timestamp";
         return Arrays.asList(tokenKey, timestampKey);
     }
+
+    /**
+     * get Keys of one limit of a multi-dimension method
+     * All limits of a method use the method key as hash tag, so one script can access them on redis cluster.
+     * The method key is the request key up to the first {@link #KEY_SEPARATOR} or {@code [}
+     * <p>
+     * for example: com.example.UserService#list[1]@tenant -> qps_rate_limiter.{com.example.UserService#list}[1]@tenant.tokens
+     *
+     * @param id resource key of one limit
+     * @return tokens key and timestamp key
+     */
+    static List<String> getMultiKeys(String id) {
+        int end = id.length();
+        int separatorIndex = id.indexOf(KEY_SEPARATOR);
+        if (separatorIndex >= 0) {
+            end = separatorIndex;
+        }
+        int dimensionIndex = id.lastIndexOf('[', end);
+        if (dimensionIndex >= 0) {
+            end = dimensionIndex;
+        }
+        String prefix = "qps_rate_limiter.{" + id.substring(0, end) + "}" + id.substring(end);
+        return Arrays.asList(prefix + ".tokens", prefix + ".timestamp");
+    }
 }
@@ -0,0 +1,206 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis lua sliding window counter rate limiter support
+ * <p>
+ * Counts requests in fixed one second windows, the previous window is weighted by the part of it
+ * still covered by the sliding window. Unlike the token bucket it never allows a full burst right after a quiet second.
+ * <p>
+ * Two string counters of the same slot hold the counts, an even window uses the first and an odd window the second.
+ * A counter expires at the end of the window following its own, before its slot is reused:
+ * one MGET, one INCRBY and one PEXPIREAT per request, whatever the QPS, and every key is passed to the script.
+ *
+ * @author 恒宇少年
+ */
+public class RedisSlidingWindowRateLimiter extends AbstractRedisRateLimiter {
+    /**
+     * logger instance
+     */
+    static Logger logger = LoggerFactory.getLogger(RedisSlidingWindowRateLimiter.class);
+    /**
+     * Redis Script file name.
+     */
+    private static final String SLIDING_WINDOW_LUA_PATH = "META-INF/scripts/sliding-window-rate-limiter.lua";
+    /**
+     * window length in microseconds
+     */
+    private static final long WINDOW_MICROS = TimeUnit.SECONDS.toMicros(1);
+    /**
+     * Redis Script.
+     */
+    private CachedRedisScript redisScript;
+
+    public RedisSlidingWindowRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate) {
+        this(globalQPS, rateLimiterConfigCentre, redisTemplate, null);
+    }
+
+    public RedisSlidingWindowRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre, RedisTemplate redisTemplate,
+                                         RedisInstanceHeartbeat instanceHeartbeat) {
+        super(globalQPS, rateLimiterConfigCentre, redisTemplate, instanceHeartbeat);
+        this.redisScript = new CachedRedisScript(SLIDING_WINDOW_LUA_PATH);
+    }
+
+    /**
+     * redis sliding window away
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey) {
+        return tryAcquire(annotationQPS, requestKey, 1);
+    }
+
+    /**
+     * redis sliding window away, several requests at once
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of requests
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey, int permits) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return true;
+            }
+            ScriptArguments arguments = getScriptArguments(requestKey, QPS, WINDOW_MICROS);
+            List<Long> windowResult = execute(this.redisScript, 2, arguments.keysAndArgs(permits));
+
+            // Index 1 value is the number of remaining requests in the sliding window
+            if (logger.isDebugEnabled()) {
+                logger.debug("Number of remaining requests for this window is {}", windowResult.get(1));
+            }
+            return windowResult.get(0) == 1L;
+        } catch (Exception e) {
+            return fallback(annotationQPS, requestKey, permits, e);
+        }
+    }
+
+    /**
+     * redis sliding window away, wait up to the timeout for the permits
+     * A window counter can not be reserved in advance, the script returns when the estimated count
+     * drops enough, the calling thread parks once until then and retries once
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of requests
+     * @param timeout       maximum time to wait
+     * @param unit          time unit of the timeout
+     * @return true : allow access to
+     */
+    @Override
+    public boolean acquire(Double annotationQPS, String requestKey, int permits, long timeout, TimeUnit unit) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return true;
+            }
+            if (permits > QPS) {
+                return false;
+            }
+            ScriptArguments arguments = getScriptArguments(requestKey, QPS, WINDOW_MICROS);
+            byte[][] keysAndArgs = arguments.keysAndArgs(permits);
+            long timeoutNanos = unit.toNanos(timeout);
+            List<Long> windowResult = execute(this.redisScript, 2, keysAndArgs);
+            if (windowResult.get(0) == 1L) {
+                return true;
+            }
+            // Index 2 value is the time in microseconds until the requests fit in the window
+            long waitNanos = TimeUnit.MICROSECONDS.toNanos(windowResult.get(2));
+            if (waitNanos > timeoutNanos) {
+                return false;
+            }
+            // Other nodes may take the freed requests first, the retry is not repeated
+            parkUninterruptibly(waitNanos);
+            return execute(this.redisScript, 2, keysAndArgs).get(0) == 1L;
+        } catch (Exception e) {
+            return fallback(annotationQPS, requestKey, permits, e);
+        }
+    }
+
+    /**
+     * redis sliding window away, without blocking the calling thread
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @return completes with true : allow access to
+     */
+    @Override
+    public CompletionStage<Boolean> tryAcquireAsync(Double annotationQPS, String requestKey) {
+        return tryAcquireAsync(annotationQPS, requestKey, 1);
+    }
+
+    /**
+     * redis sliding window away, several requests at once, without blocking the calling thread
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of requests
+     * @return completes with true : allow access to
+     */
+    @Override
+    public CompletionStage<Boolean> tryAcquireAsync(Double annotationQPS, String requestKey, int permits) {
+        try {
+            Long QPS = getPriorityQPS(requestKey, annotationQPS);
+            if (QPS <= 0) {
+                return CompletableFuture.completedFuture(true);
+            }
+            ScriptArguments arguments = getScriptArguments(requestKey, QPS, WINDOW_MICROS);
+            return executeAsync(this.redisScript, 2, arguments.keysAndArgs(permits))
+                .thenApply(windowResult -> windowResult.get(0) == 1L)
+                .exceptionally(e -> fallback(annotationQPS, requestKey, permits, e));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(fallback(annotationQPS, requestKey, permits, e));
+        }
+    }
+
+    @Override
+    protected List<String> getRedisKeys(String requestKey) {
+        return getKeys(requestKey);
+    }
+
+    /**
+     * get Keys
+     * The counters of even and odd windows,
+     * the hash tag keeps both counters of a request key in the same redis cluster slot
+     *
+     * @param id resource key（request uri）
+     * @return even and odd window keys
+     */
+    static List<String> getKeys(String id) {
+        String prefix = "sliding_window_rate_limiter.{" + id + "}.window.";
+        return Arrays.asList(prefix + "even", prefix + "odd");
+    }
+}
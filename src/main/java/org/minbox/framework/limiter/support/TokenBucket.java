@@ -0,0 +1,182 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Lock-free local token bucket
+ * <p>
+ * The whole bucket state is a single {@code long}: the theoretical arrival time of the next permit,
+ * based on {@link System#nanoTime()}. A permit is granted when the arrival time, after adding the
+ * permit interval, is less than one burst period ahead of now. The state is updated with CAS,
+ * neither path takes a monitor or allocates.
+ * <p>
+ * Same semantics as the Guava {@code SmoothBursty} rate limiter:
+ * a new bucket grants one permit immediately, idle time accumulates permits up to one second of QPS.
+ * <p>
+ * The rate can be changed in place with {@link #setRate(double)}, stored permits are kept and clamped to the new capacity.
+ *
+ * @author 恒宇少年
+ */
+public class TokenBucket {
+    /**
+     * Burst period, the bucket holds at most one second of permits
+     */
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * CAS updater of {@link #arrivalTime}
+     */
+    private static final AtomicLongFieldUpdater<TokenBucket> ARRIVAL_TIME =
+        AtomicLongFieldUpdater.newUpdater(TokenBucket.class, "arrivalTime");
+    /**
+     * Configured permits per second, compared as is by the callers changing the rate
+     */
+    private volatile double rate;
+    /**
+     * Interval of one permit in nanos
+     */
+    private volatile long intervalNanos;
+    /**
+     * Theoretical arrival time of the next permit
+     */
+    private volatile long arrivalTime;
+
+    public TokenBucket(double qps) {
+        if (qps <= 0) {
+            throw new IllegalArgumentException("The qps must be greater than 0.");
+        }
+        this.rate = qps;
+        this.intervalNanos = toIntervalNanos(qps);
+        // Only one permit available, like a newly created guava rate limiter
+        this.arrivalTime = System.nanoTime() + BURST_NANOS - intervalNanos;
+    }
+
+    /**
+     * Attempt to obtain a permit
+     *
+     * @return true : allow access to
+     */
+    public boolean tryAcquire() {
+        return reserve(1, 0L) == 0L;
+    }
+
+    /**
+     * Attempt to obtain several permits at once
+     * More permits than one second of the rate are never available
+     *
+     * @param permits number of permits
+     * @return true : allow access to
+     */
+    public boolean tryAcquire(int permits) {
+        return reserve(permits, 0L) == 0L;
+    }
+
+    /**
+     * Reserve the next free permits if they are available within the max wait
+     *
+     * @param permits      number of permits
+     * @param maxWaitNanos longest accepted wait
+     * @return nanos to wait before using the permits, -1 if they were not reserved
+     */
+    public long reserve(int permits, long maxWaitNanos) {
+        long cost = permits * intervalNanos;
+        for (; ; ) {
+            long now = System.nanoTime();
+            long current = arrivalTime;
+            long next = (current - now > 0 ? current : now) + cost;
+            long wait = next - now - BURST_NANOS;
+            if (wait > maxWaitNanos) {
+                return -1L;
+            }
+            if (ARRIVAL_TIME.compareAndSet(this, current, next)) {
+                return wait > 0 ? wait : 0L;
+            }
+        }
+    }
+
+    /**
+     * Change the rate in place
+     * <p>
+     * The stored permits are kept, at most one second of the new rate; reserved permits stay reserved,
+     * the debt is converted to the new interval. A reservation racing with the change may use the
+     * previous interval, an error of at most the permits of that reservation.
+     *
+     * @param qps new permits per second
+     */
+    public synchronized void setRate(double qps) {
+        if (qps <= 0) {
+            throw new IllegalArgumentException("The qps must be greater than 0.");
+        }
+        long newIntervalNanos = toIntervalNanos(qps);
+        long oldIntervalNanos = intervalNanos;
+        rate = qps;
+        if (newIntervalNanos == oldIntervalNanos) {
+            return;
+        }
+        for (; ; ) {
+            long now = System.nanoTime();
+            long current = arrivalTime;
+            // stored permits, negative when permits are reserved ahead
+            double permits = (double) (now + BURST_NANOS - (current - now > 0 ? current : now)) / oldIntervalNanos;
+            long next = now + BURST_NANOS - (long) (permits * newIntervalNanos);
+            // a full bucket
+            if (next - now < 0) {
+                next = now;
+            }
+            if (ARRIVAL_TIME.compareAndSet(this, current, next)) {
+                intervalNanos = newIntervalNanos;
+                return;
+            }
+        }
+    }
+
+    private static long toIntervalNanos(double qps) {
+        return Math.max(1L, (long) (BURST_NANOS / qps));
+    }
+
+    /**
+     * Whether the bucket is full and owes nothing
+     * A bucket with permits reserved ahead, by {@link #reserve(int, long)} or several permits at once,
+     * must be kept until the debt is paid: a new bucket would grant permits right away
+     *
+     * @return true : dropping the bucket and creating a new one never grants more permits
+     */
+    public boolean isFull() {
+        return arrivalTime - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Get the time an empty bucket takes to fill up
+     *
+     * @return refill time in nanos
+     */
+    public long getRefillNanos() {
+        return BURST_NANOS;
+    }
+
+    /**
+     * Get permits per second, as configured
+     *
+     * @return qps
+     */
+    public double getRate() {
+        return rate;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.support;
+
+
+import org.minbox.framework.limiter.centre.RateLimiterConfigCentre;
+import org.minbox.framework.limiter.context.RateLimiterContext;
+import org.minbox.framework.limiter.metrics.RateLimiterMetrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock-free local token bucket rate limiter support
+ * <p>
+ * Drop-in replacement of {@link GoogleGuavaRateLimiter} with the same QPS semantics,
+ * without a monitor on the acquire path
+ *
+ * @author 恒宇少年
+ * @see TokenBucket
+ */
+public class TokenBucketRateLimiter extends AbstractRateLimiter {
+    public TokenBucketRateLimiter(Long globalQPS, RateLimiterConfigCentre rateLimiterConfigCentre) {
+        super(globalQPS, rateLimiterConfigCentre);
+    }
+
+    /**
+     * local token bucket away
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey) {
+        Long QPS = getPriorityQPS(requestKey, annotationQPS);
+        if (QPS <= 0) {
+            return true;
+        }
+        TokenBucket tokenBucket = RateLimiterContext.cacheTokenBucket(requestKey, QPS);
+        return tokenBucket.tryAcquire();
+    }
+
+    /**
+     * local token bucket away, several tokens at once
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @return true : allow access to
+     */
+    @Override
+    public boolean tryAcquire(Double annotationQPS, String requestKey, int permits) {
+        Long QPS = getPriorityQPS(requestKey, annotationQPS);
+        if (QPS <= 0) {
+            return true;
+        }
+        TokenBucket tokenBucket = RateLimiterContext.cacheTokenBucket(requestKey, QPS);
+        return tokenBucket.tryAcquire(permits);
+    }
+
+    /**
+     * local token bucket away, reserve the next free permits and park until they are due
+     *
+     * @param annotationQPS {@link org.minbox.framework.limiter.annotation.RateLimiter#QPS()}
+     * @param requestKey    request key
+     * @param permits       number of tokens
+     * @param timeout       maximum time to wait
+     * @param unit          time unit of the timeout
+     * @return true : allow access to
+     */
+    @Override
+    public boolean acquire(Double annotationQPS, String requestKey, int permits, long timeout, TimeUnit unit) {
+        Long QPS = getPriorityQPS(requestKey, annotationQPS);
+        if (QPS <= 0) {
+            return true;
+        }
+        TokenBucket tokenBucket = RateLimiterContext.cacheTokenBucket(requestKey, QPS);
+        long waitNanos = tokenBucket.reserve(permits, unit.toNanos(timeout));
+        if (waitNanos < 0) {
+            return false;
+        }
+        parkUninterruptibly(waitNanos);
+        return true;
+    }
+
+    /**
+     * Apply the new QPS to the cached token bucket of the key
+     *
+     * @param configKey config key
+     * @param QPS       new QPS value
+     */
+    @Override
+    protected void onQpsChange(String configKey, Long QPS) {
+        RateLimiterContext.updateTokenBucket(configKey, QPS);
+    }
+
+    @Override
+    public void setRateLimiterMetrics(RateLimiterMetrics rateLimiterMetrics) {
+        super.setRateLimiterMetrics(rateLimiterMetrics);
+        rateLimiterMetrics.bindRegistry("token_bucket", RateLimiterContext.getTokenBucketRegistry());
+    }
+}
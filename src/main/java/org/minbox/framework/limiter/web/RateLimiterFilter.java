@@ -0,0 +1,86 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.web;
+
+import org.minbox.framework.limiter.MinBoxRateLimiter;
+import org.minbox.framework.limiter.config.RateLimiterConfig;
+import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Servlet filter limiting the {@link RateLimiterConfig#getInterceptorUrl()} urls
+ * <p>
+ * Runs before the handler mapping: an over-limit request is answered with 429 Too Many Requests,
+ * its body is never read. The url is matched as the handler mapping sees it: decoded, without {@code ;} path parameters,
+ * duplicate slashes and dot segments. The requests matching a pattern share the limit of the pattern,
+ * the QPS is looked up in the config centre with the pattern as key,
+ * then {@link RateLimiterConfig#getInterceptorQPS()}, then the global QPS
+ *
+ * @author 恒宇少年
+ */
+public class RateLimiterFilter extends OncePerRequestFilter {
+    /**
+     * rate limiter
+     */
+    private final MinBoxRateLimiter minBoxRateLimiter;
+    /**
+     * compiled interceptor urls
+     */
+    private final RateLimiterUrlMatcher urlMatcher;
+    /**
+     * QPS of each interceptor url
+     */
+    private final Double QPS;
+    /**
+     * Resolve the decoded path within the application
+     */
+    private final UrlPathHelper urlPathHelper = new UrlPathHelper();
+
+    public RateLimiterFilter(MinBoxRateLimiter minBoxRateLimiter, RateLimiterConfig rateLimiterConfig) {
+        Assert.notNull(minBoxRateLimiter, "No ApiBootRateLimiter implementation class instance.");
+        this.minBoxRateLimiter = minBoxRateLimiter;
+        this.urlMatcher = new RateLimiterUrlMatcher(rateLimiterConfig.getInterceptorUrl());
+        this.QPS = rateLimiterConfig.getInterceptorQPS();
+        this.urlPathHelper.setAlwaysUseFullPath(true);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        String pattern = urlMatcher.match(urlPathHelper.getLookupPathForRequest(request));
+        if (pattern != null && !minBoxRateLimiter.tryAcquire(QPS, pattern)) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        // the request was limited on the first dispatch
+        return true;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.web;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Path segment trie of the {@link org.minbox.framework.limiter.config.RateLimiterConfig#getInterceptorUrl()} patterns
+ * <p>
+ * Supported patterns, matched segment by segment:
+ * <ul>
+ * <li>{@code /api/order}: the url and every url below it, a prefix</li>
+ * <li>{@code /api/*}{@code /detail}: {@code *} matches exactly one segment</li>
+ * <li>{@code /api/order/**}: {@code **} as last segment matches the rest of the url, same as a prefix</li>
+ * </ul>
+ * A lookup walks the segments of the url once, whatever the number of patterns;
+ * a literal segment is preferred to {@code *}, then the longest matching pattern along that branch wins.
+ * <p>
+ * The url must be decoded and without path parameters, such as the lookup path of the filters.
+ * Empty segments are skipped, {@code .} and {@code ..} segments are resolved before matching.
+ *
+ * @author 恒宇少年
+ */
+public class RateLimiterUrlMatcher {
+    /**
+     * one segment wildcard
+     */
+    private static final String ANY_SEGMENT = "*";
+    /**
+     * remaining segments wildcard
+     */
+    private static final String ANY_PATH = "**";
+    /**
+     * url path separator
+     */
+    private static final char PATH_SEPARATOR = '/';
+    /**
+     * start of a dot segment
+     */
+    private static final String DOT_SEGMENT = "/.";
+    /**
+     * trie root, the empty path
+     */
+    private final Node root = new Node();
+
+    public RateLimiterUrlMatcher(String[] patterns) {
+        if (patterns != null) {
+            for (String pattern : patterns) {
+                if (StringUtils.hasText(pattern)) {
+                    add(pattern.trim());
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a pattern to the trie
+     *
+     * @param pattern url pattern
+     */
+    private void add(String pattern) {
+        Node node = root;
+        for (String segment : StringUtils.tokenizeToStringArray(pattern, String.valueOf(PATH_SEPARATOR))) {
+            if (ANY_PATH.equals(segment)) {
+                break;
+            }
+            Assert.isTrue(!segment.contains(ANY_SEGMENT) || ANY_SEGMENT.equals(segment),
+                "Only whole segment wildcards are supported, pattern: " + pattern);
+            node = ANY_SEGMENT.equals(segment) ? node.wildcardChild() : node.literalChild(segment);
+        }
+        // the first pattern of a path names the limit
+        if (node.pattern == null) {
+            node.pattern = pattern;
+        }
+    }
+
+    /**
+     * Match a url path
+     *
+     * @param path decoded url path within the application, such as {@code /api/order/1}
+     * @return the matching pattern, null if no pattern matches
+     */
+    public String match(String path) {
+        if (path.contains(DOT_SEGMENT)) {
+            path = StringUtils.cleanPath(path);
+        }
+        return match(root, path, 0);
+    }
+
+    /**
+     * Match the remaining segments of the path from a node
+     *
+     * @param node  current node
+     * @param path  url path
+     * @param start start index of the next segment
+     * @return the deepest matching pattern, null if none
+     */
+    private String match(Node node, String path, int start) {
+        int length = path.length();
+        while (start < length && path.charAt(start) == PATH_SEPARATOR) {
+            start++;
+        }
+        if (start >= length) {
+            return node.pattern;
+        }
+        int end = path.indexOf(PATH_SEPARATOR, start);
+        if (end < 0) {
+            end = length;
+        }
+        String matched = null;
+        if (node.literals != null) {
+            Node literal = node.literals.get(path.substring(start, end));
+            if (literal != null) {
+                matched = match(literal, path, end);
+            }
+        }
+        if (matched == null && node.wildcard != null) {
+            matched = match(node.wildcard, path, end);
+        }
+        // the pattern of this node is a prefix of the path
+        return matched != null ? matched : node.pattern;
+    }
+
+    /**
+     * Whether no pattern is configured
+     *
+     * @return true : nothing to match
+     */
+    public boolean isEmpty() {
+        return root.pattern == null && root.literals == null && root.wildcard == null;
+    }
+
+    /**
+     * Trie node of one path segment
+     */
+    private static class Node {
+        /**
+         * children by literal segment, null if none
+         */
+        private Map<String, Node> literals;
+        /**
+         * child of the {@code *} segment, null if none
+         */
+        private Node wildcard;
+        /**
+         * pattern ending at this node, null if none
+         */
+        private String pattern;
+
+        Node literalChild(String segment) {
+            if (literals == null) {
+                literals = new HashMap<>();
+            }
+            return literals.computeIfAbsent(segment, key -> new Node());
+        }
+
+        Node wildcardChild() {
+            if (wildcard == null) {
+                wildcard = new Node();
+            }
+            return wildcard;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+
+package org.minbox.framework.limiter.web;
+
+import org.minbox.framework.limiter.MinBoxRateLimiter;
+import org.minbox.framework.limiter.config.RateLimiterConfig;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.PathContainer;
+import org.springframework.http.server.RequestPath;
+import org.springframework.util.Assert;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebFlux filter limiting the {@link RateLimiterConfig#getInterceptorUrl()} urls
+ * <p>
+ * Same matching and QPS as {@link RateLimiterFilter}, the url is matched by the decoded segments without path parameters.
+ * The token is requested without blocking the event loop
+ * through {@link MinBoxRateLimiter#tryAcquireAsync(Double, String)}.
+ * An over-limit request is completed with 429 Too Many Requests before the handler mapping, its body is never subscribed
+ *
+ * @author 恒宇少年
+ */
+public class RateLimiterWebFilter implements WebFilter {
+    /**
+     * rate limiter
+     */
+    private final MinBoxRateLimiter minBoxRateLimiter;
+    /**
+     * compiled interceptor urls
+     */
+    private final RateLimiterUrlMatcher urlMatcher;
+    /**
+     * QPS of each interceptor url
+     */
+    private final Double QPS;
+
+    public RateLimiterWebFilter(MinBoxRateLimiter minBoxRateLimiter, RateLimiterConfig rateLimiterConfig) {
+        Assert.notNull(minBoxRateLimiter, "No ApiBootRateLimiter implementation class instance.");
+        this.minBoxRateLimiter = minBoxRateLimiter;
+        this.urlMatcher = new RateLimiterUrlMatcher(rateLimiterConfig.getInterceptorUrl());
+        this.QPS = rateLimiterConfig.getInterceptorQPS();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String pattern = urlMatcher.match(getLookupPath(exchange.getRequest().getPath()));
+        if (pattern == null) {
+            return chain.filter(exchange);
+        }
+        return Mono.fromCompletionStage(minBoxRateLimiter.tryAcquireAsync(QPS, pattern))
+            .flatMap(acquired -> {
+                if (acquired) {
+                    return chain.filter(exchange);
+                }
+                exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+                return exchange.getResponse().setComplete();
+            });
+    }
+
+    /**
+     * get the decoded path within the application, without path parameters
+     *
+     * @param path request path
+     * @return lookup path
+     */
+    static String getLookupPath(RequestPath path) {
+        StringBuilder lookupPath = new StringBuilder();
+        for (PathContainer.Element element : path.pathWithinApplication().elements()) {
+            if (element instanceof PathContainer.PathSegment) {
+                lookupPath.append('/').append(((PathContainer.PathSegment) element).valueToMatch());
+            }
+        }
+        return lookupPath.toString();
+    }
+}
@@ -0,0 +1,29 @@
+-- now is read from the redis server, so script effects are replicated instead of the script itself
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+
+-- sorted set of the permits in flight, scored by their lease expiry in microseconds
+local permits_key = KEYS[1]
+
+local max_concurrency = tonumber(ARGV[1])
+local lease = tonumber(ARGV[2])
+local permit_id = ARGV[3]
+
+-- redis server time in microseconds, shared by every application node
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+-- permits of crashed nodes are dropped once their lease expired
+redis.call("zremrangebyscore", permits_key, "-inf", string.format("%.0f", now))
+
+local in_flight = redis.call("zcard", permits_key)
+if in_flight >= max_concurrency then
+  return { 0, in_flight }
+end
+
+-- numbers are converted with 14 significant digits, format the microseconds explicitly
+redis.call("zadd", permits_key, string.format("%.0f", now + lease), permit_id)
+redis.call("pexpire", permits_key, math.ceil(lease / 1000))
+
+return { 1, in_flight + 1 }
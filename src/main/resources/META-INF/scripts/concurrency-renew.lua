@@ -0,0 +1,22 @@
+-- now is read from the redis server, so script effects are replicated instead of the script itself
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+
+local permits_key = KEYS[1]
+
+local lease = tonumber(ARGV[1])
+local permit_id = ARGV[2]
+
+-- a permit already dropped because its lease expired is not renewed
+if not redis.call("zscore", permits_key, permit_id) then
+  return { 0 }
+end
+
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+redis.call("zadd", permits_key, string.format("%.0f", now + lease), permit_id)
+redis.call("pexpire", permits_key, math.ceil(lease / 1000))
+
+return { 1 }
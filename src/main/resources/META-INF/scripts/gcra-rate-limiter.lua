@@ -0,0 +1,44 @@
+-- now is read from the redis server, so script effects are replicated instead of the script itself
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+
+-- the only state is the theoretical arrival time (tat) of the next request, in microseconds
+local tat_key = KEYS[1]
+
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+-- longest wait in microseconds the caller accepts, the requests are reserved when the wait fits
+local max_wait = tonumber(ARGV[4]) or 0
+
+-- redis server time in microseconds, shared by every application node
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+-- one request is emitted every emission_interval, capacity requests may arrive at once
+local emission_interval = 1000000/rate
+local tolerance = emission_interval*capacity
+
+local tat = tonumber(redis.call("get", tat_key))
+if tat == nil or tat < now then
+  tat = now
+end
+
+local new_tat = tat + emission_interval*requested
+-- microseconds until the requests conform
+local wait = math.max(0, new_tat-tolerance-now)
+
+local allowed_num = 0
+if wait <= max_wait then
+  allowed_num = 1
+  tat = new_tat
+  -- the key expires when the tat is reached, an expired key is a full bucket
+  -- numbers are converted with 14 significant digits, format the microseconds explicitly
+  redis.call("set", tat_key, string.format("%.0f", tat), "PX", math.max(1, math.ceil((tat-now)/1000)))
+end
+
+local remaining = math.max(0, math.floor((tolerance-(tat-now))/emission_interval))
+local reset_after = math.ceil(tat-now)
+
+return { allowed_num, remaining, math.ceil(wait), reset_after }
@@ -0,0 +1,46 @@
+-- now is read from the redis server, so script effects are replicated instead of the script itself
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+
+local tokens_key = KEYS[1]
+local timestamp_key = KEYS[2]
+
+local rate = tonumber(ARGV[1])
+local capacity = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+local returned = tonumber(ARGV[4])
+
+-- redis server time in microseconds, shared by every application node
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local fill_time = capacity/rate
+local ttl = math.max(1, math.ceil(fill_time*2))
+
+local last_tokens = tonumber(redis.call("get", tokens_key))
+if last_tokens == nil then
+  last_tokens = capacity
+end
+
+local last_refreshed = tonumber(redis.call("get", timestamp_key))
+if last_refreshed == nil then
+  last_refreshed = 0
+end
+
+-- unused tokens of an expired lease are given back, never above capacity
+local delta = math.max(0, now-last_refreshed)
+local filled_tokens = math.min(capacity, last_tokens+(delta*rate/1000000)+returned)
+
+-- grant as much of the requested batch as the bucket currently holds
+local granted = math.min(requested, math.floor(filled_tokens))
+if granted < 0 then
+  granted = 0
+end
+local new_tokens = filled_tokens - granted
+
+redis.call("setex", tokens_key, ttl, new_tokens)
+-- numbers are converted with 14 significant digits, format the microseconds explicitly
+redis.call("setex", timestamp_key, ttl, string.format("%.0f", now))
+
+return { granted, new_tokens }
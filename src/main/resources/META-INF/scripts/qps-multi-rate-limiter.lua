@@ -0,0 +1,54 @@
+-- now is read from the redis server, so script effects are replicated instead of the script itself
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+
+-- KEYS: tokens key and timestamp key of each dimension, all in the same hash slot
+-- ARGV: rate and capacity of each dimension, followed by the requested tokens
+local dimensions = #KEYS/2
+local requested = tonumber(ARGV[dimensions*2+1])
+
+-- redis server time in microseconds, shared by every application node
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+-- refill every bucket first, nothing is written unless every bucket holds the requested tokens
+local filled_tokens = {}
+local denied = 0
+for i = 1, dimensions do
+  local rate = tonumber(ARGV[i*2-1])
+  local capacity = tonumber(ARGV[i*2])
+
+  local last_tokens = tonumber(redis.call("get", KEYS[i*2-1]))
+  if last_tokens == nil then
+    last_tokens = capacity
+  end
+  local last_refreshed = tonumber(redis.call("get", KEYS[i*2]))
+  if last_refreshed == nil then
+    last_refreshed = 0
+  end
+
+  -- tokens are refilled continuously, rate is per second and delta in microseconds
+  local delta = math.max(0, now-last_refreshed)
+  filled_tokens[i] = math.min(capacity, last_tokens+(delta*rate/1000000))
+  if denied == 0 and filled_tokens[i] < requested then
+    denied = i
+  end
+end
+
+local allowed_num = 0
+if denied == 0 then
+  allowed_num = 1
+  -- numbers are converted with 14 significant digits, format the microseconds explicitly
+  local timestamp = string.format("%.0f", now)
+  for i = 1, dimensions do
+    local rate = tonumber(ARGV[i*2-1])
+    local capacity = tonumber(ARGV[i*2])
+    local ttl = math.max(1, math.ceil(capacity/rate*2))
+    redis.call("setex", KEYS[i*2-1], ttl, filled_tokens[i]-requested)
+    redis.call("setex", KEYS[i*2], ttl, timestamp)
+  end
+end
+
+-- index of the first denying dimension, 0 when allowed
+return { allowed_num, denied }
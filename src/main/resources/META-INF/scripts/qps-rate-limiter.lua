@@ -1,19 +1,30 @@
+-- now is read from the redis server, so script effects are replicated instead of the script itself
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+
 local tokens_key = KEYS[1]
 local timestamp_key = KEYS[2]
 --redis.log(redis.LOG_WARNING, "tokens_key " .. tokens_key)
 
 local rate = tonumber(ARGV[1])
 local capacity = tonumber(ARGV[2])
-local now = tonumber(ARGV[3])
-local requested = tonumber(ARGV[4])
+local requested = tonumber(ARGV[3])
+-- longest wait in microseconds the caller accepts, a token is reserved when the wait fits
+local max_wait = tonumber(ARGV[4]) or 0
+
+-- redis server time in microseconds, shared by every application node
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
 
 local fill_time = capacity/rate
-local ttl = math.floor(fill_time*2)
+local ttl = math.max(1, math.ceil(fill_time*2))
 
 --redis.log(redis.LOG_WARNING, "rate " .. ARGV[1])
 --redis.log(redis.LOG_WARNING, "capacity " .. ARGV[2])
---redis.log(redis.LOG_WARNING, "now " .. ARGV[3])
---redis.log(redis.LOG_WARNING, "requested " .. ARGV[4])
+--redis.log(redis.LOG_WARNING, "requested " .. ARGV[3])
+--redis.log(redis.LOG_WARNING, "max_wait " .. max_wait)
+--redis.log(redis.LOG_WARNING, "now " .. now)
 --redis.log(redis.LOG_WARNING, "filltime " .. fill_time)
 --redis.log(redis.LOG_WARNING, "ttl " .. ttl)
 
@@ -29,22 +40,36 @@ if last_refreshed == nil then
 end
 --redis.log(redis.LOG_WARNING, "last_refreshed " .. last_refreshed)
 
+-- tokens are refilled continuously, rate is per second and delta in microseconds
 local delta = math.max(0, now-last_refreshed)
-local filled_tokens = math.min(capacity, last_tokens+(delta*rate))
-local allowed = filled_tokens >= requested
+local filled_tokens = math.min(capacity, last_tokens+(delta*rate/1000000))
+
+-- microseconds until the requested tokens are refilled
+local wait = 0
+if filled_tokens < requested then
+  wait = math.ceil((requested-filled_tokens)*1000000/rate)
+end
+
+-- a reservation leaves the bucket in debt, later callers wait behind it
+local allowed = wait <= max_wait
 local new_tokens = filled_tokens
 local allowed_num = 0
 if allowed then
   new_tokens = filled_tokens - requested
   allowed_num = 1
 end
+if new_tokens < 0 then
+  ttl = ttl + math.ceil(-new_tokens/rate)
+end
 
 --redis.log(redis.LOG_WARNING, "delta " .. delta)
 --redis.log(redis.LOG_WARNING, "filled_tokens " .. filled_tokens)
 --redis.log(redis.LOG_WARNING, "allowed_num " .. allowed_num)
 --redis.log(redis.LOG_WARNING, "new_tokens " .. new_tokens)
+--redis.log(redis.LOG_WARNING, "wait " .. wait)
 
 redis.call("setex", tokens_key, ttl, new_tokens)
-redis.call("setex", timestamp_key, ttl, now)
+-- numbers are converted with 14 significant digits, format the microseconds explicitly
+redis.call("setex", timestamp_key, ttl, string.format("%.0f", now))
 
-return { allowed_num, new_tokens }
+return { allowed_num, new_tokens, wait }
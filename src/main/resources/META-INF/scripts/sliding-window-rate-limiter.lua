@@ -0,0 +1,46 @@
+-- now is read from the redis server, so script effects are replicated instead of the script itself
+if redis.replicate_commands then
+  redis.replicate_commands()
+end
+
+-- two counter keys in the same hash tag slot, an even window uses the first and an odd window the second,
+-- each is a plain counter expiring at the end of the window following its own, before its slot is reused
+local limit = tonumber(ARGV[1])
+local window = tonumber(ARGV[2])
+local requested = tonumber(ARGV[3])
+
+-- redis server time in microseconds, shared by every application node
+local time = redis.call("time")
+local now = tonumber(time[1]) * 1000000 + tonumber(time[2])
+
+local current_window = math.floor(now/window)
+local current_key = KEYS[current_window%2+1]
+local previous_key = KEYS[2-current_window%2]
+
+local counts = redis.call("mget", current_key, previous_key)
+local current = tonumber(counts[1]) or 0
+local previous = tonumber(counts[2]) or 0
+
+-- the previous window counts for the part of it still covered by the sliding window
+local elapsed = (now%window)/window
+local estimated = previous*(1-elapsed) + current
+
+local allowed_num = 0
+local wait = 0
+if estimated+requested <= limit then
+  allowed_num = 1
+  estimated = estimated + requested
+  redis.call("incrby", current_key, requested)
+  -- a counter is read during its own window and the next one, the key expires from the first millisecond after them
+  redis.call("pexpireat", current_key, string.format("%.0f", math.floor((current_window+2)*window/1000)-1))
+else
+  -- the share of the previous window decreases by previous tokens per window
+  local excess = estimated+requested-limit
+  if previous > 0 and excess <= previous*(1-elapsed) then
+    wait = math.ceil(excess/previous*window)
+  else
+    wait = window-(now%window)
+  end
+end
+
+return { allowed_num, math.floor(limit-estimated), wait }
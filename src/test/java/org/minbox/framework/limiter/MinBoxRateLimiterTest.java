@@ -0,0 +1,74 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter;
+
+import org.junit.jupiter.api.Test;
+import org.minbox.framework.limiter.exception.RateLimiterException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link MinBoxRateLimiter} default methods tests
+ *
+ * @author 恒宇少年
+ */
+class MinBoxRateLimiterTest {
+
+    @Test
+    void deniesSeveralPermitsWithoutSpendingAny() {
+        AtomicInteger tokens = new AtomicInteger(5);
+        MinBoxRateLimiter rateLimiter = (QPS, requestKey) -> tokens.getAndDecrement() > 0;
+        assertFalse(rateLimiter.tryAcquire(5D, "order", 3));
+        assertFalse(rateLimiter.acquire(5D, "order", 2, 1, TimeUnit.SECONDS));
+        assertFalse(rateLimiter.tryAcquireAsync(5D, "order", 2).toCompletableFuture().join());
+        assertEquals(5, tokens.get());
+        assertTrue(rateLimiter.tryAcquire(5D, "order", 1));
+        assertEquals(4, tokens.get());
+    }
+
+    @Test
+    void acquiresAllPermitsInOneCall() {
+        AtomicInteger tokens = new AtomicInteger(5);
+        AtomicInteger calls = new AtomicInteger();
+        MinBoxRateLimiter rateLimiter = new MinBoxRateLimiter() {
+            @Override
+            public boolean tryAcquire(Double QPS, String requestKey) {
+                return tryAcquire(QPS, requestKey, 1);
+            }
+
+            @Override
+            public boolean tryAcquire(Double QPS, String requestKey, int permits) {
+                calls.incrementAndGet();
+                return tokens.getAndUpdate(current -> current >= permits ? current - permits : current) >= permits;
+            }
+        };
+        assertTrue(rateLimiter.acquire(5D, "order", 3, 1, TimeUnit.SECONDS));
+        assertFalse(rateLimiter.acquire(5D, "order", 3, 1, TimeUnit.SECONDS));
+        assertEquals(2, tokens.get());
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void rejectsNonPositivePermits() {
+        MinBoxRateLimiter rateLimiter = (QPS, requestKey) -> true;
+        assertThrows(RateLimiterException.class, () -> rateLimiter.tryAcquire(5D, "order", 0));
+        assertThrows(RateLimiterException.class, () -> rateLimiter.acquire(5D, "order", 0, 1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.aop.interceptor;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RateLimiterKeyExpression} tests
+ *
+ * @author 恒宇少年
+ */
+class RateLimiterKeyExpressionTest {
+
+    @Test
+    void evaluatesParameterNamesAndArguments() throws NoSuchMethodException {
+        Method submit = OrderService.class.getMethod("submit", String.class, List.class);
+        Object[] args = {"alice", Arrays.asList("book", "pen")};
+        assertEquals("alice", new RateLimiterKeyExpression("#userId", submit).getValue(args));
+        assertEquals("alice", new RateLimiterKeyExpression("args[0]", submit).getValue(args));
+        assertEquals("alice:2", new RateLimiterKeyExpression("#userId + ':' + args[1].size()", submit).getValue(args));
+        assertEquals(Integer.valueOf(2), new RateLimiterKeyExpression("#items.size()", submit).getValue(args, Integer.class));
+    }
+
+    @Test
+    void evaluatesEveryCallWithItsOwnArguments() throws NoSuchMethodException {
+        Method submit = OrderService.class.getMethod("submit", String.class, List.class);
+        RateLimiterKeyExpression expression = new RateLimiterKeyExpression("args[0]", submit);
+        // interpreted, then compiled
+        for (String userId : new String[]{"alice", "bob", "carol", "dave"}) {
+            assertEquals(userId, expression.getValue(new Object[]{userId, null}));
+        }
+    }
+
+    @Test
+    void interpretsOnceTheCompiledExpressionNoLongerFits() throws NoSuchMethodException {
+        Method count = OrderService.class.getMethod("count", Object.class);
+        RateLimiterKeyExpression expression = new RateLimiterKeyExpression("args[0].size()", count);
+        // compiled against ArrayList after the first calls
+        for (int i = 1; i <= 3; i++) {
+            assertEquals(String.valueOf(i), expression.getValue(new Object[]{new ArrayList<>(items(i))}));
+        }
+        // the bytecode casts to ArrayList
+        assertEquals("4", expression.getValue(new Object[]{new LinkedList<>(items(4))}));
+        assertEquals("5", expression.getValue(new Object[]{new ArrayList<>(items(5))}));
+        assertEquals("6", expression.getValue(new Object[]{new LinkedList<>(items(6))}));
+    }
+
+    private static List<String> items(int size) {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            items.add("item" + i);
+        }
+        return items;
+    }
+
+    public static class OrderService {
+        public void submit(String userId, List<String> items) {
+        }
+
+        public int count(Object items) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.aop.interceptor;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minbox.framework.limiter.annotation.RateLimiter;
+import org.minbox.framework.limiter.aop.advisor.RateLimiterAdvisor;
+import org.minbox.framework.limiter.concurrency.ConcurrencyLimiter;
+import org.minbox.framework.limiter.concurrency.ConcurrencyPermit;
+import org.springframework.aop.framework.ProxyFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RateLimiterMethodInterceptor} concurrency permit release tests
+ *
+ * @author 恒宇少年
+ */
+class RateLimiterMethodInterceptorTest {
+    private CountingConcurrencyLimiter concurrencyLimiter;
+    private BulkheadService service;
+
+    @BeforeEach
+    void setUp() {
+        RateLimiterMethodInterceptor interceptor = new RateLimiterMethodInterceptor((QPS, requestKey) -> true, null);
+        concurrencyLimiter = new CountingConcurrencyLimiter();
+        interceptor.setConcurrencyLimiter(concurrencyLimiter);
+        ProxyFactory proxyFactory = new ProxyFactory(new BulkheadService());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(new RateLimiterAdvisor(interceptor));
+        service = (BulkheadService) proxyFactory.getProxy();
+    }
+
+    @Test
+    void releasesWhenTheMethodThrows() {
+        assertThrows(IllegalStateException.class, () -> service.fail());
+        assertEquals(1, concurrencyLimiter.acquired.get());
+        assertEquals(0, concurrencyLimiter.inFlight.get());
+    }
+
+    @Test
+    void releasesWhenTheCompletionStageCompletes() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> result = service.later(pending);
+        assertEquals(1, concurrencyLimiter.inFlight.get());
+        // the limit is reached while the stage is pending
+        assertNull(service.later(new CompletableFuture<>()).join());
+        pending.complete("done");
+        assertEquals("done", result.join());
+        assertEquals(0, concurrencyLimiter.inFlight.get());
+    }
+
+    @Test
+    void releasesWhenTheCompletionStageFails() {
+        CompletableFuture<String> pending = new CompletableFuture<>();
+        CompletableFuture<String> result = service.later(pending);
+        pending.completeExceptionally(new IllegalStateException("failed"));
+        assertThrows(CompletionException.class, result::join);
+        assertEquals(0, concurrencyLimiter.inFlight.get());
+    }
+
+    @Test
+    void releasesWhenTheMonoFails() {
+        Mono<String> result = service.failLater();
+        // acquired on subscription
+        assertEquals(0, concurrencyLimiter.acquired.get());
+        assertThrows(IllegalStateException.class, result::block);
+        assertEquals(1, concurrencyLimiter.acquired.get());
+        assertEquals(0, concurrencyLimiter.inFlight.get());
+    }
+
+    @Test
+    void releasesWhenTheFluxIsCancelled() {
+        List<Integer> values = service.range().take(2).collectList().block();
+        assertEquals(2, values.size());
+        assertEquals(1, concurrencyLimiter.acquired.get());
+        assertEquals(0, concurrencyLimiter.inFlight.get());
+    }
+
+    @Test
+    void returnsPlainFutureAsIs() throws Exception {
+        Future<String> result = service.submit("done");
+        assertTrue(result instanceof FutureTask);
+        assertEquals("done", result.get());
+        // limited like a blocking method, released when the method returns
+        assertEquals(1, concurrencyLimiter.acquired.get());
+        assertEquals(0, concurrencyLimiter.inFlight.get());
+    }
+
+    @Test
+    void limitsOnlyCompletionStagesWithoutBlocking() {
+        assertEquals(RateLimiterMethodDescriptor.InvocationType.COMPLETION_STAGE, RateLimiterMethodDescriptor.InvocationType.of(CompletionStage.class));
+        assertEquals(RateLimiterMethodDescriptor.InvocationType.COMPLETION_STAGE, RateLimiterMethodDescriptor.InvocationType.of(CompletableFuture.class));
+        assertEquals(RateLimiterMethodDescriptor.InvocationType.BLOCKING, RateLimiterMethodDescriptor.InvocationType.of(Future.class));
+        assertEquals(RateLimiterMethodDescriptor.InvocationType.BLOCKING, RateLimiterMethodDescriptor.InvocationType.of(FutureTask.class));
+        assertEquals(RateLimiterMethodDescriptor.InvocationType.BLOCKING, RateLimiterMethodDescriptor.InvocationType.of(Object.class));
+    }
+
+    /**
+     * Methods limited to one call in flight
+     */
+    public static class BulkheadService {
+
+        @RateLimiter(QPS = 1000, maxConcurrency = 1)
+        public String fail() {
+            throw new IllegalStateException("failed");
+        }
+
+        @RateLimiter(QPS = 1000, maxConcurrency = 1)
+        public CompletableFuture<String> later(CompletableFuture<String> result) {
+            return result;
+        }
+
+        @RateLimiter(QPS = 1000, maxConcurrency = 1)
+        public Future<String> submit(String value) {
+            FutureTask<String> task = new FutureTask<>(() -> value);
+            task.run();
+            return task;
+        }
+
+        @RateLimiter(QPS = 1000, maxConcurrency = 1)
+        public Mono<String> failLater() {
+            return Mono.error(new IllegalStateException("failed"));
+        }
+
+        @RateLimiter(QPS = 1000, maxConcurrency = 1)
+        public Flux<Integer> range() {
+            return Flux.range(1, 10);
+        }
+    }
+
+    /**
+     * Count the permits acquired and in flight
+     */
+    private static class CountingConcurrencyLimiter implements ConcurrencyLimiter {
+        private final AtomicInteger acquired = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+
+        @Override
+        public ConcurrencyPermit tryAcquire(String requestKey, int maxConcurrency) {
+            if (inFlight.incrementAndGet() > maxConcurrency) {
+                inFlight.decrementAndGet();
+                return null;
+            }
+            acquired.incrementAndGet();
+            AtomicBoolean released = new AtomicBoolean();
+            return () -> {
+                if (released.compareAndSet(false, true)) {
+                    inFlight.decrementAndGet();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.aop.interceptor;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.minbox.framework.limiter.MinBoxRateLimiter;
+import org.minbox.framework.limiter.annotation.RateLimiter;
+import org.minbox.framework.limiter.aop.advisor.RateLimiterAdvisor;
+import org.springframework.aop.framework.ProxyFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RateLimiterMethodInterceptor} tests of the thread and the invocation the asynchronous methods proceed with
+ *
+ * @author 恒宇少年
+ */
+class RateLimiterMethodInvocationTest {
+    private final ExecutorService redisEventLoop = Executors.newSingleThreadExecutor(r -> new Thread(r, "redis-event-loop"));
+    private final ExecutorService invocationExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "invocation"));
+    /**
+     * calls of the advice after the rate limiter
+     */
+    private final AtomicInteger downstreamCalls = new AtomicInteger();
+    /**
+     * token request completed by the test
+     */
+    private final CompletableFuture<Boolean> pendingToken = new CompletableFuture<>();
+
+    @AfterEach
+    void tearDown() {
+        redisEventLoop.shutdownNow();
+        invocationExecutor.shutdownNow();
+    }
+
+    @Test
+    void proceedsOnCallerWhenTokenIsGrantedAtOnce() {
+        InvocationService service = proxy((QPS, requestKey) -> true);
+        assertEquals(Thread.currentThread().getName(), service.later().join());
+        assertEquals(Thread.currentThread().getName(), service.mono().block());
+    }
+
+    @Test
+    void proceedsCompletionStageOnInvocationExecutor() throws Exception {
+        InvocationService service = proxy(new PendingRateLimiter());
+        CompletableFuture<String> result = service.later();
+        assertFalse(result.isDone());
+        redisEventLoop.submit(() -> pendingToken.complete(true)).get();
+        assertEquals("invocation", result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void proceedsMonoOnInvocationExecutor() throws Exception {
+        InvocationService service = proxy(new PendingRateLimiter());
+        CompletableFuture<String> result = service.mono().toFuture();
+        assertFalse(result.isDone());
+        redisEventLoop.submit(() -> pendingToken.complete(true)).get();
+        assertEquals("invocation", result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void proceedsThroughDownstreamAdviceOnEverySubscription() {
+        InvocationService service = proxy((QPS, requestKey) -> true);
+        assertEquals(Arrays.asList(1, 2, 3), service.counted().repeat(2).collectList().block());
+        assertEquals(3, downstreamCalls.get());
+    }
+
+    private InvocationService proxy(MinBoxRateLimiter minBoxRateLimiter) {
+        RateLimiterMethodInterceptor interceptor = new RateLimiterMethodInterceptor(minBoxRateLimiter, null);
+        interceptor.setInvocationExecutor(invocationExecutor);
+        ProxyFactory proxyFactory = new ProxyFactory(new InvocationService());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(new RateLimiterAdvisor(interceptor));
+        proxyFactory.addAdvice((MethodInterceptor) invocation -> {
+            downstreamCalls.incrementAndGet();
+            return invocation.proceed();
+        });
+        return (InvocationService) proxyFactory.getProxy();
+    }
+
+    /**
+     * Rate limiter granting the token when the test completes it, like the reactive redis executor
+     */
+    private class PendingRateLimiter implements MinBoxRateLimiter {
+        @Override
+        public boolean tryAcquire(Double QPS, String requestKey) {
+            return pendingToken.join();
+        }
+
+        @Override
+        public CompletionStage<Boolean> tryAcquireAsync(Double QPS, String requestKey, int permits) {
+            return pendingToken;
+        }
+    }
+
+    /**
+     * Methods reporting the thread they proceed on
+     */
+    public static class InvocationService {
+        private final AtomicInteger calls = new AtomicInteger();
+
+        @RateLimiter(QPS = 1000)
+        public CompletableFuture<String> later() {
+            return CompletableFuture.completedFuture(Thread.currentThread().getName());
+        }
+
+        @RateLimiter(QPS = 1000)
+        public Mono<String> mono() {
+            return Mono.just(Thread.currentThread().getName());
+        }
+
+        @RateLimiter(QPS = 1000)
+        public Mono<Integer> counted() {
+            return Mono.just(calls.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.centre.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link AbstractRateLimiterConfigCentre} change notification tests
+ *
+ * @author 恒宇少年
+ */
+class AbstractRateLimiterConfigCentreTest {
+
+    @Test
+    void notifiesDerivedRequestKeys() {
+        PropertiesConfigCentre configCentre = new PropertiesConfigCentre();
+        Map<String, Long> changes = new ConcurrentHashMap<>();
+        configCentre.addConfigChangeListener(changes::put);
+        // never looked up, derived from the property key
+        configCentre.updateSnapshot(properties(".user.list", "5"));
+        assertEquals(Long.valueOf(5), changes.get("/user/list"));
+        configCentre.updateSnapshot(new Properties());
+        assertEquals(AbstractRateLimiterConfigCentre.DEFAULT_QPS, changes.get("/user/list"));
+    }
+
+    @Test
+    void notifiesLookedUpRequestKeysWithDots() {
+        PropertiesConfigCentre configCentre = new PropertiesConfigCentre();
+        Map<String, Long> changes = new ConcurrentHashMap<>();
+        configCentre.addConfigChangeListener(changes::put);
+        String methodKey = "org.minbox.OrderService.submit";
+        assertEquals(AbstractRateLimiterConfigCentre.DEFAULT_QPS, configCentre.getQps(methodKey));
+        configCentre.updateSnapshot(properties(methodKey, "8"));
+        assertEquals(Long.valueOf(8), changes.get(methodKey));
+    }
+
+    @Test
+    void notifiesOutsideOfTheSnapshotLock() {
+        PropertiesConfigCentre configCentre = new PropertiesConfigCentre();
+        configCentre.addConfigChangeListener((configKey, QPS) -> assertFalse(Thread.holdsLock(configCentre)));
+        configCentre.updateSnapshot(properties(".user.list", "5"));
+        configCentre.setQps("/user/detail", 10L);
+    }
+
+    @Test
+    void skipsUnchangedQps() {
+        PropertiesConfigCentre configCentre = new PropertiesConfigCentre();
+        configCentre.updateSnapshot(properties(".user.list", "5"));
+        Map<String, Long> changes = new ConcurrentHashMap<>();
+        configCentre.addConfigChangeListener(changes::put);
+        configCentre.setQps("/user/list", 5L);
+        configCentre.updateSnapshot(properties(".user.list", "5"));
+        assertTrue(changes.isEmpty());
+    }
+
+    private static Properties properties(String propertyKey, String QPS) {
+        Properties properties = new Properties();
+        properties.setProperty(propertyKey, QPS);
+        return properties;
+    }
+
+    /**
+     * Config centre of in memory properties
+     */
+    private static class PropertiesConfigCentre extends AbstractRateLimiterConfigCentre {
+        @Override
+        public Long getQps(String configKey) {
+            return getSnapshotQps(configKey);
+        }
+
+        @Override
+        public void setQps(String configKey, Long QPS) {
+            updateSnapshot(configKey, QPS);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.centre.support;
+
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.model.ConfigChangeEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minbox.framework.limiter.centre.RateLimiterConfigChangeListener;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link ApolloRateLimiterConfigCentre} tests
+ *
+ * @author 恒宇少年
+ */
+class ApolloRateLimiterConfigCentreTest {
+    private Config config;
+    private ApolloRateLimiterConfigCentre configCentre;
+    private ConfigChangeListener listener;
+
+    @BeforeEach
+    void setUp() {
+        config = mock(Config.class);
+        namespace("order=5\n.user.list=10\n");
+        configCentre = new ApolloRateLimiterConfigCentre(config);
+        ArgumentCaptor<ConfigChangeListener> captor = ArgumentCaptor.forClass(ConfigChangeListener.class);
+        verify(config).addChangeListener(captor.capture());
+        listener = captor.getValue();
+    }
+
+    @Test
+    void loadsTheNamespace() {
+        assertEquals(Long.valueOf(5), configCentre.getQps("order"));
+        assertEquals(Long.valueOf(10), configCentre.getQps("/user/list"));
+        assertEquals(AbstractRateLimiterConfigCentre.DEFAULT_QPS, configCentre.getQps("goods"));
+    }
+
+    @Test
+    void reloadsAndNotifiesOnChange() {
+        RateLimiterConfigChangeListener changeListener = mock(RateLimiterConfigChangeListener.class);
+        configCentre.addConfigChangeListener(changeListener);
+        namespace("order=7\n");
+        listener.onChange(mock(ConfigChangeEvent.class));
+
+        assertEquals(Long.valueOf(7), configCentre.getQps("order"));
+        assertEquals(AbstractRateLimiterConfigCentre.DEFAULT_QPS, configCentre.getQps("/user/list"));
+        verify(changeListener).onQpsChange("order", 7L);
+        verify(changeListener).onQpsChange("/user/list", AbstractRateLimiterConfigCentre.DEFAULT_QPS);
+    }
+
+    @Test
+    void namespaceTakesPrecedenceOverSetQps() {
+        configCentre.setQps("order", 20L);
+        assertEquals(Long.valueOf(5), configCentre.getQps("order"));
+
+        configCentre.setQps("goods", 20L);
+        assertEquals(Long.valueOf(20), configCentre.getQps("goods"));
+        // kept by a reload that does not define it
+        listener.onChange(mock(ConfigChangeEvent.class));
+        assertEquals(Long.valueOf(20), configCentre.getQps("goods"));
+
+        // defined by the namespace, no longer set locally
+        namespace("order=5\ngoods=3\n");
+        listener.onChange(mock(ConfigChangeEvent.class));
+        assertEquals(Long.valueOf(3), configCentre.getQps("goods"));
+        configCentre.setQps("goods", 30L);
+        assertEquals(Long.valueOf(3), configCentre.getQps("goods"));
+    }
+
+    private void namespace(String content) {
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(content));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        when(config.getPropertyNames()).thenReturn(properties.stringPropertyNames());
+        when(config.getProperty(anyString(), isNull())).thenAnswer(invocation -> properties.getProperty(invocation.getArgument(0)));
+    }
+}
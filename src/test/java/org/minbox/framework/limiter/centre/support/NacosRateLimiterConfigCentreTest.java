@@ -0,0 +1,97 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.centre.support;
+
+import com.alibaba.nacos.api.config.ConfigService;
+import com.alibaba.nacos.api.config.listener.Listener;
+import com.alibaba.nacos.client.config.listener.impl.PropertiesListener;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link NacosRateLimiterConfigCentre} tests
+ *
+ * @author 恒宇少年
+ */
+class NacosRateLimiterConfigCentreTest {
+    private ConfigService configService;
+    private NacosRateLimiterConfigCentre configCentre;
+    private PropertiesListener listener;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        configService = mock(ConfigService.class);
+        when(configService.getConfig(anyString(), anyString(), anyLong())).thenReturn("order=5\n");
+        when(configService.publishConfig(anyString(), anyString(), anyString())).thenReturn(true);
+        configCentre = new NacosRateLimiterConfigCentre(configService);
+        ArgumentCaptor<Listener> captor = ArgumentCaptor.forClass(Listener.class);
+        verify(configService).addListener(anyString(), anyString(), captor.capture());
+        listener = (PropertiesListener) captor.getValue();
+    }
+
+    @Test
+    void mergesPendingKeysWithoutOverwritingNacos() throws Exception {
+        configCentre.setQps("user", 10L);
+        configCentre.setQps("goods", 20L);
+        // an operator changed the config before the publish
+        when(configService.getConfig(anyString(), anyString(), anyLong())).thenReturn("order=7\nuser=3\n");
+        configCentre.destroy();
+
+        ArgumentCaptor<String> content = ArgumentCaptor.forClass(String.class);
+        verify(configService).publishConfig(anyString(), anyString(), content.capture());
+        Properties published = load(content.getValue());
+        assertEquals("7", published.getProperty("order"));
+        assertEquals("3", published.getProperty("user"));
+        assertEquals("20", published.getProperty("goods"));
+    }
+
+    @Test
+    void keepsPendingKeysWhenConfigReceived() {
+        configCentre.setQps("user", 10L);
+        listener.innerReceive(load("order=7\n"));
+        assertEquals(Long.valueOf(7), configCentre.getQps("order"));
+        assertEquals(Long.valueOf(10), configCentre.getQps("user"));
+    }
+
+    @Test
+    void receivedValueWinsOverPendingKey() throws Exception {
+        configCentre.setQps("user", 10L);
+        listener.innerReceive(load("order=5\nuser=3\n"));
+        assertEquals(Long.valueOf(3), configCentre.getQps("user"));
+        configCentre.destroy();
+        verify(configService, never()).publishConfig(anyString(), anyString(), anyString());
+    }
+
+    private static Properties load(String content) {
+        try {
+            Properties properties = new Properties();
+            properties.load(new StringReader(content));
+            return properties;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
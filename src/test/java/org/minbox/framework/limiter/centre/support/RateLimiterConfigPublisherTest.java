@@ -0,0 +1,93 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.centre.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RateLimiterConfigPublisher} tests
+ *
+ * @author 恒宇少年
+ */
+class RateLimiterConfigPublisherTest {
+
+    @Test
+    void coalescesRequestedPublishes() throws InterruptedException {
+        AtomicInteger publishes = new AtomicInteger();
+        RateLimiterConfigPublisher publisher = new RateLimiterConfigPublisher(publishes::incrementAndGet, 50, 1000);
+        for (int i = 0; i < 10; i++) {
+            publisher.requestPublish();
+        }
+        Thread.sleep(300);
+        assertEquals(1, publishes.get());
+        publisher.shutdown();
+        assertEquals(1, publishes.get());
+    }
+
+    @Test
+    void retriesWithExponentialBackoff() throws InterruptedException {
+        List<Long> attempts = new CopyOnWriteArrayList<>();
+        RateLimiterConfigPublisher publisher = new RateLimiterConfigPublisher(() -> {
+            attempts.add(System.nanoTime());
+            if (attempts.size() < 4) {
+                throw new IllegalStateException("config centre unavailable");
+            }
+        }, 20, 80);
+        publisher.requestPublish();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (attempts.size() < 4 && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(4, attempts.size());
+        // retried after 20, 40 then 80 millis
+        assertTrue(gapMillis(attempts, 1) >= 19);
+        assertTrue(gapMillis(attempts, 2) >= 39);
+        assertTrue(gapMillis(attempts, 3) >= 79);
+        Thread.sleep(200);
+        assertEquals(4, attempts.size());
+        publisher.shutdown();
+    }
+
+    @Test
+    void flushesPendingChangesOnShutdown() {
+        AtomicInteger publishes = new AtomicInteger();
+        RateLimiterConfigPublisher publisher = new RateLimiterConfigPublisher(publishes::incrementAndGet, 10000, 10000);
+        publisher.requestPublish();
+        assertEquals(0, publishes.get());
+        publisher.shutdown();
+        assertEquals(1, publishes.get());
+    }
+
+    @Test
+    void shutdownWithoutChangesDoesNotPublish() {
+        AtomicInteger publishes = new AtomicInteger();
+        RateLimiterConfigPublisher publisher = new RateLimiterConfigPublisher(publishes::incrementAndGet);
+        publisher.shutdown();
+        assertEquals(0, publishes.get());
+    }
+
+    private static long gapMillis(List<Long> attempts, int index) {
+        return TimeUnit.NANOSECONDS.toMillis(attempts.get(index) - attempts.get(index - 1));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.concurrency;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link AdaptiveConcurrencyLimiter} limit update tests
+ *
+ * @author 恒宇少年
+ */
+class AdaptiveConcurrencyLimiterTest {
+    private static final long RTT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private final AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter();
+
+    @Test
+    void growsWhileLatencyStaysFlat() {
+        AdaptiveConcurrencyLimiter.AdaptiveLimit limit = new AdaptiveConcurrencyLimiter.AdaptiveLimit(20);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(limit, RTT_NANOS, limit.getLimit(), 1000);
+        }
+        assertTrue(limit.getLimit() > 20);
+    }
+
+    @Test
+    void shrinksUnderRisingLatency() {
+        AdaptiveConcurrencyLimiter.AdaptiveLimit limit = new AdaptiveConcurrencyLimiter.AdaptiveLimit(20);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(limit, RTT_NANOS, limit.getLimit(), 1000);
+        }
+        int stable = limit.getLimit();
+        int previous = Integer.MAX_VALUE;
+        // the latency rises ten times over 50 calls, the limit may still grow within the tolerance
+        for (int i = 1; i <= 50; i++) {
+            limiter.onSample(limit, RTT_NANOS + RTT_NANOS * 9 * i / 50, limit.getLimit(), 1000);
+            // from twice the latency on
+            if (i >= 6) {
+                assertTrue(limit.getLimit() <= previous);
+                previous = limit.getLimit();
+            }
+        }
+        assertTrue(limit.getLimit() < stable / 2);
+        assertTrue(limit.getLimit() >= 1);
+    }
+
+    @Test
+    void shrinksWhenLightlyUsed() {
+        AdaptiveConcurrencyLimiter.AdaptiveLimit limit = new AdaptiveConcurrencyLimiter.AdaptiveLimit(20);
+        limiter.onSample(limit, RTT_NANOS, 1, 1000);
+        for (int i = 0; i < 20; i++) {
+            limiter.onSample(limit, RTT_NANOS * 10, 1, 1000);
+        }
+        assertTrue(limit.getLimit() < 20);
+    }
+
+    @Test
+    void growsOnlyWhileHalfUsed() {
+        AdaptiveConcurrencyLimiter.AdaptiveLimit limit = new AdaptiveConcurrencyLimiter.AdaptiveLimit(20);
+        for (int i = 0; i < 100; i++) {
+            limiter.onSample(limit, RTT_NANOS, 9, 1000);
+        }
+        assertEquals(20, limit.getLimit());
+        limiter.onSample(limit, RTT_NANOS, 10, 1000);
+        assertTrue(limit.getLimit() >= 20);
+    }
+
+    @Test
+    void staysWithinCeiling() {
+        AdaptiveConcurrencyLimiter.AdaptiveLimit limit = new AdaptiveConcurrencyLimiter.AdaptiveLimit(20);
+        for (int i = 0; i < 1000; i++) {
+            limiter.onSample(limit, RTT_NANOS, limit.getLimit(), 30);
+            assertTrue(limit.getLimit() <= 30);
+        }
+        assertEquals(30, limit.getLimit());
+    }
+
+    @Test
+    void neverExceedsCeilingOfTheCall() {
+        ConcurrencyPermit first = limiter.tryAcquire("order", 2);
+        ConcurrencyPermit second = limiter.tryAcquire("order", 2);
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(limiter.tryAcquire("order", 2));
+        first.release();
+        second.release();
+    }
+}
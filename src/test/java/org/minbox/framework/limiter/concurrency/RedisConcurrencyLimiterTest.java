@@ -0,0 +1,130 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.concurrency;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link RedisConcurrencyLimiter} tests, against an embedded redis server or an unavailable redis
+ *
+ * @author 恒宇少年
+ */
+class RedisConcurrencyLimiterTest {
+    /**
+     * Short lease, renewed every 100 millis
+     */
+    private static final long LEASE_MILLIS = 300;
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisTemplate();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void releasesPermitForOtherNodes() {
+        RedisConcurrencyLimiter first = new RedisConcurrencyLimiter(redisTemplate, LEASE_MILLIS);
+        RedisConcurrencyLimiter second = new RedisConcurrencyLimiter(redisTemplate, LEASE_MILLIS);
+        ConcurrencyPermit permit = first.tryAcquire("order", 1);
+        assertNotNull(permit);
+        assertNull(second.tryAcquire("order", 1));
+        permit.release();
+        assertNotNull(second.tryAcquire("order", 1));
+        first.destroy();
+        second.destroy();
+    }
+
+    @Test
+    void renewsPermitOfSlowCall() throws InterruptedException {
+        RedisConcurrencyLimiter first = new RedisConcurrencyLimiter(redisTemplate, LEASE_MILLIS);
+        RedisConcurrencyLimiter second = new RedisConcurrencyLimiter(redisTemplate, LEASE_MILLIS);
+        assertNotNull(first.tryAcquire("order", 1));
+        Thread.sleep(LEASE_MILLIS * 3);
+        assertNull(second.tryAcquire("order", 1));
+        first.destroy();
+        second.destroy();
+    }
+
+    @Test
+    void reclaimsExpiredPermitOfCrashedNode() throws InterruptedException {
+        RedisConcurrencyLimiter crashed = new RedisConcurrencyLimiter(redisTemplate, LEASE_MILLIS);
+        RedisConcurrencyLimiter alive = new RedisConcurrencyLimiter(redisTemplate, LEASE_MILLIS);
+        assertNotNull(crashed.tryAcquire("order", 1));
+        // the lease is no longer renewed and the permit never released
+        crashed.destroy();
+        assertNull(alive.tryAcquire("order", 1));
+        Thread.sleep(LEASE_MILLIS + 200);
+        assertNotNull(alive.tryAcquire("order", 1));
+        alive.destroy();
+    }
+
+    @Test
+    void limitsLocallyWithoutCallingRedisWhileBreakerIsOpen() {
+        RedisTemplate unavailable = mock(RedisTemplate.class);
+        when(unavailable.execute(any(RedisCallback.class))).thenThrow(new RedisConnectionFailureException("redis is down"));
+        RedisConcurrencyLimiter limiter = new RedisConcurrencyLimiter(unavailable, LEASE_MILLIS);
+        limiter.getCircuitBreaker().setProbeIntervalMillis(TimeUnit.MINUTES.toMillis(1));
+        int failureThreshold = limiter.getCircuitBreaker().getFailureThreshold();
+        for (int i = 0; i < failureThreshold; i++) {
+            ConcurrencyPermit permit = limiter.tryAcquire("order", 1);
+            assertNotNull(permit);
+            permit.release();
+        }
+        assertTrue(limiter.getCircuitBreaker().isOpen());
+        // limited locally, no call waits for redis
+        ConcurrencyPermit permit = limiter.tryAcquire("order", 1);
+        assertNotNull(permit);
+        assertNull(limiter.tryAcquire("order", 1));
+        permit.release();
+        assertNotNull(limiter.tryAcquire("order", 1));
+        verify(unavailable, times(failureThreshold)).execute(any(RedisCallback.class));
+        limiter.destroy();
+    }
+}
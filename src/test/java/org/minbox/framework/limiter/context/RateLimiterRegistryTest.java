@@ -0,0 +1,90 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.context;
+
+import com.google.common.util.concurrent.RateLimiter;
+import org.junit.jupiter.api.Test;
+import org.minbox.framework.limiter.support.TokenBucket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RateLimiterRegistry} expiry tests
+ *
+ * @author 恒宇少年
+ */
+class RateLimiterRegistryTest {
+    /**
+     * Idle time longer than the one second refill time
+     */
+    private static final long IDLE_MILLIS = 1300;
+
+    @Test
+    void keepsTokenBucketReservedAhead() throws InterruptedException {
+        RateLimiterRegistry<TokenBucket> registry =
+            new RateLimiterRegistry<>(RateLimiterRegistry.DEFAULT_MAXIMUM_SIZE, TokenBucket::getRefillNanos, TokenBucket::isFull);
+        TokenBucket bucket = registry.computeIfAbsent("order", key -> new TokenBucket(10));
+        // Two seconds of permits, granted after waiting about 1.9 seconds
+        assertTrue(bucket.reserve(20, TimeUnit.SECONDS.toNanos(5)) > 0);
+        Thread.sleep(IDLE_MILLIS);
+        sweep(registry, key -> new TokenBucket(10));
+        TokenBucket current = registry.computeIfAbsent("order", key -> new TokenBucket(10));
+        assertSame(bucket, current);
+        assertFalse(current.tryAcquire(1));
+    }
+
+    @Test
+    void expiresFullTokenBucket() throws InterruptedException {
+        RateLimiterRegistry<TokenBucket> registry =
+            new RateLimiterRegistry<>(RateLimiterRegistry.DEFAULT_MAXIMUM_SIZE, TokenBucket::getRefillNanos, TokenBucket::isFull);
+        TokenBucket bucket = registry.computeIfAbsent("order", key -> new TokenBucket(10));
+        assertTrue(bucket.tryAcquire(1));
+        Thread.sleep(IDLE_MILLIS);
+        sweep(registry, key -> new TokenBucket(10));
+        assertNotSame(bucket, registry.computeIfAbsent("order", key -> new TokenBucket(10)));
+    }
+
+    @Test
+    void keepsGuavaRateLimiterInDebt() throws InterruptedException {
+        RateLimiter rateLimiter = RateLimiterContext.cacheRateLimiter("registry-test-order", 10);
+        // Guava grants the permits at once and owes two seconds
+        assertTrue(rateLimiter.tryAcquire(20));
+        Thread.sleep(IDLE_MILLIS);
+        for (int i = 0; i < 1000; i++) {
+            RateLimiterContext.cacheRateLimiter("registry-test-" + i, 10);
+        }
+        RateLimiter current = RateLimiterContext.cacheRateLimiter("registry-test-order", 10);
+        assertSame(rateLimiter, current);
+        assertFalse(current.tryAcquire());
+    }
+
+    /**
+     * Insert enough keys for the incremental sweep to visit every entry
+     *
+     * @param registry registry to sweep
+     * @param factory  value factory
+     * @param <V>      rate limiter type
+     */
+    private static <V> void sweep(RateLimiterRegistry<V> registry, Function<String, V> factory) {
+        for (int i = 0; i < 1000; i++) {
+            registry.computeIfAbsent("sweep-" + i, factory);
+        }
+    }
+}
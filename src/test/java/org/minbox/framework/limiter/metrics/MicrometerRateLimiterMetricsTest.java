@@ -0,0 +1,71 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.metrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link MicrometerRateLimiterMetrics} tests, against a {@link SimpleMeterRegistry}
+ *
+ * @author 恒宇少年
+ */
+class MicrometerRateLimiterMetricsTest {
+
+    @Test
+    void countsPermittedAndRejectedRequests() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MicrometerRateLimiterMetrics metrics = new MicrometerRateLimiterMetrics(meterRegistry);
+        RateLimiterKeyMetrics keyMetrics = metrics.getKeyMetrics("OrderService#submit");
+        assertSame(keyMetrics, metrics.getKeyMetrics("OrderService#submit"));
+        keyMetrics.record(true, TimeUnit.MILLISECONDS.toNanos(1));
+        keyMetrics.record(true, TimeUnit.MILLISECONDS.toNanos(1));
+        keyMetrics.record(false, TimeUnit.MILLISECONDS.toNanos(1));
+
+        assertEquals(2, requests(meterRegistry, "OrderService#submit", "permitted"));
+        assertEquals(1, requests(meterRegistry, "OrderService#submit", "rejected"));
+        assertEquals(3, meterRegistry.get("minbox.ratelimiter.acquire").tag("key", "OrderService#submit").timer().count());
+    }
+
+    @Test
+    void sharesTheOtherKeyAboveTheMaximumKeys() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        MicrometerRateLimiterMetrics metrics = new MicrometerRateLimiterMetrics(meterRegistry, 2);
+        metrics.getKeyMetrics("OrderService#submit").record(true, 0);
+        metrics.getKeyMetrics("OrderService#cancel").record(true, 0);
+        metrics.getKeyMetrics("UserService#list").record(true, 0);
+        metrics.getKeyMetrics("UserService#detail").record(false, 0);
+        // a registered key keeps its own meters
+        metrics.getKeyMetrics("OrderService#submit").record(true, 0);
+
+        assertEquals(2, requests(meterRegistry, "OrderService#submit", "permitted"));
+        assertEquals(1, requests(meterRegistry, "OrderService#cancel", "permitted"));
+        assertEquals(1, requests(meterRegistry, MicrometerRateLimiterMetrics.OTHER_KEY, "permitted"));
+        assertEquals(1, requests(meterRegistry, MicrometerRateLimiterMetrics.OTHER_KEY, "rejected"));
+        assertTrue(meterRegistry.find("minbox.ratelimiter.requests").tag("key", "UserService#list").counters().isEmpty());
+        // two keys and other, two results each
+        assertEquals(6, meterRegistry.find("minbox.ratelimiter.requests").counters().size());
+    }
+
+    private static double requests(SimpleMeterRegistry meterRegistry, String key, String result) {
+        return meterRegistry.get("minbox.ratelimiter.requests").tag("key", key).tag("result", result).counter().count();
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.support;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link DeniedUntilCache} tests
+ *
+ * @author 恒宇少年
+ */
+class DeniedUntilCacheTest {
+    private final DeniedUntilCache cache = new DeniedUntilCache(16);
+
+    @Test
+    void deniesUntilRefill() {
+        cache.deny("order", 1, System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        assertTrue(cache.isDenied("order", 1, 0L));
+        assertTrue(cache.isDenied("order", 2, 0L));
+        assertFalse(cache.isDenied("user", 1, 0L));
+    }
+
+    @Test
+    void allowsFewerPermits() {
+        cache.deny("order", 3, System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        assertFalse(cache.isDenied("order", 2, 0L));
+        assertTrue(cache.isDenied("order", 3, 0L));
+    }
+
+    @Test
+    void allowsWaitBeyondRefill() {
+        cache.deny("order", 1, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(cache.isDenied("order", 1, TimeUnit.MILLISECONDS.toNanos(100)));
+        assertFalse(cache.isDenied("order", 1, TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    void countsRefillFromCallStart() {
+        // the reply came 50ms after the call started, redis refills the token 40ms after the call started
+        long startNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50);
+        cache.deny("order", 1, startNanos + TimeUnit.MILLISECONDS.toNanos(40));
+        assertFalse(cache.isDenied("order", 1, 0L));
+    }
+
+    @Test
+    void forgetsOnClear() {
+        cache.deny("order", 1, System.nanoTime() + TimeUnit.SECONDS.toNanos(1));
+        cache.clear();
+        assertFalse(cache.isDenied("order", 1, 0L));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RedisGcraRateLimiter} lua script tests, against an embedded redis server
+ * <p>
+ * The script reads the redis server time, the waits are checked with the margin of the calls in between
+ *
+ * @author 恒宇少年
+ */
+class RedisGcraRateLimiterTest {
+    private static final String GCRA_LUA_PATH = "META-INF/scripts/gcra-rate-limiter.lua";
+    private static final List<String> KEYS = RedisGcraRateLimiter.getKeys("order");
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisTemplate();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void admitsTheBurstThenOneRequestPerEmissionInterval() throws InterruptedException {
+        // one request every 100 millis, a burst of five
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Long.valueOf(1), eval(GCRA_LUA_PATH, KEYS, 10, 5, 1).get(0));
+        }
+        List<Long> denied = eval(GCRA_LUA_PATH, KEYS, 10, 5, 1);
+        assertEquals(Long.valueOf(0), denied.get(0));
+        assertEquals(Long.valueOf(0), denied.get(1));
+        assertTrue(denied.get(2) > 50_000 && denied.get(2) <= 100_000, String.valueOf(denied.get(2)));
+
+        // two emission intervals later two more requests conform
+        Thread.sleep(220);
+        assertEquals(Long.valueOf(1), eval(GCRA_LUA_PATH, KEYS, 10, 5, 1).get(0));
+        assertEquals(Long.valueOf(1), eval(GCRA_LUA_PATH, KEYS, 10, 5, 1).get(0));
+        assertEquals(Long.valueOf(0), eval(GCRA_LUA_PATH, KEYS, 10, 5, 1).get(0));
+    }
+
+    @Test
+    void storesTheTheoreticalArrivalTime() {
+        List<Long> first = eval(GCRA_LUA_PATH, KEYS, 10, 5, 2);
+        assertEquals(Long.valueOf(1), first.get(0));
+        assertEquals(Long.valueOf(3), first.get(1));
+        // the tat moved two emission intervals ahead of now
+        assertEquals(Long.valueOf(200_000), first.get(3));
+        long tat = Long.parseLong(get(KEYS.get(0)));
+        long now = TimeUnit.MILLISECONDS.toMicros((Long) redisTemplate.execute((RedisCallback<Long>) connection -> connection.time()));
+        assertTrue(tat - now > 100_000 && tat - now <= 201_000, String.valueOf(tat - now));
+        // the key expires when the tat is reached, a full bucket again
+        long ttl = (Long) redisTemplate.execute((RedisCallback<Long>) connection -> connection.pTtl(KEYS.get(0).getBytes(StandardCharsets.UTF_8)));
+        assertTrue(ttl > 100 && ttl <= 200, String.valueOf(ttl));
+
+        // a reservation within the max wait moves the tat beyond the burst
+        List<Long> reserved = eval(GCRA_LUA_PATH, KEYS, 10, 5, 4, 200_000);
+        assertEquals(Long.valueOf(1), reserved.get(0));
+        assertEquals(Long.valueOf(0), reserved.get(1));
+        assertTrue(reserved.get(2) > 50_000 && reserved.get(2) <= 100_000, String.valueOf(reserved.get(2)));
+    }
+
+    private String get(String key) {
+        byte[] value = (byte[]) redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(key.getBytes(StandardCharsets.UTF_8)));
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * evaluate a script with numeric arguments
+     *
+     * @param scriptPath script path
+     * @param keys       redis keys
+     * @param args       script arguments
+     * @return script result
+     */
+    private List<Long> eval(String scriptPath, List<String> keys, long... args) {
+        CachedRedisScript script = new CachedRedisScript(scriptPath);
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < args.length; i++) {
+            keysAndArgs[keys.size() + i] = String.valueOf(args[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        return (List<Long>) redisTemplate.execute((RedisCallback<List<Long>>) connection -> script.execute(connection, keys.size(), keysAndArgs));
+    }
+}
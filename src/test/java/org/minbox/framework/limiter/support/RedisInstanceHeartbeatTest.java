@@ -0,0 +1,92 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.support;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * {@link RedisInstanceHeartbeat} sharing tests
+ *
+ * @author 恒宇少年
+ */
+class RedisInstanceHeartbeatTest {
+
+    @Test
+    void sharesOneHeartbeatPerConnectionFactory() {
+        RedisConnectionFactory connectionFactory = mock(RedisConnectionFactory.class);
+        RedisTemplate first = redisTemplate(connectionFactory);
+        RedisTemplate second = redisTemplate(connectionFactory);
+        assertSame(RedisInstanceHeartbeat.getShared(first), RedisInstanceHeartbeat.getShared(second));
+        assertNotSame(RedisInstanceHeartbeat.getShared(first), RedisInstanceHeartbeat.getShared(redisTemplate(mock(RedisConnectionFactory.class))));
+    }
+
+    @Test
+    void sharesOneHeartbeatPerApplication() {
+        RedisTemplate redisTemplate = redisTemplate(mock(RedisConnectionFactory.class));
+        RedisInstanceHeartbeat orders = RedisInstanceHeartbeat.getShared(redisTemplate, "orders");
+        assertSame(orders, RedisInstanceHeartbeat.getShared(redisTemplate, "orders"));
+        assertNotSame(orders, RedisInstanceHeartbeat.getShared(redisTemplate, "payments"));
+        assertNotSame(orders, RedisInstanceHeartbeat.getShared(redisTemplate));
+    }
+
+    @Test
+    void forgetsTheSharedHeartbeatOnTheLastRelease() {
+        RedisTemplate redisTemplate = redisTemplate(mock(RedisConnectionFactory.class));
+        RedisInstanceHeartbeat heartbeat = RedisInstanceHeartbeat.getShared(redisTemplate, "orders");
+        heartbeat.retain();
+        heartbeat.retain();
+        heartbeat.release();
+        assertSame(heartbeat, RedisInstanceHeartbeat.getShared(redisTemplate, "orders"));
+        heartbeat.release();
+        RedisInstanceHeartbeat next = RedisInstanceHeartbeat.getShared(redisTemplate, "orders");
+        assertNotSame(heartbeat, next);
+        // retaining the forgotten heartbeat again does not replace the new shared one
+        next.retain();
+        heartbeat.retain();
+        assertSame(next, RedisInstanceHeartbeat.getShared(redisTemplate, "orders"));
+        heartbeat.release();
+        next.release();
+    }
+
+    @Test
+    void stopsWhenTheLastRateLimiterReleases() {
+        RedisInstanceHeartbeat heartbeat = new RedisInstanceHeartbeat(redisTemplate(mock(RedisConnectionFactory.class)));
+        ScheduledExecutorService scheduler = heartbeat.retain();
+        assertSame(scheduler, heartbeat.retain());
+        heartbeat.release();
+        assertFalse(scheduler.isShutdown());
+        heartbeat.release();
+        assertTrue(scheduler.isShutdown());
+        // retained again by a new rate limiter
+        ScheduledExecutorService restarted = heartbeat.retain();
+        assertFalse(restarted.isShutdown());
+        heartbeat.release();
+    }
+
+    private static RedisTemplate redisTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate redisTemplate = mock(RedisTemplate.class);
+        when(redisTemplate.getConnectionFactory()).thenReturn(connectionFactory);
+        return redisTemplate;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.support;
+
+import org.junit.jupiter.api.Test;
+import org.minbox.framework.limiter.centre.support.DefaultRateLimiterConfigCentre;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RedisLuaRateLimiter} sharded mode tests
+ * <p>
+ * Simulates random arrivals against the sub-buckets and against one bucket of the same QPS,
+ * the buckets refill like the lua script and the calls pick their sub-buckets like the rate limiter,
+ * arrivals and sub-buckets are drawn from one seeded random. The bound is also checked against an embedded redis server
+ *
+ * @author 恒宇少年
+ */
+class RedisLuaRateLimiterShardingTest {
+    /**
+     * simulated time of each run
+     */
+    private static final double SECONDS = 300;
+    private static final long SEED = 20240501L;
+
+    @Test
+    void sharesAddUpToTheLogicalBucket() {
+        for (long total : new long[]{1, 7, 100, 1001}) {
+            for (int shards : new int[]{1, 2, 8, 32}) {
+                long sum = 0;
+                for (int shard = 0; shard < shards; shard++) {
+                    long share = RedisLuaRateLimiter.getShardShare(total, shards, shard);
+                    assertTrue(share == total / shards || share == total / shards + 1);
+                    sum += share;
+                }
+                assertEquals(total, sum);
+            }
+        }
+    }
+
+    @Test
+    void addsAtMostOneBurstTokenPerSubBucket() {
+        int shards = 8;
+        long capacity = RedisLuaRateLimiter.getBurstCapacity(5, RedisLuaRateLimiter.DEFAULT_MAX_BURST_SECONDS);
+        // each sub-bucket holds at least one token
+        assertEquals(shards, totalCapacity(capacity, shards));
+        assertTrue(totalCapacity(capacity, shards) <= capacity + shards - 1);
+        for (long smallCapacity = 1; smallCapacity < shards; smallCapacity++) {
+            assertTrue(totalCapacity(smallCapacity, shards) <= smallCapacity + shards - 1);
+        }
+        assertEquals(100, totalCapacity(100, shards));
+    }
+
+    @Test
+    void neverAdmitsMoreThanTheLogicalBucket() {
+        for (int shards : new int[]{8, 32}) {
+            long admitted = admitted(100, shards, 2.0, true);
+            assertTrue(admitted <= 100 * SECONDS + totalCapacity(100, shards), "shards " + shards);
+        }
+    }
+
+    @Test
+    void shardedRedisBucketNeverAdmitsMoreThanTheLogicalBucket() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        RedisServer redisServer = new RedisServer(port);
+        redisServer.start();
+        LettuceConnectionFactory connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        try {
+            RedisTemplate redisTemplate = new RedisTemplate();
+            redisTemplate.setConnectionFactory(connectionFactory);
+            redisTemplate.afterPropertiesSet();
+            int shards = 8;
+            RedisLuaRateLimiter rateLimiter = new RedisLuaRateLimiter(100L, new DefaultRateLimiterConfigCentre(), redisTemplate);
+            rateLimiter.setShards(shards);
+            // a redis failure admits the call, it would exceed the bound
+            rateLimiter.setLocalFallback(false);
+
+            long start = System.nanoTime();
+            long admitted = 0;
+            for (int i = 0; i < 1000; i++) {
+                if (rateLimiter.tryAcquire(null, "order")) {
+                    admitted++;
+                }
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            long capacity = RedisLuaRateLimiter.getBurstCapacity(100, RedisLuaRateLimiter.DEFAULT_MAX_BURST_SECONDS);
+            assertTrue(admitted <= 100 * elapsedSeconds + totalCapacity(capacity, shards), admitted + " in " + elapsedSeconds + "s");
+            assertTrue(admitted >= capacity, String.valueOf(admitted));
+            for (int shard = 0; shard < shards; shard++) {
+                byte[] tokensKey = RedisLuaRateLimiter.getKeys("order#" + shard).get(0).getBytes(StandardCharsets.UTF_8);
+                assertTrue((Boolean) redisTemplate.execute((RedisCallback<Boolean>) connection -> connection.exists(tokensKey)), "shard " + shard);
+            }
+            rateLimiter.destroy();
+        } finally {
+            connectionFactory.destroy();
+            redisServer.stop();
+        }
+    }
+
+    @Test
+    void admitsWithinOnePercentFromThirtyTokensPerSubBucket() {
+        for (long QPS : new long[]{1000, 10000}) {
+            for (double load : new double[]{0.5, 0.8, 1.0, 2.0}) {
+                assertTrue(relativeAdmission(QPS, 32, load, true) >= 0.99, "QPS " + QPS + ", load " + load);
+            }
+        }
+    }
+
+    @Test
+    void eightSubBucketsOfHundredQps() {
+        assertTrue(relativeAdmission(100, 8, 1.0, true) >= 0.98);
+    }
+
+    @Test
+    void thirtyTwoSubBucketsOfHundredQps() {
+        assertTrue(relativeAdmission(100, 32, 1.0, true) >= 0.90);
+        assertTrue(relativeAdmission(100, 32, 0.8, true) >= 0.97);
+    }
+
+    @Test
+    void spillOverProbeHalvesTheError() {
+        double withProbe = 1 - relativeAdmission(100, 32, 1.0, true);
+        double withoutProbe = 1 - relativeAdmission(100, 32, 1.0, false);
+        assertTrue(withProbe <= withoutProbe * 0.6, withProbe + " / " + withoutProbe);
+    }
+
+    /**
+     * admitted calls of the sub-buckets relative to one bucket, same arrivals
+     */
+    private static double relativeAdmission(long QPS, int shards, double load, boolean probe) {
+        return (double) admitted(QPS, shards, load, probe) / admitted(QPS, 1, load, probe);
+    }
+
+    /**
+     * run random arrivals at load times the QPS and count the admitted calls
+     *
+     * @param QPS    qps of the logical bucket
+     * @param shards number of sub-buckets, 1 for one bucket
+     * @param load   arrival rate relative to the QPS
+     * @param probe  whether a denied call probes one other sub-bucket
+     * @return admitted calls
+     */
+    private static long admitted(long QPS, int shards, double load, boolean probe) {
+        long capacity = RedisLuaRateLimiter.getBurstCapacity(QPS, RedisLuaRateLimiter.DEFAULT_MAX_BURST_SECONDS);
+        SimulatedBucket[] buckets = new SimulatedBucket[shards];
+        for (int shard = 0; shard < shards; shard++) {
+            buckets[shard] = new SimulatedBucket(RedisLuaRateLimiter.getShardShare(QPS, shards, shard),
+                Math.max(1L, RedisLuaRateLimiter.getShardShare(capacity, shards, shard)));
+        }
+        Random arrivals = new Random(SEED);
+        double arrivalRate = QPS * load;
+        long admitted = 0;
+        for (double now = 0; now < SECONDS; now += -Math.log(1 - arrivals.nextDouble()) / arrivalRate) {
+            int shard = shards == 1 ? 0 : arrivals.nextInt(shards);
+            boolean allowed = buckets[shard].tryAcquire(now);
+            if (!allowed && probe && shards > 1) {
+                allowed = buckets[RedisLuaRateLimiter.nextShard(shard, shards)].tryAcquire(now);
+            }
+            if (allowed) {
+                admitted++;
+            }
+        }
+        return admitted;
+    }
+
+    private static long totalCapacity(long capacity, int shards) {
+        long total = 0;
+        for (int shard = 0; shard < shards; shard++) {
+            total += Math.max(1L, RedisLuaRateLimiter.getShardShare(capacity, shards, shard));
+        }
+        return total;
+    }
+
+    /**
+     * Token bucket refilled like the lua script, starts full
+     */
+    private static class SimulatedBucket {
+        private final long rate;
+        private final long capacity;
+        private double tokens;
+        private double lastSeconds;
+
+        SimulatedBucket(long rate, long capacity) {
+            this.rate = rate;
+            this.capacity = capacity;
+            this.tokens = capacity;
+        }
+
+        boolean tryAcquire(double nowSeconds) {
+            tokens = Math.min(capacity, tokens + (nowSeconds - lastSeconds) * rate);
+            lastSeconds = nowSeconds;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RedisLuaRateLimiter} lua script tests, against an embedded redis server
+ * <p>
+ * The scripts read the redis server time, the waits are checked with the margin of the calls in between
+ *
+ * @author 恒宇少年
+ */
+class RedisLuaRateLimiterTest {
+    private static final String QPS_LUA_PATH = "META-INF/scripts/qps-rate-limiter.lua";
+    private static final String QPS_MULTI_LUA_PATH = "META-INF/scripts/qps-multi-rate-limiter.lua";
+    private static final List<String> KEYS = RedisLuaRateLimiter.getKeys("order");
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisTemplate();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void refillsContinuouslyWithinTheSecond() throws InterruptedException {
+        // one token every 250 millis
+        for (int i = 0; i < 4; i++) {
+            assertEquals(Long.valueOf(1), eval(QPS_LUA_PATH, KEYS, 4, 4, 1).get(0));
+        }
+        List<Long> denied = eval(QPS_LUA_PATH, KEYS, 4, 4, 1);
+        assertEquals(Long.valueOf(0), denied.get(0));
+        assertTrue(denied.get(2) > 200_000 && denied.get(2) <= 250_000, String.valueOf(denied.get(2)));
+
+        // 2.4 tokens refilled, not a whole second of them
+        Thread.sleep(600);
+        assertEquals(Long.valueOf(1), eval(QPS_LUA_PATH, KEYS, 4, 4, 1).get(0));
+        assertEquals(Long.valueOf(1), eval(QPS_LUA_PATH, KEYS, 4, 4, 1).get(0));
+        assertEquals(Long.valueOf(0), eval(QPS_LUA_PATH, KEYS, 4, 4, 1).get(0));
+    }
+
+    @Test
+    void reservationLeavesDebtForLaterCallers() {
+        // one token every 100 millis, one token of capacity
+        assertEquals(Long.valueOf(1), eval(QPS_LUA_PATH, KEYS, 10, 1, 1).get(0));
+        List<Long> denied = eval(QPS_LUA_PATH, KEYS, 10, 1, 1, 0);
+        assertEquals(Long.valueOf(0), denied.get(0));
+        assertTrue(denied.get(2) > 50_000 && denied.get(2) <= 100_000, String.valueOf(denied.get(2)));
+
+        // reserved within the max wait, the bucket is in debt
+        List<Long> reserved = eval(QPS_LUA_PATH, KEYS, 10, 1, 1, 200_000);
+        assertEquals(Long.valueOf(1), reserved.get(0));
+        assertTrue(reserved.get(2) > 50_000 && reserved.get(2) <= 100_000, String.valueOf(reserved.get(2)));
+
+        // the next caller waits behind the reservation
+        List<Long> queued = eval(QPS_LUA_PATH, KEYS, 10, 1, 1, 300_000);
+        assertEquals(Long.valueOf(1), queued.get(0));
+        assertTrue(queued.get(2) > 150_000 && queued.get(2) <= 200_000, String.valueOf(queued.get(2)));
+        List<Long> tooLong = eval(QPS_LUA_PATH, KEYS, 10, 1, 1, 250_000);
+        assertEquals(Long.valueOf(0), tooLong.get(0));
+        assertTrue(tooLong.get(2) > 250_000, String.valueOf(tooLong.get(2)));
+    }
+
+    @Test
+    void debitsNoDimensionWhenOneDenies() {
+        List<String> keys = new ArrayList<>(RedisLuaRateLimiter.getMultiKeys("order[0]"));
+        keys.addAll(RedisLuaRateLimiter.getMultiKeys("order[1]"));
+        // 100 QPS per method, 1 QPS per tenant
+        assertEquals(Long.valueOf(1), eval(QPS_MULTI_LUA_PATH, keys, 100, 100, 1, 1, 1).get(0));
+        assertEquals(99, Double.parseDouble(get(keys.get(0))));
+
+        List<Long> denied = eval(QPS_MULTI_LUA_PATH, keys, 100, 100, 1, 1, 1);
+        assertEquals(Long.valueOf(0), denied.get(0));
+        assertEquals(Long.valueOf(2), denied.get(1));
+        // the allowed dimension kept its tokens
+        assertEquals(99, Double.parseDouble(get(keys.get(0))));
+
+        // denied by the first dimension, the second is not debited either
+        List<Long> tooMany = eval(QPS_MULTI_LUA_PATH, keys, 100, 100, 1, 1, 200);
+        assertEquals(Long.valueOf(0), tooMany.get(0));
+        assertEquals(Long.valueOf(1), tooMany.get(1));
+        assertEquals(0, Double.parseDouble(get(keys.get(2))));
+    }
+
+    private String get(String key) {
+        byte[] value = (byte[]) redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(key.getBytes(StandardCharsets.UTF_8)));
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * evaluate a script with numeric arguments
+     *
+     * @param scriptPath script path
+     * @param keys       redis keys
+     * @param args       script arguments
+     * @return script result
+     */
+    private List<Long> eval(String scriptPath, List<String> keys, long... args) {
+        CachedRedisScript script = new CachedRedisScript(scriptPath);
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < args.length; i++) {
+            keysAndArgs[keys.size() + i] = String.valueOf(args[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        return (List<Long>) redisTemplate.execute((RedisCallback<List<Long>>) connection -> script.execute(connection, keys.size(), keysAndArgs));
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.support;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RedisSlidingWindowRateLimiter} lua script tests, against an embedded redis server
+ * <p>
+ * The script reads the redis server time, the calls are placed in one second windows of it
+ *
+ * @author 恒宇少年
+ */
+class RedisSlidingWindowRateLimiterTest {
+    private static final String SLIDING_WINDOW_LUA_PATH = "META-INF/scripts/sliding-window-rate-limiter.lua";
+    private static final List<String> KEYS = RedisSlidingWindowRateLimiter.getKeys("order");
+    private static final long WINDOW_MILLIS = 1000;
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private RedisTemplate redisTemplate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory("localhost", port);
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new RedisTemplate();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Test
+    void weightsThePreviousWindowAcrossTheBoundary() throws InterruptedException {
+        long window = sleepUntilNextWindowElapsed(0.05);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Long.valueOf(1), eval(SLIDING_WINDOW_LUA_PATH, KEYS, 10, TimeUnit.MILLISECONDS.toMicros(WINDOW_MILLIS), 1).get(0));
+        }
+        assertEquals(Long.valueOf(0), eval(SLIDING_WINDOW_LUA_PATH, KEYS, 10, TimeUnit.MILLISECONDS.toMicros(WINDOW_MILLIS), 1).get(0));
+
+        // 55% into the next window, the previous ten requests still count for 4.5
+        assertEquals(window + 1, sleepUntilNextWindowElapsed(0.55));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Long.valueOf(1), eval(SLIDING_WINDOW_LUA_PATH, KEYS, 10, TimeUnit.MILLISECONDS.toMicros(WINDOW_MILLIS), 1).get(0));
+        }
+        List<Long> denied = eval(SLIDING_WINDOW_LUA_PATH, KEYS, 10, TimeUnit.MILLISECONDS.toMicros(WINDOW_MILLIS), 1);
+        assertEquals(Long.valueOf(0), denied.get(0));
+        // the share of the previous window drops by one request every 100 millis
+        assertTrue(denied.get(2) > 0 && denied.get(2) <= 100_000, String.valueOf(denied.get(2)));
+    }
+
+    @Test
+    void expiresTheCounterAtTheEndOfTheNextWindow() throws InterruptedException {
+        long window = sleepUntilNextWindowElapsed(0.05);
+        assertEquals(Long.valueOf(1), eval(SLIDING_WINDOW_LUA_PATH, KEYS, 10, TimeUnit.MILLISECONDS.toMicros(WINDOW_MILLIS), 1).get(0));
+        String counterKey = KEYS.get((int) (window % 2));
+        long expiresAt = (window + 2) * WINDOW_MILLIS - 1;
+        long ttl = pTtl(counterKey);
+        long now = redisTime();
+        assertTrue(Math.abs(now + ttl - expiresAt) <= 5, ttl + " millis left at " + now);
+        // gone before the window two windows later counts with the same key
+        Thread.sleep(expiresAt - now + 5);
+        assertEquals(-2, pTtl(counterKey));
+    }
+
+    /**
+     * sleep until the given part of the next redis time window has elapsed
+     *
+     * @param elapsed elapsed part of the window
+     * @return window number
+     */
+    private long sleepUntilNextWindowElapsed(double elapsed) throws InterruptedException {
+        long now = redisTime();
+        long target = (now / WINDOW_MILLIS + 1) * WINDOW_MILLIS + (long) (WINDOW_MILLIS * elapsed);
+        Thread.sleep(target - now);
+        return redisTime() / WINDOW_MILLIS;
+    }
+
+    private long redisTime() {
+        return (Long) redisTemplate.execute((RedisCallback<Long>) connection -> connection.time());
+    }
+
+    private long pTtl(String key) {
+        return (Long) redisTemplate.execute((RedisCallback<Long>) connection -> connection.pTtl(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * evaluate a script with numeric arguments
+     *
+     * @param scriptPath script path
+     * @param keys       redis keys
+     * @param args       script arguments
+     * @return script result
+     */
+    private List<Long> eval(String scriptPath, List<String> keys, long... args) {
+        CachedRedisScript script = new CachedRedisScript(scriptPath);
+        byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+        for (int i = 0; i < keys.size(); i++) {
+            keysAndArgs[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+        for (int i = 0; i < args.length; i++) {
+            keysAndArgs[keys.size() + i] = String.valueOf(args[i]).getBytes(StandardCharsets.UTF_8);
+        }
+        return (List<Long>) redisTemplate.execute((RedisCallback<List<Long>>) connection -> script.execute(connection, keys.size(), keysAndArgs));
+    }
+}
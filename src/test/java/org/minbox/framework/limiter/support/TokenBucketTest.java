@@ -0,0 +1,45 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link TokenBucket} tests
+ *
+ * @author 恒宇少年
+ */
+class TokenBucketTest {
+
+    @Test
+    void keepsConfiguredRate() {
+        // one permit every 333333333 nanos, not exactly 3 per second
+        TokenBucket tokenBucket = new TokenBucket(3);
+        assertEquals(3D, tokenBucket.getRate(), 0D);
+        tokenBucket.setRate(7D / 3);
+        assertEquals(7D / 3, tokenBucket.getRate(), 0D);
+    }
+
+    @Test
+    void grantsOnePermitWhenCreated() {
+        TokenBucket tokenBucket = new TokenBucket(10);
+        assertTrue(tokenBucket.tryAcquire());
+        assertFalse(tokenBucket.tryAcquire());
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.web;
+
+import org.junit.jupiter.api.Test;
+import org.minbox.framework.limiter.config.RateLimiterConfig;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ServletException;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RateLimiterFilter} tests, every request of a pattern is rejected
+ *
+ * @author 恒宇少年
+ */
+class RateLimiterFilterTest {
+    private final RateLimiterFilter filter = new RateLimiterFilter((QPS, requestKey) -> false, config("/api/order"));
+
+    @Test
+    void limitsMatchingUrl() throws ServletException, IOException {
+        assertRejected("/api/order");
+        assertRejected("/api/order/1");
+    }
+
+    @Test
+    void limitsUrlWithPathParameters() throws ServletException, IOException {
+        assertRejected("/api/order;x=1");
+        assertRejected("/api;jsessionid=1/order");
+    }
+
+    @Test
+    void limitsEncodedUrl() throws ServletException, IOException {
+        assertRejected("/api/%6Frder");
+    }
+
+    @Test
+    void limitsUrlWithDuplicateSlashesAndDotSegments() throws ServletException, IOException {
+        assertRejected("//api/./order");
+        assertRejected("/api/user/../order");
+    }
+
+    @Test
+    void matchesWithinContextPath() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/shop/api/order");
+        request.setContextPath("/shop");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus());
+    }
+
+    @Test
+    void passesOtherUrl() throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/user");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        assertSame(request, chain.getRequest());
+        assertEquals(HttpStatus.OK.value(), response.getStatus());
+    }
+
+    private void assertRejected(String requestUri) throws ServletException, IOException {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", requestUri);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS.value(), response.getStatus(), requestUri);
+        assertNull(chain.getRequest(), requestUri);
+    }
+
+    static RateLimiterConfig config(String... interceptorUrl) {
+        RateLimiterConfig rateLimiterConfig = new RateLimiterConfig();
+        rateLimiterConfig.setInterceptorUrl(interceptorUrl);
+        return rateLimiterConfig;
+    }
+}
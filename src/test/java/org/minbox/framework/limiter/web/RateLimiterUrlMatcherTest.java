@@ -0,0 +1,80 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.web;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RateLimiterUrlMatcher} tests
+ *
+ * @author 恒宇少年
+ */
+class RateLimiterUrlMatcherTest {
+
+    @Test
+    void matchesPrefix() {
+        RateLimiterUrlMatcher matcher = new RateLimiterUrlMatcher(new String[]{"/api/order"});
+        assertEquals("/api/order", matcher.match("/api/order"));
+        assertEquals("/api/order", matcher.match("/api/order/1"));
+        assertNull(matcher.match("/api/orders"));
+        assertNull(matcher.match("/api"));
+    }
+
+    @Test
+    void prefersLiteralToWildcard() {
+        RateLimiterUrlMatcher matcher = new RateLimiterUrlMatcher(new String[]{"/api/*/detail", "/api/order/detail"});
+        assertEquals("/api/order/detail", matcher.match("/api/order/detail"));
+        assertEquals("/api/*/detail", matcher.match("/api/user/detail"));
+        assertNull(matcher.match("/api/user/list"));
+    }
+
+    @Test
+    void fallsBackToWildcardWhenLiteralBranchDoesNotMatch() {
+        RateLimiterUrlMatcher matcher = new RateLimiterUrlMatcher(new String[]{"/api/*/detail", "/api/order/list"});
+        assertEquals("/api/*/detail", matcher.match("/api/order/detail"));
+    }
+
+    @Test
+    void longestPrefixWins() {
+        RateLimiterUrlMatcher matcher = new RateLimiterUrlMatcher(new String[]{"/api", "/api/order"});
+        assertEquals("/api/order", matcher.match("/api/order/1"));
+        assertEquals("/api", matcher.match("/api/user/1"));
+    }
+
+    @Test
+    void trailingDoubleWildcardMatchesTheRest() {
+        RateLimiterUrlMatcher matcher = new RateLimiterUrlMatcher(new String[]{"/api/user/**"});
+        assertEquals("/api/user/**", matcher.match("/api/user"));
+        assertEquals("/api/user/**", matcher.match("/api/user/1/address"));
+        assertNull(matcher.match("/api/goods"));
+    }
+
+    @Test
+    void normalizesSlashesAndDotSegments() {
+        RateLimiterUrlMatcher matcher = new RateLimiterUrlMatcher(new String[]{"/api/order"});
+        assertEquals("/api/order", matcher.match("//api//order"));
+        assertEquals("/api/order", matcher.match("/api/./order"));
+        assertEquals("/api/order", matcher.match("/api/user/../order"));
+    }
+
+    @Test
+    void rejectsPartialSegmentWildcard() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimiterUrlMatcher(new String[]{"/api/order*"}));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright [2019] [恒宇少年 - 于起宇]
+ *
+ *      Licensed under the Apache License, Version 2.0 (the "License");
+ *      you may not use this file except in compliance with the License.
+ *      You may obtain a copy of the License at
+ *
+ *          http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *      Unless required by applicable law or agreed to in writing, software
+ *      distributed under the License is distributed on an "AS IS" BASIS,
+ *      WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *      See the License for the specific language governing permissions and
+ *      limitations under the License.
+ *
+ */
+package org.minbox.framework.limiter.web;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link RateLimiterWebFilter} tests, every request of a pattern is rejected
+ *
+ * @author 恒宇少年
+ */
+class RateLimiterWebFilterTest {
+    private final RateLimiterWebFilter filter =
+        new RateLimiterWebFilter((QPS, requestKey) -> false, RateLimiterFilterTest.config("/api/order"));
+
+    @Test
+    void limitsMatchingUrl() {
+        assertRejected("/api/order/1");
+    }
+
+    @Test
+    void limitsUrlWithPathParameters() {
+        assertRejected("/api/order;x=1");
+    }
+
+    @Test
+    void limitsEncodedUrl() {
+        assertRejected("/api/%6Frder");
+    }
+
+    @Test
+    void limitsUrlWithDuplicateSlashesAndDotSegments() {
+        assertRejected("//api/./order");
+    }
+
+    @Test
+    void passesOtherUrl() {
+        MockServerWebExchange exchange = exchange("/api/user");
+        AtomicBoolean filtered = new AtomicBoolean();
+        filter.filter(exchange, chainExchange -> {
+            filtered.set(true);
+            return Mono.empty();
+        }).block();
+        assertTrue(filtered.get());
+        assertNull(exchange.getResponse().getStatusCode());
+    }
+
+    private void assertRejected(String requestUri) {
+        MockServerWebExchange exchange = exchange(requestUri);
+        AtomicBoolean filtered = new AtomicBoolean();
+        filter.filter(exchange, chainExchange -> {
+            filtered.set(true);
+            return Mono.empty();
+        }).block();
+        assertFalse(filtered.get(), requestUri);
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, exchange.getResponse().getStatusCode(), requestUri);
+    }
+
+    /**
+     * raw request uri, not encoded again by a uri template
+     */
+    private static MockServerWebExchange exchange(String requestUri) {
+        return MockServerWebExchange.from(MockServerHttpRequest.method(HttpMethod.GET, URI.create("http://localhost" + requestUri)));
+    }
+}